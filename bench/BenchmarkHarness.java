@@ -0,0 +1,208 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The BenchmarkHarness class times benchmark tasks with warmup and measured iterations, and writes the results as CSV
+ * so runs can be compared between releases. Each iteration may run a fixture step first that is not timed, and may
+ * repeat the task several times, in which case the time is reported per operation.
+ */
+public class BenchmarkHarness {
+    /** The columns of the results file. */
+    public static final String HEADER = "benchmark,size,operations,iterations,mean_ns,stddev_ns,min_ns,p50_ns,p90_ns,max_ns,ops_per_sec";
+
+    private int warmupIterations;
+    private int measuredIterations;
+    private List<Result> results = new ArrayList<>();
+    // Keeps the JIT from removing work whose result is never used
+    private volatile long sink;
+
+    /**
+     * A step run before each iteration, outside of the timing.
+     */
+    public interface Fixture {
+        /**
+         * Prepares an iteration.
+         * @throws Exception if the step failed.
+         */
+        void run() throws Exception;
+    }
+
+    /**
+     * The work being timed.
+     */
+    public interface Task {
+        /**
+         * Runs one operation.
+         * @return Any value computed by the operation, so it cannot be optimized away.
+         * @throws Exception if the operation failed.
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * The timing of one benchmark at one dataset size.
+     */
+    public static class Result {
+        private final String benchmark;
+        private final long size;
+        private final int operations;
+        private final long[] nanosPerOp;
+
+        /**
+         * Constructs a Result object.
+         * @param benchmark The name of the benchmark.
+         * @param size The number of results in the dataset.
+         * @param operations The number of operations per iteration.
+         * @param nanosPerOp The time per operation of every measured iteration.
+         */
+        private Result(String benchmark, long size, int operations, long[] nanosPerOp)
+        {
+            this.benchmark = benchmark;
+            this.size = size;
+            this.operations = operations;
+            this.nanosPerOp = nanosPerOp.clone();
+            Arrays.sort(this.nanosPerOp);
+        }
+
+        /**
+         * Gets the mean time per operation.
+         * @return The mean in nanoseconds.
+         */
+        public double getMeanNanos()
+        {
+            double sum = 0;
+            for (long n : nanosPerOp) {
+                sum += n;
+            }
+            return sum / nanosPerOp.length;
+        }
+
+        /**
+         * Gets the standard deviation of the time per operation.
+         * @return The standard deviation in nanoseconds.
+         */
+        public double getStddevNanos()
+        {
+            double mean = getMeanNanos();
+            double sum = 0;
+            for (long n : nanosPerOp) {
+                sum += (n - mean) * (n - mean);
+            }
+            return nanosPerOp.length > 1 ? Math.sqrt(sum / (nanosPerOp.length - 1)) : 0;
+        }
+
+        /**
+         * Gets a percentile of the time per operation.
+         * @param p The percentile, between 0 and 100.
+         * @return The percentile in nanoseconds.
+         */
+        public long getPercentileNanos(double p)
+        {
+            int i = (int) Math.ceil(p / 100 * nanosPerOp.length) - 1;
+            return nanosPerOp[Math.max(0, Math.min(nanosPerOp.length - 1, i))];
+        }
+
+        /**
+         * Formats the result as one line of the results file.
+         * @return The CSV line, without a line break.
+         */
+        public String toCsv()
+        {
+            double mean = getMeanNanos();
+            return String.format(Locale.ROOT, "%s,%d,%d,%d,%.0f,%.0f,%d,%d,%d,%d,%.2f", benchmark, size, operations, nanosPerOp.length,
+                    mean, getStddevNanos(), nanosPerOp[0], getPercentileNanos(50), getPercentileNanos(90),
+                    nanosPerOp[nanosPerOp.length - 1], 1e9 / Math.max(mean, 1e-9));
+        }
+    }
+
+    /**
+     * Constructs a BenchmarkHarness object.
+     * @param warmupIterations The number of iterations run before timing starts.
+     * @param measuredIterations The number of timed iterations.
+     */
+    public BenchmarkHarness(int warmupIterations, int measuredIterations)
+    {
+        this.warmupIterations = Math.max(0, warmupIterations);
+        this.measuredIterations = Math.max(1, measuredIterations);
+    }
+
+    /**
+     * Times a task that runs once per iteration.
+     * @param benchmark The name of the benchmark.
+     * @param size The number of results in the dataset.
+     * @param fixture The step run before each iteration, or null.
+     * @param task The task to time.
+     * @return The result, which is also kept for writing.
+     * @throws Exception if the fixture or the task failed.
+     */
+    public Result run(String benchmark, long size, Fixture fixture, Task task) throws Exception
+    {
+        return run(benchmark, size, 1, fixture, task);
+    }
+
+    /**
+     * Times a task that runs several times per iteration, reporting the time per operation.
+     * @param benchmark The name of the benchmark.
+     * @param size The number of results in the dataset.
+     * @param operations The number of times the task runs per iteration.
+     * @param fixture The step run before each iteration, or null.
+     * @param task The task to time.
+     * @return The result, which is also kept for writing.
+     * @throws Exception if the fixture or the task failed.
+     */
+    public Result run(String benchmark, long size, int operations, Fixture fixture, Task task) throws Exception
+    {
+        long[] nanosPerOp = new long[measuredIterations];
+        for (int i = 0; i < warmupIterations + measuredIterations; i++) {
+            if (fixture != null) {
+                fixture.run();
+            }
+            long start = System.nanoTime();
+            long hash = 0;
+            for (int op = 0; op < operations; op++) {
+                Object value = task.run();
+                hash += value == null ? 0 : value.hashCode();
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += hash;
+            if (i >= warmupIterations) {
+                nanosPerOp[i - warmupIterations] = elapsed / operations;
+            }
+        }
+
+        Result result = new Result(benchmark, size, operations, nanosPerOp);
+        results.add(result);
+        System.out.printf(Locale.ROOT, "%-28s %,10d results %,14.0f ns/op  (+/- %,.0f)%n", benchmark, size, result.getMeanNanos(), result.getStddevNanos());
+        return result;
+    }
+
+    /**
+     * Gets every result timed so far.
+     * @return The results, in the order they were timed.
+     */
+    public List<Result> getResults()
+    {
+        return results;
+    }
+
+    /**
+     * Writes every result timed so far to a CSV file with a header row.
+     * @param file The file to write to. It is replaced if it exists.
+     * @throws IOException if the file could not be written.
+     */
+    public void writeCsv(File file) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8)) {
+            out.println(HEADER);
+            for (Result result : results) {
+                out.println(result.toCsv());
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * The LeaderboardBenchmark class measures the main paths of the program on synthetic datasets: reading competition
+ * files, loading the data into memory, sorting the roster, looking up competitions and students, and exporting. Each
+ * dataset is generated in a temporary directory that is deleted afterwards, and the timings are written to a CSV file.
+ *
+ * Usage: java LeaderboardBenchmark [--sizes 1000,100000,1000000] [--warmup 2] [--iterations 5] [--out bench-results.csv]
+ */
+public class LeaderboardBenchmark {
+    private static final long SEED = 42;
+    private static final int LOOKUPS_PER_ITERATION = 1000;
+    private static final int COMPETITION_LOOKUPS_PER_ITERATION = 20;
+
+    /**
+     * Runs the benchmarks.
+     * @param args The command line options.
+     * @throws Exception if a benchmark failed.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        long[] sizes = {1000, 100000, 1000000};
+        int warmup = 2;
+        int iterations = 5;
+        File out = new File("bench-results.csv");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes" -> sizes = Stream.of(args[i + 1].split(",")).mapToLong(Long::parseLong).toArray();
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                case "--iterations" -> iterations = Integer.parseInt(args[i + 1]);
+                case "--out" -> out = new File(args[i + 1]);
+                default -> {
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+                }
+            }
+        }
+
+        BenchmarkHarness harness = new BenchmarkHarness(warmup, iterations);
+        Path root = Files.createTempDirectory("leaderboard-bench-");
+        try {
+            for (long size : sizes) {
+                runAll(harness, root.resolve(Long.toString(size)), size);
+            }
+        } finally {
+            deleteRecursively(root);
+        }
+
+        harness.writeCsv(out);
+        System.out.println("Wrote " + harness.getResults().size() + " results to " + out.getAbsolutePath());
+    }
+
+    /**
+     * Runs every benchmark on a dataset of one size.
+     * @param harness The harness timing the benchmarks.
+     * @param dir The directory for the dataset, created if needed.
+     * @param size The number of results to generate.
+     * @throws Exception if a benchmark failed.
+     */
+    private static void runAll(BenchmarkHarness harness, Path dir, long size) throws Exception
+    {
+        Files.createDirectories(dir);
+        List<File> files = writeDataset(dir, size, SEED);
+
+        // Reading competition files one at a time, into a new database every iteration
+        File readDb = dir.resolve("read.db").toFile();
+        DatabaseHandler[] current = new DatabaseHandler[1];
+        harness.run("ingest.read", size, () -> {
+            if (current[0] != null) {
+                current[0].close();
+            }
+            Files.deleteIfExists(readDb.toPath());
+            current[0] = new DatabaseHandler("jdbc:sqlite:" + readDb.getAbsolutePath());
+        }, () -> {
+            SpreadsheetParser parser = new SpreadsheetParser(current[0]);
+            int added = 0;
+            for (File file : files) {
+                added += parser.read(file, IngestPipeline.competitionName(file));
+            }
+            return added;
+        });
+        current[0].close();
+
+        // The remaining benchmarks only read, so they share one database
+        File db = dir.resolve("bench.db").toFile();
+        DatabaseHandler dbHandler = new DatabaseHandler("jdbc:sqlite:" + db.getAbsolutePath());
+        try {
+            new IngestPipeline(dbHandler).ingest(files);
+
+            harness.run("hydrate.loadData", size, null, () -> {
+                DataHandler loaded = new DataHandler();
+                try (ConnectionPool.PooledConnection reader = dbHandler.borrowRead()) {
+                    loaded.loadData(reader.getConnection());
+                }
+                return loaded.getStudents().length;
+            });
+
+            DataHandler dataHandler = new DataHandler();
+            try (ConnectionPool.PooledConnection reader = dbHandler.borrowRead()) {
+                dataHandler.loadData(reader.getConnection());
+            }
+            harness.run("sort.byProblem", size, null, () -> dataHandler.sortRosterByProblem().length);
+            harness.run("sort.byCompetition", size, null, () -> dataHandler.sortRosterByCompetition().length);
+
+            Competition[] competitions = dataHandler.getCompetition();
+            Student[] students = dataHandler.getStudents();
+            Random random = new Random(SEED);
+            harness.run("lookup.competitionData", size, COMPETITION_LOOKUPS_PER_ITERATION, null, () -> {
+                String name = competitions[random.nextInt(competitions.length)].getName();
+                try (ConnectionPool.PooledConnection reader = dbHandler.borrowRead()) {
+                    return dataHandler.getCompetitionData(name, reader.getConnection()).length;
+                }
+            });
+            harness.run("lookup.student", size, LOOKUPS_PER_ITERATION, null, () -> {
+                String name = students[random.nextInt(students.length)].getName();
+                try (ConnectionPool.PooledConnection reader = dbHandler.borrowRead()) {
+                    return dataHandler.getStudent(name, reader.getConnection()).length;
+                }
+            });
+
+            DataExporter exporter = new DataExporter(dbHandler);
+            File exportFile = dir.resolve("export.csv").toFile();
+            harness.run("export.csv", size, null, () -> exporter.exportCsv(exportFile, false, null));
+            harness.run("export.csvGzip", size, null, () -> exporter.exportCsv(exportFile, true, null));
+        } finally {
+            dbHandler.close();
+        }
+    }
+
+    /**
+     * Writes a synthetic dataset as competition files in the layout SpreadsheetParser reads. Teams have one to three
+     * members drawn from a pool of returning students, so students appear in several competitions.
+     * @param dir The directory to write to.
+     * @param results The approximate number of results to generate.
+     * @param seed The seed of the random numbers, so datasets are the same every run.
+     * @return The files written.
+     * @throws IOException if a file could not be written.
+     */
+    private static List<File> writeDataset(Path dir, long results, long seed) throws IOException
+    {
+        DatasetGenerator generator = new DatasetGenerator();
+        generator.setSeed(seed);
+        generator.setTeamSize(1, 3);
+        generator.setTeamsPerCompetition(500);
+        generator.setCompetitions((int) Math.max(1, results / 2 / 500));
+        generator.setStudents((int) Math.max(10, results / 5));
+        List<File> files = generator.writeCompetitionFiles(dir);
+        generator.checkCompetitionFiles(files);
+        System.out.printf("Generated %d competitions with about %d results in %s%n", files.size(), generator.getExpectedResults(), dir);
+        return files;
+    }
+
+    /**
+     * Deletes a directory and everything in it.
+     * @param dir The directory to delete.
+     * @throws IOException if something could not be deleted.
+     */
+    private static void deleteRecursively(Path dir) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * The ParallelRosterBenchmark class measures how the parallel sort and aggregation of ParallelRoster speed up with
+ * the number of cores. A synthetic roster is built in memory, so no database is needed, and every benchmark is run
+ * on fork/join pools of 1, 2, 4, ... threads up to the number of cores. The timings are written to a CSV file and the
+ * speedup over one thread is printed for each.
+ *
+ * Usage: java ParallelRosterBenchmark [--sizes 100000,1000000] [--cores 1,2,4,8] [--threshold 8192]
+ *                                     [--warmup 3] [--iterations 5] [--out bench-parallel.csv]
+ */
+public class ParallelRosterBenchmark {
+    private static final long SEED = 42;
+    private static final int COMPETITIONS = 200;
+
+    /**
+     * Runs the benchmarks.
+     * @param args The command line options.
+     * @throws Exception if a benchmark failed.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int[] sizes = {100000, 1000000};
+        int[] cores = defaultCores(Runtime.getRuntime().availableProcessors());
+        int threshold = ParallelRoster.DEFAULT_THRESHOLD;
+        int warmup = 3;
+        int iterations = 5;
+        File out = new File("bench-parallel.csv");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--sizes" -> sizes = Stream.of(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--cores" -> cores = Stream.of(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--threshold" -> threshold = Integer.parseInt(args[i + 1]);
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                case "--iterations" -> iterations = Integer.parseInt(args[i + 1]);
+                case "--out" -> out = new File(args[i + 1]);
+                default -> {
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+                }
+            }
+        }
+
+        BenchmarkHarness harness = new BenchmarkHarness(warmup, iterations);
+        for (int size : sizes) {
+            Student[] students = buildRoster(size, SEED);
+            // Many ties, so the sort has to keep equal students in order
+            Comparator<Student> order = Comparator.comparingInt(Student::getTotalProb).reversed()
+                    .thenComparing(Student::getLastName);
+            Student[] work = new Student[students.length];
+
+            harness.run("sequential.sort", size, () -> System.arraycopy(students, 0, work, 0, students.length), () -> {
+                Arrays.sort(work, order);
+                return work[0].getId();
+            });
+
+            Map<Integer, Double> sortTimes = new LinkedHashMap<>();
+            Map<Integer, Double> totalTimes = new LinkedHashMap<>();
+            Map<Integer, Double> byCompetitionTimes = new LinkedHashMap<>();
+            for (int threads : cores) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    ParallelRoster roster = new ParallelRoster(pool, threshold);
+                    sortTimes.put(threads, harness.run("parallel.sort.p" + threads, size,
+                            () -> System.arraycopy(students, 0, work, 0, students.length), () -> {
+                                roster.sort(work, order);
+                                return work[0].getId();
+                            }).getMeanNanos());
+                    totalTimes.put(threads, harness.run("parallel.total.p" + threads, size, null,
+                            () -> roster.total(students).getProblems()).getMeanNanos());
+                    byCompetitionTimes.put(threads, harness.run("parallel.byCompetition.p" + threads, size, null,
+                            () -> roster.totalByCompetition(students).size()).getMeanNanos());
+                } finally {
+                    pool.shutdown();
+                }
+            }
+
+            System.out.printf(Locale.ROOT, "Speedup over 1 thread, %,d students:%n", size);
+            printSpeedup("sort", sortTimes);
+            printSpeedup("total", totalTimes);
+            printSpeedup("byCompetition", byCompetitionTimes);
+        }
+
+        harness.writeCsv(out);
+        System.out.println("Wrote " + harness.getResults().size() + " results to " + out.getAbsolutePath());
+    }
+
+    /**
+     * Gets the powers of two up to a number of cores, and the number itself.
+     * @param available The number of cores.
+     * @return The thread counts to run with.
+     */
+    private static int[] defaultCores(int available)
+    {
+        List<Integer> cores = new ArrayList<>();
+        for (int n = 1; n < available; n *= 2) {
+            cores.add(n);
+        }
+        cores.add(available);
+        return cores.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Prints the speedup of each thread count over the first one.
+     * @param name The name of the benchmark.
+     * @param times The mean time of each thread count, in nanoseconds.
+     */
+    private static void printSpeedup(String name, Map<Integer, Double> times)
+    {
+        double base = times.values().iterator().next();
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "  %-14s", name));
+        times.forEach((threads, nanos) -> line.append(String.format(Locale.ROOT, "  p%d %.2fx", threads, base / nanos)));
+        System.out.println(line);
+    }
+
+    /**
+     * Builds a roster with results held in a ResultStore, like a loaded one. Each student takes part in a few
+     * competitions.
+     * @param size The number of students.
+     * @param seed The seed of the random numbers, so rosters are the same every run.
+     * @return The students.
+     */
+    private static Student[] buildRoster(int size, long seed)
+    {
+        Random random = new Random(seed);
+        ResultStore.Builder results = new ResultStore.Builder();
+        for (int c = 1; c <= COMPETITIONS; c++) {
+            results.addCompetition(c, "Competition " + c);
+        }
+        Student[] students = new Student[size];
+        for (int i = 0; i < size; i++) {
+            students[i] = new Student(i + 1, "First" + random.nextInt(2000), "Last" + random.nextInt(5000),
+                    "student" + (i + 1) + "@example.edu", random.nextInt(3) == 0 ? Level.ADVANCED : Level.NOVICE);
+            results.addStudent(i + 1);
+            int competitions = 1 + random.nextInt(6);
+            for (int k = 0; k < competitions; k++) {
+                results.addResult(1 + random.nextInt(COMPETITIONS), random.nextInt(12), 1 + random.nextInt(100));
+            }
+        }
+        ResultStore store = results.build();
+        for (int i = 0; i < size; i++) {
+            students[i].useResults(store, i);
+        }
+        return students;
+    }
+}
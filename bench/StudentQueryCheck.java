@@ -0,0 +1,272 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * The StudentQueryCheck class runs the same student queries through every plan and checks they give the same rows:
+ * walking a leaderboard index, scanning the roster, and, when a database is given, the SQL query over student_stats.
+ * The students are synthetic, with many ties and with names that differ only in the case of non-ASCII letters, so
+ * the tie breaking and the case folding of contains are both exercised. It exits with status 1 if any plan differs.
+ *
+ * Usage: java StudentQueryCheck [--students 5000] [--db jdbc:sqlite:check.db]
+ *
+ * The database should be new or empty, the students are written to it first.
+ */
+public class StudentQueryCheck {
+    private static final long SEED = 42;
+    private static final int COMPETITIONS = 20;
+    private static final String[] FIRST_NAMES = {"Ann", "ann", "\u00c9mile", "\u00e9mile", "Zo\u00eb", "ZO\u00cb", "\u00c5sa", "Omar", "Li", "Nkechi"};
+    private static final String[] LAST_NAMES = {"Smith", "SMITH", "\u00d8stergaard", "\u00f8stergaard", "Nguyen", "M\u00fcller", "Okafor"};
+
+    private static int checked;
+    private static int differed;
+
+    /**
+     * Runs the check.
+     * @param args The command line options.
+     * @throws Exception if the students could not be written or loaded.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int size = 5000;
+        String dbUrl = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--students" -> size = Integer.parseInt(args[i + 1]);
+                case "--db" -> dbUrl = args[i + 1];
+                default -> {
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+                }
+            }
+        }
+
+        Map<String, List<TeamResult>> results = buildResults(size, SEED);
+        DataHandler dataHandler = new DataHandler();
+        DatabaseHandler dbHandler = null;
+        if (dbUrl == null) {
+            load(dataHandler, results);
+        } else {
+            dbHandler = new DatabaseHandler(dbUrl);
+            for (Map.Entry<String, List<TeamResult>> comp : results.entrySet()) {
+                dbHandler.addTeamResults(comp.getKey(), comp.getValue(), 0);
+            }
+            try (ConnectionPool.PooledConnection reader = dbHandler.borrowRead()) {
+                dataHandler.loadData(reader.getConnection());
+            }
+        }
+
+        List<Student> roster = Arrays.asList(dataHandler.getStudents());
+        int last = roster.size();
+        for (Map.Entry<String, Supplier<StudentQuery.Predicate>> filter : filters().entrySet()) {
+            for (Map.Entry<String, StudentQuery.Field[]> order : orders().entrySet()) {
+                for (int[] page : new int[][]{{0, -1}, {0, 10}, {37, 25}, {last - 5, 100}, {last + 10, 10}}) {
+                    StudentQuery query = new StudentQuery().offset(page[0]).limit(page[1]);
+                    query.select(StudentQuery.Field.ID, StudentQuery.Field.NAME, StudentQuery.Field.LEVEL, StudentQuery.Field.PROBLEMS,
+                            StudentQuery.Field.COMPETITIONS, StudentQuery.Field.BEST_PLACEMENT);
+                    if (filter.getValue() != null) {
+                        query.where(filter.getValue().get());
+                    }
+                    StudentQuery.Field[] fields = order.getValue();
+                    for (int f = 0; f < fields.length; f += 2) {
+                        query.orderBy(fields[f], fields[f + 1] != null);
+                    }
+                    String label = filter.getKey() + ", " + order.getKey() + ", offset " + page[0] + ", limit " + page[1];
+                    check(label, query, dataHandler, roster, dbHandler);
+                }
+            }
+        }
+
+        System.out.println("Checked " + checked + " queries" + (dbHandler == null ? " in memory only" : " in memory and in SQL") + ", " + differed + " differed");
+        if (dbHandler != null) {
+            dbHandler.close();
+        }
+        if (differed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs a query through every plan and reports any plan whose rows or count differ from the scan.
+     * @param label The description of the query.
+     * @param query The query.
+     * @param dataHandler The loaded students.
+     * @param roster The loaded students, in roster order.
+     * @param dbHandler The database the students were written to, or null.
+     * @throws SQLException if the database could not be read.
+     */
+    private static void check(String label, StudentQuery query, DataHandler dataHandler, List<Student> roster, DatabaseHandler dbHandler) throws SQLException
+    {
+        checked++;
+        List<Object[]> expected = rows(query.scan(roster));
+        int expectedCount = query.count(roster);
+        boolean same = true;
+        if (query.plan(true) == StudentQuery.Plan.INDEX) {
+            same &= compare(label, "INDEX", expected, rows(dataHandler.query(query, null)));
+        }
+        if (dbHandler != null) {
+            same &= compare(label, "SQL", expected, rows(query.execute(dbHandler)));
+            int count = query.count(dbHandler);
+            if (count != expectedCount) {
+                System.out.println(label + ": SQL counted " + count + ", SCAN counted " + expectedCount);
+                same = false;
+            }
+        }
+        if (!same) {
+            differed++;
+        }
+    }
+
+    /**
+     * Compares the rows of a plan with the rows of the scan, reporting the first difference.
+     * @param label The description of the query.
+     * @param plan The name of the plan.
+     * @param expected The rows of the scan.
+     * @param actual The rows of the plan.
+     * @return true if the rows are the same.
+     */
+    private static boolean compare(String label, String plan, List<Object[]> expected, List<Object[]> actual)
+    {
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+            if (!Arrays.equals(expected.get(i), actual.get(i))) {
+                System.out.println(label + ": row " + i + " is " + Arrays.toString(actual.get(i)) + " in " + plan + ", "
+                        + Arrays.toString(expected.get(i)) + " in SCAN");
+                return false;
+            }
+        }
+        if (expected.size() != actual.size()) {
+            System.out.println(label + ": " + plan + " gave " + actual.size() + " rows, SCAN gave " + expected.size());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads every row of a cursor.
+     * @param cursor The cursor.
+     * @return The rows.
+     */
+    private static List<Object[]> rows(StudentQuery.Cursor cursor)
+    {
+        List<Object[]> rows = new ArrayList<>();
+        try (cursor) {
+            cursor.forEachRemaining(rows::add);
+        }
+        return rows;
+    }
+
+    /**
+     * Gets the conditions to check, each with every kind of predicate at least once.
+     * @return The conditions by description, with null for no condition.
+     */
+    private static Map<String, Supplier<StudentQuery.Predicate>> filters()
+    {
+        Map<String, Supplier<StudentQuery.Predicate>> filters = new LinkedHashMap<>();
+        filters.put("every student", null);
+        filters.put("advanced", () -> StudentQuery.eq(StudentQuery.Field.LEVEL, Level.ADVANCED));
+        filters.put("at least 20 problems", () -> StudentQuery.ge(StudentQuery.Field.PROBLEMS, 20));
+        filters.put("3 competitions or placed under 5", () -> StudentQuery.or(StudentQuery.eq(StudentQuery.Field.COMPETITIONS, 3),
+                StudentQuery.lt(StudentQuery.Field.BEST_PLACEMENT, 5)));
+        filters.put("name contains \"ann\"", () -> StudentQuery.contains(StudentQuery.Field.NAME, "ann"));
+        filters.put("name contains \"\u00e9mile\"", () -> StudentQuery.contains(StudentQuery.Field.NAME, "\u00e9mile"));
+        filters.put("name contains \"ZO\u00cb\"", () -> StudentQuery.contains(StudentQuery.Field.NAME, "ZO\u00cb"));
+        filters.put("last name without \"\u00f8stergaard\"", () -> StudentQuery.not(StudentQuery.contains(StudentQuery.Field.LAST_NAME, "\u00f8stergaard")));
+        filters.put("novice with fewer than 10 problems", () -> StudentQuery.and(StudentQuery.ne(StudentQuery.Field.LEVEL, Level.ADVANCED),
+                StudentQuery.le(StudentQuery.Field.PROBLEMS, 9), StudentQuery.gt(StudentQuery.Field.COMPETITIONS, 0)));
+        return filters;
+    }
+
+    /**
+     * Gets the orders to check. Each is a list of fields, each followed by a non-null value to sort it highest first.
+     * @return The orders by description.
+     */
+    private static Map<String, StudentQuery.Field[]> orders()
+    {
+        StudentQuery.Field desc = StudentQuery.Field.ID;
+        Map<String, StudentQuery.Field[]> orders = new LinkedHashMap<>();
+        orders.put("roster order", new StudentQuery.Field[0]);
+        orders.put("by problems", new StudentQuery.Field[]{StudentQuery.Field.PROBLEMS, desc, StudentQuery.Field.COMPETITIONS, desc});
+        orders.put("by competitions", new StudentQuery.Field[]{StudentQuery.Field.COMPETITIONS, desc, StudentQuery.Field.PROBLEMS, desc});
+        orders.put("by problems then id", new StudentQuery.Field[]{StudentQuery.Field.PROBLEMS, desc, StudentQuery.Field.COMPETITIONS, desc,
+                StudentQuery.Field.ID, null});
+        orders.put("by name", new StudentQuery.Field[]{StudentQuery.Field.LAST_NAME, null, StudentQuery.Field.FIRST_NAME, null});
+        orders.put("by best placement", new StudentQuery.Field[]{StudentQuery.Field.BEST_PLACEMENT, null});
+        orders.put("by problems, fewest first", new StudentQuery.Field[]{StudentQuery.Field.PROBLEMS, null});
+        return orders;
+    }
+
+    /**
+     * Builds the results of the synthetic students. Each student takes part in a few competitions alone.
+     * @param size The number of students.
+     * @param seed The seed of the random numbers, so the students are the same every run.
+     * @return The results of each competition, by competition name.
+     */
+    private static Map<String, List<TeamResult>> buildResults(int size, long seed)
+    {
+        Random random = new Random(seed);
+        Map<String, List<TeamResult>> results = new LinkedHashMap<>();
+        for (int c = 1; c <= COMPETITIONS; c++) {
+            results.put("Competition " + c, new ArrayList<>());
+        }
+        for (int i = 0; i < size; i++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            Level level = random.nextInt(3) == 0 ? Level.ADVANCED : Level.NOVICE;
+            String email = "student" + (i + 1) + "@example.edu";
+            int competitions = 1 + random.nextInt(5);
+            List<Integer> entered = new ArrayList<>();
+            while (entered.size() < competitions) {
+                int c = 1 + random.nextInt(COMPETITIONS);
+                if (!entered.contains(c)) {
+                    entered.add(c);
+                }
+            }
+            for (int c : entered) {
+                results.get("Competition " + c).add(new TeamResult(level, name, email, "", "", "", "", random.nextInt(12), 1 + random.nextInt(50)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Loads the synthetic students without a database, numbering them in the order they first appear like the
+     * database would.
+     * @param dataHandler The DataHandler to load into.
+     * @param results The results of each competition, by competition name.
+     */
+    private static void load(DataHandler dataHandler, Map<String, List<TeamResult>> results)
+    {
+        List<Competition> competitions = new ArrayList<>();
+        Map<String, Student> byEmail = new LinkedHashMap<>();
+        // By student ID, since students are equal by name
+        Map<Integer, List<int[]>> entries = new LinkedHashMap<>();
+        for (Map.Entry<String, List<TeamResult>> comp : results.entrySet()) {
+            int compId = competitions.size() + 1;
+            competitions.add(new Competition(compId, comp.getKey()));
+            for (TeamResult row : comp.getValue()) {
+                Student student = byEmail.computeIfAbsent(row.getEmail(0), email -> {
+                    String[] name = row.getMember(0).split(" ", 2);
+                    return new Student(byEmail.size() + 1, name[0], name[1], email, row.getTeamType());
+                });
+                entries.computeIfAbsent(student.getId(), id -> new ArrayList<>()).add(new int[]{compId, row.getProblemsSolved(), row.getPlacement()});
+            }
+        }
+
+        ResultStore.Builder store = new ResultStore.Builder();
+        for (Competition comp : competitions) {
+            store.addCompetition(comp.getId(), comp.getName());
+        }
+        List<Student> students = new ArrayList<>(byEmail.values());
+        for (Student student : students) {
+            store.addStudent(student.getId());
+            for (int[] entry : entries.get(student.getId())) {
+                store.addResult(entry[0], entry[1], entry[2]);
+            }
+        }
+        dataHandler.replaceData(competitions, students, store.build());
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.File;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The BatchCli class runs one command against the database without any dialogs, so imports and exports can be
+ * scripted and run on a server without a display. Commands only touch the tables they need and never load the whole
+ * roster into memory. Every command prints how long it took and how many rows it handled per second.
+ *
+ * Usage: java Leaderboard [--db FILE] COMMAND
+ *   import PATH...                         Loads CSV files, or every CSV file of a folder, one competition per file
+ *   export FILE                            Writes every result to FILE, compressed if it ends with ".gz"
+ *   leaderboard [--top N] [--by problems|competitions]
+ *   wipe                                   Removes all data
+ *   stats                                  Prints the size of every table and the metrics
+ */
+public class BatchCli {
+    /** The database used when no --db option is given. */
+    public static final String DEFAULT_DATABASE = "competition-student-database.db";
+
+    private static final String LEADERBOARD_QUERY = """
+            SELECT s.firstname, s.lastname, st.total_problems, st.competitions
+            FROM student_stats st
+            JOIN students s ON s.id = st.student_id
+            ORDER BY st.%s DESC, st.%s DESC, st.student_id
+            LIMIT ?""";
+
+    private DatabaseHandler db;
+
+    /**
+     * Constructs a BatchCli object.
+     * @param dbHandler The DatabaseHandler to run the commands against.
+     */
+    public BatchCli(DatabaseHandler dbHandler)
+    {
+        this.db = dbHandler;
+    }
+
+    /**
+     * Runs the command given on the command line.
+     * @param args The command line arguments.
+     * @return The exit status, 0 on success.
+     */
+    public static int run(String[] args)
+    {
+        String database = DEFAULT_DATABASE;
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("--db")) {
+            database = args[1];
+            first = 2;
+        }
+        if (first >= args.length) {
+            printUsage();
+            return 2;
+        }
+
+        String command = args[first];
+        List<String> rest = List.of(args).subList(first + 1, args.length);
+        DatabaseHandler dbHandler = new DatabaseHandler("jdbc:sqlite:" + database, profileFor(command));
+        try {
+            long start = System.nanoTime();
+            long rows = new BatchCli(dbHandler).execute(command, rest);
+            if (rows < 0) {
+                return 2;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "%s: %,d rows in %.2f s (%,.0f rows/sec)%n", command, rows, seconds, rows / Math.max(seconds, 1e-9));
+            return 0;
+        } catch (SQLException | IOException e) {
+            System.out.println(command + " failed: " + e.getMessage());
+            return 1;
+        } finally {
+            dbHandler.close();
+        }
+    }
+
+    /**
+     * Chooses the SQLite settings for a command. Commands that only read leave the journal mode of the file alone, so
+     * running one does not switch the database the program shares with the menu to WAL. Imports use the durable
+     * settings of the menu; loads of several files switch to the bulk settings for the load and back afterwards.
+     * @param command The name of the command.
+     * @return The settings to open the database with.
+     */
+    static PragmaProfile profileFor(String command)
+    {
+        switch (command) {
+            case "export":
+            case "leaderboard":
+            case "stats":
+                return PragmaProfile.REPORT;
+            default:
+                return PragmaProfile.INTERACTIVE;
+        }
+    }
+
+    /**
+     * Runs one command.
+     * @param command The name of the command.
+     * @param args The arguments after the command name.
+     * @return The number of rows handled, or -1 if the command or its arguments were not valid.
+     * @throws SQLException if a database access error occurs.
+     * @throws IOException if a file could not be read or written.
+     */
+    public long execute(String command, List<String> args) throws SQLException, IOException
+    {
+        switch (command) {
+            case "import":
+                return importFiles(args);
+            case "export":
+                if (args.size() != 1) {
+                    printUsage();
+                    return -1;
+                }
+                return exportResults(new File(args.get(0)));
+            case "leaderboard":
+                return printLeaderboard(args);
+            case "wipe":
+                return wipe();
+            case "stats":
+                return printStats();
+            default:
+                System.out.println("Unknown command: " + command);
+                printUsage();
+                return -1;
+        }
+    }
+
+    /**
+     * Loads CSV files into the database, each file as the competition named after it.
+     * @param paths The files and folders to load.
+     * @return The number of results added, or -1 if no CSV file was found.
+     * @throws IOException if a file could not be loaded to its end, or the load was interrupted.
+     * @throws SQLException if the rows could not be written, or the bulk load could not be started or finished.
+     */
+    private long importFiles(List<String> paths) throws IOException, SQLException
+    {
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                files.addAll(IngestPipeline.listCsvFiles(file));
+            } else if (file.getName().toLowerCase().endsWith(".csv")) {
+                files.add(file);
+            } else {
+                System.out.println("Skipping " + path + ", not a CSV file or folder");
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("No CSV files to import.");
+            return -1;
+        }
+
+        // A single file is not worth starting the parser threads for
+        if (files.size() == 1) {
+            return new SpreadsheetParser(db).read(files.get(0), IngestPipeline.competitionName(files.get(0)));
+        }
+        IngestPipeline pipeline = new IngestPipeline(db);
+        int added = pipeline.ingest(files);
+        if (!pipeline.getFailedFiles().isEmpty()) {
+            throw new IOException(pipeline.getFailedFiles().size() + " of " + files.size() + " files were not loaded completely, " + added + " results were added");
+        }
+        return added;
+    }
+
+    /**
+     * Writes every result to a CSV file.
+     * @param file The file to write, compressed with gzip if its name ends with ".gz".
+     * @return The number of rows written.
+     * @throws SQLException if a database access error occurs.
+     * @throws IOException if the file could not be written.
+     */
+    private long exportResults(File file) throws SQLException, IOException
+    {
+        return new DataExporter(db).exportCsv(file, file.getName().endsWith(".gz"), null);
+    }
+
+    /**
+     * Prints the top of the leaderboard from the stored aggregates, without loading any results.
+     * @param args The options, --top N and --by problems or competitions.
+     * @return The number of students printed, or -1 if an option was not valid.
+     * @throws SQLException if a database access error occurs.
+     */
+    private long printLeaderboard(List<String> args) throws SQLException
+    {
+        int top = 10;
+        LeaderboardIndex.Order order = LeaderboardIndex.Order.PROBLEMS;
+        for (int i = 0; i < args.size(); i += 2) {
+            String value = i + 1 < args.size() ? args.get(i + 1) : "";
+            try {
+                switch (args.get(i)) {
+                    case "--top" -> top = Integer.parseInt(value);
+                    case "--by" -> order = LeaderboardIndex.Order.valueOf(value.toUpperCase(Locale.ROOT));
+                    default -> throw new IllegalArgumentException("unknown option " + args.get(i));
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid leaderboard option: " + args.get(i) + " " + value);
+                printUsage();
+                return -1;
+            }
+        }
+
+        // Same order as LeaderboardIndex: the chosen count, then the other one, then the lower id, which is the order
+        // of idx_stats_problems and idx_stats_competitions, so only the rows printed are read
+        String query = order == LeaderboardIndex.Order.PROBLEMS
+                ? String.format(LEADERBOARD_QUERY, "total_problems", "competitions")
+                : String.format(LEADERBOARD_QUERY, "competitions", "total_problems");
+        long printed = 0;
+        try (ConnectionPool.PooledConnection reader = db.borrowRead()) {
+            PreparedStatement stmt = reader.prepare(query);
+            stmt.setInt(1, Math.max(0, top));
+            try (ResultSet rs = stmt.executeQuery()) {
+                System.out.printf("%-6s %-30s %10s %14s%n", "Rank", "Name", "Problems", "Competitions");
+                while (rs.next()) {
+                    printed++;
+                    System.out.printf("%-6d %-30s %10d %14d%n", printed, rs.getString("firstname") + " " + rs.getString("lastname"),
+                            rs.getInt("total_problems"), rs.getInt("competitions"));
+                }
+            }
+        }
+        return printed;
+    }
+
+    /**
+     * Removes all data from the database.
+     * @return The number of results that were removed.
+     * @throws SQLException if a database access error occurs.
+     */
+    private long wipe() throws SQLException
+    {
+        long results = count("results");
+        db.wipeDatabase();
+        return results;
+    }
+
+    /**
+     * Prints the number of rows of every table, the generation number and the metrics gathered so far.
+     * @return The number of results in the database.
+     * @throws SQLException if a database access error occurs.
+     */
+    private long printStats() throws SQLException
+    {
+        long results = count("results");
+        System.out.printf("students     %,d%n", count("students"));
+        System.out.printf("competitions %,d%n", count("competitions"));
+        System.out.printf("results      %,d%n", results);
+        System.out.printf("generation   %d%n", db.getGeneration());
+        System.out.print(Metrics.shared().report());
+        return results;
+    }
+
+    /**
+     * Counts the rows of a table.
+     * @param table The name of the table, which must be one of the program's own tables.
+     * @return The number of rows.
+     * @throws SQLException if a database access error occurs.
+     */
+    private long count(String table) throws SQLException
+    {
+        try (ConnectionPool.PooledConnection reader = db.borrowRead();
+             ResultSet rs = reader.prepare("SELECT COUNT(*) FROM " + table).executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Prints how to use the command line.
+     */
+    private static void printUsage()
+    {
+        System.out.println("Usage: java Leaderboard [--db FILE] COMMAND");
+        System.out.println("  import PATH...                                   Load CSV files or folders, one competition per file");
+        System.out.println("  export FILE                                      Write every result, compressed if FILE ends with .gz");
+        System.out.println("  leaderboard [--top N] [--by problems|competitions]");
+        System.out.println("  wipe                                             Remove all data");
+        System.out.println("  stats                                            Print table sizes and metrics");
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ChangeSet class lists the rows that one committed transaction added to or removed from the database, so the
+ * in-memory data can be updated without reloading everything.
+ */
+public class ChangeSet {
+    private boolean wiped;
+    private List<Student> addedStudents = new ArrayList<>();
+    private List<Competition> addedCompetitions = new ArrayList<>();
+    private List<int[]> addedResults = new ArrayList<>();
+    private List<Integer> removedStudents = new ArrayList<>();
+    private List<Integer> removedCompetitions = new ArrayList<>();
+    private List<int[]> removedResults = new ArrayList<>();
+
+    /**
+     * Records that every row was deleted.
+     */
+    public void wipe()
+    {
+        wiped = true;
+    }
+
+    /**
+     * Records a new student. The student has no competitions yet; their results are recorded separately.
+     * @param student The new student.
+     */
+    public void addStudent(Student student)
+    {
+        addedStudents.add(student);
+    }
+
+    /**
+     * Records a new competition.
+     * @param competition The new competition.
+     */
+    public void addCompetition(Competition competition)
+    {
+        addedCompetitions.add(competition);
+    }
+
+    /**
+     * Records a new result.
+     * @param studentId The ID of the student.
+     * @param competitionId The ID of the competition.
+     * @param problemsSolved The number of problems solved.
+     * @param placement The placement in the competition.
+     */
+    public void addResult(int studentId, int competitionId, int problemsSolved, int placement)
+    {
+        addedResults.add(new int[]{studentId, competitionId, problemsSolved, placement});
+    }
+
+    /**
+     * Records a removed student, whose results are removed with them.
+     * @param studentId The ID of the student.
+     */
+    public void removeStudent(int studentId)
+    {
+        removedStudents.add(studentId);
+    }
+
+    /**
+     * Records a removed competition. The results it removed from other students are recorded separately.
+     * @param competitionId The ID of the competition.
+     */
+    public void removeCompetition(int competitionId)
+    {
+        removedCompetitions.add(competitionId);
+    }
+
+    /**
+     * Records the removed results of a student in a competition.
+     * @param studentId The ID of the student.
+     * @param competitionId The ID of the competition.
+     */
+    public void removeResults(int studentId, int competitionId)
+    {
+        removedResults.add(new int[]{studentId, competitionId});
+    }
+
+    /**
+     * Checks if every row was deleted before the other changes.
+     * @return true if the database was wiped, false otherwise.
+     */
+    public boolean isWiped()
+    {
+        return wiped;
+    }
+
+    /**
+     * Checks if nothing changed.
+     * @return true if there are no changes, false otherwise.
+     */
+    public boolean isEmpty()
+    {
+        return !wiped && addedStudents.isEmpty() && addedCompetitions.isEmpty() && addedResults.isEmpty()
+                && removedStudents.isEmpty() && removedCompetitions.isEmpty() && removedResults.isEmpty();
+    }
+
+    /**
+     * Gets the new students.
+     * @return The new students.
+     */
+    public List<Student> getAddedStudents()
+    {
+        return addedStudents;
+    }
+
+    /**
+     * Gets the new competitions.
+     * @return The new competitions.
+     */
+    public List<Competition> getAddedCompetitions()
+    {
+        return addedCompetitions;
+    }
+
+    /**
+     * Gets the new results.
+     * @return The new results as {student ID, competition ID, problems solved, placement}.
+     */
+    public List<int[]> getAddedResults()
+    {
+        return addedResults;
+    }
+
+    /**
+     * Gets the IDs of the removed students.
+     * @return The IDs of the removed students.
+     */
+    public List<Integer> getRemovedStudents()
+    {
+        return removedStudents;
+    }
+
+    /**
+     * Gets the IDs of the removed competitions.
+     * @return The IDs of the removed competitions.
+     */
+    public List<Integer> getRemovedCompetitions()
+    {
+        return removedCompetitions;
+    }
+
+    /**
+     * Gets the removed results.
+     * @return The removed results as {student ID, competition ID}.
+     */
+    public List<int[]> getRemovedResults()
+    {
+        return removedResults;
+    }
+}
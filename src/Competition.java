@@ -1,3 +1,5 @@
+import java.util.Objects;
+
 /**
  * The Competition class represents a competition in which students participate.
  */
@@ -76,8 +78,23 @@ public class Competition {
    * @return true if the object is a Competition with the same name, false otherwise.
    */
   public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Competition)) {
+      return false;
+    }
     Competition c = (Competition) obj;
 
-    return this.name.equals(c.getName());
+    return Objects.equals(this.name, c.getName());
+  }
+
+  /**
+   * Gets the hash code of the competition, which is based on the name like equals.
+   *
+   * @return The hash code of the competition.
+   */
+  public int hashCode() {
+    return Objects.hashCode(name);
   }
 }
@@ -0,0 +1,227 @@
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ConnectionPool class manages the connections to one SQLite database: a single write connection, guarded by a
+ * lock because SQLite only allows one writer, and a small number of read-only connections that can be used from other
+ * threads at the same time. Every connection keeps a cache of its prepared statements.
+ */
+public class ConnectionPool implements AutoCloseable {
+    /** The default number of read-only connections. */
+    public static final int DEFAULT_READERS = 4;
+
+    private String url;
+    private PragmaProfile profile;
+    private PooledConnection writer;
+    private ReentrantLock writeLock = new ReentrantLock();
+    private BlockingQueue<PooledConnection> idleReaders;
+    private int maxReaders;
+    private int openReaders;
+    private volatile boolean closed;
+
+    /**
+     * A connection borrowed from the pool. Closing it returns it to the pool instead of closing it, so it should be
+     * borrowed in a try-with-resources block. Statements from prepare must not be closed by the caller.
+     */
+    public class PooledConnection implements AutoCloseable {
+        private Connection connection;
+        private boolean readOnly;
+        private Map<String, PreparedStatement> statements = new HashMap<>();
+
+        /**
+         * Constructs a PooledConnection object.
+         * @param connection The underlying connection.
+         * @param readOnly true if this is one of the read-only connections.
+         */
+        private PooledConnection(Connection connection, boolean readOnly)
+        {
+            this.connection = connection;
+            this.readOnly = readOnly;
+        }
+
+        /**
+         * Gets the underlying connection.
+         * @return The connection.
+         */
+        public Connection getConnection()
+        {
+            return connection;
+        }
+
+        /**
+         * Checks if this is one of the read-only connections.
+         * @return true if the connection is read-only, false if it is the write connection.
+         */
+        public boolean isReadOnly()
+        {
+            return readOnly;
+        }
+
+        /**
+         * Gets a prepared statement for the SQL, preparing it on first use and reusing it afterwards.
+         * @param sql The SQL of the statement.
+         * @return The prepared statement, owned by this connection.
+         * @throws SQLException if the statement could not be prepared.
+         */
+        public PreparedStatement prepare(String sql) throws SQLException
+        {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null) {
+                stmt = connection.prepareStatement(sql);
+                statements.put(sql, stmt);
+            }
+            return stmt;
+        }
+
+        /**
+         * Returns the connection to the pool.
+         */
+        @Override
+        public void close()
+        {
+            release(this);
+        }
+
+        /**
+         * Closes the cached statements and the underlying connection.
+         */
+        private void closeConnection()
+        {
+            try {
+                for (PreparedStatement stmt : statements.values()) {
+                    stmt.close();
+                }
+                statements.clear();
+                connection.close();
+            } catch (SQLException e) {
+                System.out.println("Failed to close connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Constructs a ConnectionPool object and opens the write connection. Read-only connections are opened when first
+     * needed. In-memory databases cannot be shared between connections, so they only get the write connection.
+     * @param url The URL of the database.
+     * @param maxReaders The maximum number of read-only connections.
+     * @param profile The settings applied to every connection.
+     * @throws SQLException if the database could not be opened.
+     */
+    public ConnectionPool(String url, int maxReaders, PragmaProfile profile) throws SQLException
+    {
+        this.url = url;
+        this.profile = profile;
+        this.maxReaders = url.contains(":memory:") || url.equals("jdbc:sqlite:") ? 0 : Math.max(0, maxReaders);
+        this.idleReaders = new ArrayBlockingQueue<>(Math.max(1, this.maxReaders));
+        this.writer = new PooledConnection(DriverManager.getConnection(url), false);
+        profile.apply(writer.getConnection(), true);
+    }
+
+    /**
+     * Gets the settings applied to every connection.
+     * @return The profile of the pool.
+     */
+    public PragmaProfile getProfile()
+    {
+        return profile;
+    }
+
+    /**
+     * Borrows the write connection, waiting until no other thread holds it. The same thread may borrow it again while
+     * it holds it, as long as every borrow is closed.
+     * @return The write connection.
+     */
+    public PooledConnection borrowWrite()
+    {
+        writeLock.lock();
+        return writer;
+    }
+
+    /**
+     * Borrows a read-only connection, opening a new one if none is idle and the limit has not been reached, and
+     * waiting for one otherwise. Falls back to the write connection when there are no read-only connections, or when
+     * the calling thread already holds the write connection, so it can read its own uncommitted changes.
+     * @return A connection that may be used for reading.
+     * @throws SQLException if a new connection could not be opened.
+     */
+    public PooledConnection borrowRead() throws SQLException
+    {
+        if (maxReaders == 0 || writeLock.isHeldByCurrentThread()) {
+            return borrowWrite();
+        }
+
+        PooledConnection reader = idleReaders.poll();
+        if (reader != null) {
+            return reader;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                throw new SQLException("Connection pool is closed.");
+            }
+            if (openReaders < maxReaders) {
+                Connection connection = DriverManager.getConnection(url);
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("PRAGMA query_only = ON");
+                }
+                profile.apply(connection, false);
+                openReaders++;
+                return new PooledConnection(connection, true);
+            }
+        }
+
+        try {
+            return idleReaders.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.", e);
+        }
+    }
+
+    /**
+     * Checks if the pool has been closed.
+     * @return true if the pool is closed, false otherwise.
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * Returns a borrowed connection to the pool.
+     * @param connection The borrowed connection.
+     */
+    private void release(PooledConnection connection)
+    {
+        if (connection == writer) {
+            writeLock.unlock();
+        } else if (closed || !idleReaders.offer(connection)) {
+            connection.closeConnection();
+        }
+    }
+
+    /**
+     * Closes every connection of the pool. Read-only connections that are borrowed are closed when they are returned.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this) {
+            closed = true;
+        }
+        PooledConnection reader;
+        while ((reader = idleReaders.poll()) != null) {
+            reader.closeConnection();
+        }
+        writeLock.lock();
+        try {
+            writer.closeConnection();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
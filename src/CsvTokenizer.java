@@ -0,0 +1,320 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The CsvTokenizer class reads a CSV file one record at a time through a FileChannel and a reusable ByteBuffer.
+ * Fields are kept as offsets into a reusable record buffer, so no String or array is created per row unless a field is
+ * asked for as a String. Quoted fields follow RFC 4180: they may contain commas, line breaks and doubled quotes.
+ */
+public class CsvTokenizer implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private boolean endOfInput;
+    private long position;
+
+    private byte[] record = new byte[256];
+    private int recordLength;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private int fieldCount;
+    private boolean sawHash;
+    private boolean sawTilde;
+
+    /**
+     * Constructs a CsvTokenizer object and opens the specified file.
+     * @param file The CSV file to read.
+     * @throws FileNotFoundException if the specified file is not found.
+     * @throws IOException if the file could not be opened.
+     */
+    public CsvTokenizer(File file) throws IOException
+    {
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip(); // Start out empty
+
+        // Skip a UTF-8 byte order mark
+        if (fill() && buffer.remaining() >= 3 && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB && (buffer.get(2) & 0xFF) == 0xBF) {
+            buffer.position(3);
+            position = 3;
+        }
+    }
+
+    /**
+     * Reads the next record of the file.
+     * @return true if a record was read, false if the end of the file was reached.
+     * @throws IOException if the file could not be read.
+     */
+    public boolean nextRecord() throws IOException
+    {
+        recordLength = 0;
+        fieldCount = 0;
+        sawHash = false;
+        sawTilde = false;
+
+        boolean inQuotes = false;
+        boolean quoteClosed = false;
+        boolean any = false;
+        startField();
+
+        while (buffer.hasRemaining() || fill()) {
+            byte b = buffer.get();
+            position++;
+            any = true;
+
+            if (inQuotes) {
+                if (b == '"') {
+                    inQuotes = false;
+                    quoteClosed = true;
+                } else {
+                    append(b);
+                }
+                continue;
+            }
+
+            if (quoteClosed && b == '"') {
+                // A doubled quote inside a quoted field is a literal quote
+                append(b);
+                inQuotes = true;
+                quoteClosed = false;
+                continue;
+            }
+            quoteClosed = false;
+
+            if (b == ',') {
+                endField();
+                startField();
+            } else if (b == '\n') {
+                endField();
+                return true;
+            } else if (b == '\r') {
+                continue;
+            } else if (b == '"' && isBlank(fieldStart[fieldCount], recordLength)) {
+                // An opening quote, leading whitespace before it is dropped
+                recordLength = fieldStart[fieldCount];
+                inQuotes = true;
+            } else {
+                if (b == '#') sawHash = true;
+                if (b == '~') sawTilde = true;
+                append(b);
+            }
+        }
+
+        if (!any) {
+            return false;
+        }
+        endField();
+        return true;
+    }
+
+    /**
+     * Gets the number of fields in the current record.
+     * @return The number of fields.
+     */
+    public int fieldCount()
+    {
+        return fieldCount;
+    }
+
+    /**
+     * Checks if the current record contains a section marker outside of any quoted field.
+     * @param marker The marker character, '#' for advanced or '~' for novice.
+     * @return true if the marker was found, false otherwise.
+     */
+    public boolean hasMarker(char marker)
+    {
+        return marker == '#' ? sawHash : marker == '~' && sawTilde;
+    }
+
+    /**
+     * Checks if a field is empty, without trimming it.
+     * @param i The index of the field.
+     * @return true if the field has no characters at all, false otherwise.
+     */
+    public boolean isEmpty(int i)
+    {
+        return fieldStart[i] == fieldEnd[i];
+    }
+
+    /**
+     * Checks if a field is empty once trimmed.
+     * @param i The index of the field.
+     * @return true if the field only holds whitespace, false otherwise.
+     */
+    public boolean isBlank(int i)
+    {
+        return isBlank(fieldStart[i], fieldEnd[i]);
+    }
+
+    /**
+     * Gets a trimmed field as a String.
+     * @param i The index of the field.
+     * @return The field, without leading or trailing whitespace.
+     */
+    public String field(int i)
+    {
+        int start = trimStart(fieldStart[i], fieldEnd[i]);
+        int end = trimEnd(start, fieldEnd[i]);
+        return new String(record, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a trimmed field as an int without creating a String.
+     * @param i The index of the field.
+     * @return The value of the field.
+     * @throws NumberFormatException if the field is not a valid int.
+     */
+    public int intField(int i)
+    {
+        int start = trimStart(fieldStart[i], fieldEnd[i]);
+        int end = trimEnd(start, fieldEnd[i]);
+        if (start == end) {
+            throw new NumberFormatException("Empty field " + i);
+        }
+
+        boolean negative = record[start] == '-';
+        int p = negative || record[start] == '+' ? start + 1 : start;
+        if (p == end) {
+            throw new NumberFormatException(field(i));
+        }
+
+        long value = 0;
+        for (; p < end; p++) {
+            int digit = record[p] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(field(i));
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException(field(i));
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException(field(i));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Gets the number of bytes of the file consumed so far.
+     * @return The position in the file.
+     */
+    public long position()
+    {
+        return position;
+    }
+
+    /**
+     * Closes the underlying file.
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Refills the buffer from the file.
+     * @return true if more bytes are available, false at the end of the file.
+     * @throws IOException if the file could not be read.
+     */
+    private boolean fill() throws IOException
+    {
+        if (endOfInput) {
+            return false;
+        }
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts a new field at the end of the record buffer.
+     */
+    private void startField()
+    {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = recordLength;
+    }
+
+    /**
+     * Ends the current field at the end of the record buffer.
+     */
+    private void endField()
+    {
+        fieldEnd[fieldCount] = recordLength;
+        fieldCount++;
+    }
+
+    /**
+     * Appends a byte to the record buffer, growing it to fit the largest record seen.
+     * @param b The byte to append.
+     */
+    private void append(byte b)
+    {
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, record.length * 2);
+        }
+        record[recordLength++] = b;
+    }
+
+    /**
+     * Checks if a range of the record buffer only holds whitespace.
+     * @param start The start of the range.
+     * @param end The end of the range.
+     * @return true if the range is blank, false otherwise.
+     */
+    private boolean isBlank(int start, int end)
+    {
+        return trimStart(start, end) == end;
+    }
+
+    /**
+     * Skips leading whitespace in a range of the record buffer.
+     * @param start The start of the range.
+     * @param end The end of the range.
+     * @return The first non-whitespace position, or end.
+     */
+    private int trimStart(int start, int end)
+    {
+        while (start < end && (record[start] & 0xFF) <= ' ') start++;
+        return start;
+    }
+
+    /**
+     * Skips trailing whitespace in a range of the record buffer.
+     * @param start The start of the range.
+     * @param end The end of the range.
+     * @return The position after the last non-whitespace byte, or start.
+     */
+    private int trimEnd(int start, int end)
+    {
+        while (end > start && (record[end - 1] & 0xFF) <= ' ') end--;
+        return end;
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The DataExporter class streams every result in the database, joined with its competition and student names, in
+ * one ordered query. Rows are handed on as they are read, so exporting takes the same memory no matter how many
+ * results there are.
+ */
+public class DataExporter {
+    /** The columns of an export. */
+    public static final String[] HEADER = {"Competition Name", "Student Name", "Problems Solved", "Placement"};
+    /** The default number of rows between progress reports. */
+    public static final int DEFAULT_PROGRESS_INTERVAL = 10000;
+
+    private static final Metrics.Histogram EXPORT_TIME = Metrics.shared().histogram("export.csv.ns");
+    private static final Metrics.Counter ROWS_EXPORTED = Metrics.shared().counter("export.rows");
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Ordered like idx_results_competition, so the index drives the scan and SQLite needs no sort
+    private static final String EXPORT_QUERY = """
+            SELECT c.name, s.firstname, s.lastname, r.problems_solved, r.placement
+            FROM results r
+            JOIN competitions c ON c.id = r.competition_id
+            JOIN students s ON s.id = r.student_id
+            ORDER BY r.competition_id, r.student_id""";
+    private static final String COUNT_QUERY = "SELECT COUNT(*) FROM results";
+
+    private DatabaseHandler db;
+    private int progressInterval;
+
+    /**
+     * Receives the rows of an export one at a time.
+     */
+    public interface RowVisitor {
+        /**
+         * Receives one result.
+         * @param competition The name of the competition.
+         * @param student The full name of the student.
+         * @param problemsSolved The number of problems solved.
+         * @param placement The placement in the competition.
+         * @throws IOException if the row could not be written.
+         */
+        void visit(String competition, String student, int problemsSolved, int placement) throws IOException;
+    }
+
+    /**
+     * Receives progress reports while an export runs.
+     */
+    public interface ProgressListener {
+        /**
+         * Reports how far an export has got.
+         * @param rowsDone The number of rows written so far.
+         * @param totalRows The number of rows to write.
+         */
+        void onProgress(long rowsDone, long totalRows);
+    }
+
+    /**
+     * Constructs a DataExporter object that reports progress every DEFAULT_PROGRESS_INTERVAL rows.
+     * @param dbHandler The DatabaseHandler to read from.
+     */
+    public DataExporter(DatabaseHandler dbHandler)
+    {
+        this(dbHandler, DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    /**
+     * Constructs a DataExporter object.
+     * @param dbHandler The DatabaseHandler to read from.
+     * @param progressInterval The number of rows between progress reports.
+     */
+    public DataExporter(DatabaseHandler dbHandler, int progressInterval)
+    {
+        this.db = dbHandler;
+        this.progressInterval = Math.max(1, progressInterval);
+    }
+
+    /**
+     * Writes every result to a CSV file with a header row.
+     * @param file The file to write to. It is replaced if it exists.
+     * @param gzip true to compress the file with gzip.
+     * @param progress The listener to report progress to, or null.
+     * @return The number of results written.
+     * @throws IOException if the file could not be written.
+     * @throws SQLException if a database access error occurs.
+     */
+    public long exportCsv(File file, boolean gzip, ProgressListener progress) throws IOException, SQLException
+    {
+        long total = progress == null ? -1 : countResults();
+        long start = System.nanoTime();
+
+        // Each stream is closed on its own, so the file is closed even if the gzip stream cannot be created
+        try (OutputStream fileOut = Files.newOutputStream(file.toPath());
+             OutputStream out = gzip ? new GZIPOutputStream(fileOut, BUFFER_SIZE) : fileOut;
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            writeRow(writer, HEADER[0], HEADER[1], HEADER[2], HEADER[3]);
+
+            long[] written = {0};
+            forEachResult((competition, student, problemsSolved, placement) -> {
+                writeRow(writer, competition, student, Integer.toString(problemsSolved), Integer.toString(placement));
+                if (++written[0] % progressInterval == 0 && progress != null) {
+                    progress.onProgress(written[0], total);
+                }
+            });
+            if (progress != null) {
+                progress.onProgress(written[0], total);
+            }
+            ROWS_EXPORTED.add(written[0]);
+            return written[0];
+        } finally {
+            EXPORT_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Hands every result to a visitor, ordered by competition and then by student.
+     * @param visitor The visitor to receive the rows.
+     * @return The number of results visited.
+     * @throws IOException if the visitor failed.
+     * @throws SQLException if a database access error occurs.
+     */
+    public long forEachResult(RowVisitor visitor) throws IOException, SQLException
+    {
+        long rows = 0;
+        try (ConnectionPool.PooledConnection reader = db.borrowRead();
+             ResultSet rs = reader.prepare(EXPORT_QUERY).executeQuery()) {
+            while (rs.next()) {
+                visitor.visit(rs.getString(1), rs.getString(2) + " " + rs.getString(3), rs.getInt(4), rs.getInt(5));
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Counts the results in the database.
+     * @return The number of results.
+     * @throws SQLException if a database access error occurs.
+     */
+    public long countResults() throws SQLException
+    {
+        try (ConnectionPool.PooledConnection reader = db.borrowRead();
+             ResultSet rs = reader.prepare(COUNT_QUERY).executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Writes one CSV row.
+     * @param writer The writer to write to.
+     * @param fields The fields of the row.
+     * @throws IOException if the row could not be written.
+     */
+    private static void writeRow(Writer writer, String... fields) throws IOException
+    {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeField(writer, fields[i]);
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Writes one CSV field, quoting it if it contains a comma, a quote or a line break, and doubling its quotes.
+     * @param writer The writer to write to.
+     * @param field The field to write, or null for an empty field.
+     * @throws IOException if the field could not be written.
+     */
+    static void writeField(Writer writer, String field) throws IOException
+    {
+        if (field == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(field);
+            return;
+        }
+
+        writer.write('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+}
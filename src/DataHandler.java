@@ -1,71 +1,381 @@
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * DataHandler class is responsible for handling the data objects. DataHandler interacts with the driver class/main method and object classes.
+ * Every method that changes the loaded data holds the write lock of readLock(), so other threads read it safely while
+ * they hold the read lock.
  */
 public class DataHandler {
-  private ArrayList<Student> roster;
-  private ArrayList<Competition> listOfComp;
+  private static final Metrics.Histogram LOAD_TIME = Metrics.shared().histogram("data.loadData.ns");
+  private static final Metrics.Counter STUDENTS_LOADED = Metrics.shared().counter("data.studentsLoaded");
+  private static final Metrics.Histogram SORT_BY_PROBLEM_TIME = Metrics.shared().histogram("data.sortRosterByProblem.ns");
+  private static final Metrics.Histogram SORT_BY_COMPETITION_TIME = Metrics.shared().histogram("data.sortRosterByCompetition.ns");
+
+  static {
+    Metrics.shared().gauge("symbols.interned", () -> SymbolTable.shared().size());
+  }
+
+  // By ID, in the order they were loaded, so a student or competition is removed without a scan
+  private LinkedHashMap<Integer, Student> roster;
+  private LinkedHashMap<Integer, Competition> listOfComp;
+  private HashMap<String, Competition> competitionsByName;
+  private HashMap<String, List<Student>> studentsByName;
+  private HashMap<String, Student> studentsByEmail;
+  private LeaderboardIndex byProblems;
+  // The results as loaded, and whether they have changed since
+  private ResultStore store;
+  private boolean storeCurrent;
+  private LeaderboardIndex byCompetitions;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  // The totals of each competition, dropped by every change
+  private volatile Map<Integer, ParallelRoster.Totals> competitionTotals;
   /**
    * Constructor for DataHandler.
    */
   public DataHandler()
   {
-    roster = new ArrayList<Student>();
-    listOfComp = new ArrayList<Competition>();
+    roster = new LinkedHashMap<>();
+    listOfComp = new LinkedHashMap<>();
+    competitionsByName = new HashMap<>();
+    studentsByName = new HashMap<>();
+    studentsByEmail = new HashMap<>();
+    byProblems = new LeaderboardIndex(LeaderboardIndex.Order.PROBLEMS);
+    byCompetitions = new LeaderboardIndex(LeaderboardIndex.Order.COMPETITIONS);
+  }
+
+  /**
+   * Gets the lock that keeps the loaded data from changing while it is read from another thread. Any database
+   * connection must be borrowed before the lock is taken, since changes are applied while the database is locked.
+   *
+   * @return The read lock.
+   */
+  public Lock readLock()
+  {
+    return lock.readLock();
   }
 
   /**
-   * Loads data from the database.
+   * Loads data from the database. Competitions are read first into an id to competition map, then the students and
+   * their results are read in one ordered join into a ResultStore, so every competition name is stored once. Names
+   * that repeat go through the shared SymbolTable.
    *
    * @param connection The SQL database connection to load data from.
    * @throws SQLException if a database access error occurs.
    */
   public void loadData(Connection connection) throws SQLException
   {
-    roster.clear();
-    listOfComp.clear();
-    String query = "SELECT * FROM students";
+    lock.writeLock().lock();
+    try {
+      long start = System.nanoTime();
+      clearAll();
+      ResultStore.Builder results = new ResultStore.Builder();
+      // Many students share first and last names
+      SymbolTable symbols = SymbolTable.shared();
+
+      String queryComp = "SELECT id, name FROM competitions";
+      try (PreparedStatement stmtComp = connection.prepareStatement(queryComp);
+           ResultSet rs = stmtComp.executeQuery()) {
+
+        while (rs.next()) {
+          int id = rs.getInt("id");
+          String name = symbols.intern(rs.getString("name"));
+
+          // Create Competition object
+          Competition comp = new Competition(id, name);
 
-    try (PreparedStatement stmt = connection.prepareStatement(query);
-         ResultSet rs = stmt.executeQuery()) {
+          // Add to the list of competitions
+          indexCompetition(comp);
+          results.addCompetition(id, name);
+        }
+      }
 
-      while (rs.next()) {
-        int id = rs.getInt("id");
-        String firstName = rs.getString("firstname");
-        String lastName = rs.getString("lastname");
-        String email = rs.getString("email");
-        String level = rs.getString("level");
+      // Students without results still get one row from the left join
+      String query = """
+          SELECT s.id, s.firstname, s.lastname, s.email, s.level,
+                 r.competition_id, r.problems_solved, r.placement
+          FROM students s
+          LEFT JOIN results r ON r.student_id = s.id
+          ORDER BY s.id, r.rowid""";
 
-        // Create Student object
-        Student student = new Student(id, firstName, lastName, email, level);
+      try (PreparedStatement stmt = connection.prepareStatement(query);
+           ResultSet rs = stmt.executeQuery()) {
 
-        // Add competitions for this student
-        List<Competition> competitions = getCompetitionsForStudent(id, connection);
-        for (Competition comp : competitions) {
-          student.addCompetition(comp);
+        Student student = null;
+        while (rs.next()) {
+          int id = rs.getInt("id");
+
+          // Create Student object on the first row of each student
+          if (student == null || student.getId() != id) {
+            String firstName = symbols.intern(rs.getString("firstname"));
+            String lastName = symbols.intern(rs.getString("lastname"));
+            String email = rs.getString("email");
+            Level level = Level.fromCode(rs.getInt("level"));
+
+            student = new Student(id, firstName, lastName, email, level);
+            indexStudent(student);
+            results.addStudent(id);
+          }
+
+          // Add the competition of this row, if the student has any
+          int competitionId = rs.getInt("competition_id");
+          if (!rs.wasNull()) {
+            results.addResult(competitionId, rs.getInt("problems_solved"), rs.getInt("placement"));
+          }
         }
+      }
+      useStore(results.build());
+
+      // Index once every student has all of their results
+      for (Student student : roster.values()) {
+        reindex(student);
+      }
+      STUDENTS_LOADED.add(roster.size());
+      LOAD_TIME.recordSince(start);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Points every student of the roster at their results in a store. The roster must be in the order the students
+   * were added to the store.
+   *
+   * @param results The store holding the results of the roster.
+   */
+  private void useStore(ResultStore results)
+  {
+    int i = 0;
+    for (Student student : roster.values()) {
+      student.useResults(results, i++);
+    }
+    store = results;
+    storeCurrent = true;
+  }
 
-        // Add to the list of students
-        roster.add(student);
+  /**
+   * Replaces the loaded data with students and competitions that were read elsewhere, such as from a snapshot.
+   *
+   * @param competitions The competitions.
+   * @param students The students, in the order they were added to the store.
+   * @param results The results of the students.
+   */
+  public void replaceData(List<Competition> competitions, List<Student> students, ResultStore results)
+  {
+    lock.writeLock().lock();
+    try {
+      clearAll();
+      for (Competition comp : competitions) {
+        indexCompetition(comp);
+      }
+      for (Student student : students) {
+        indexStudent(student);
+      }
+      useStore(results);
+      for (Student student : roster.values()) {
+        reindex(student);
       }
+    } finally {
+      lock.writeLock().unlock();
     }
+  }
 
-    String queryComp = "SELECT * FROM competitions";
-    try (PreparedStatement stmtComp = connection.prepareStatement(queryComp);
-         ResultSet rs = stmtComp.executeQuery()) {
+  /**
+   * Applies the changes of a committed write to the loaded data, so only the changed rows are touched instead of
+   * reloading everything. Meant to be registered with DatabaseHandler.addChangeListener.
+   *
+   * @param changes The rows added and removed by the write.
+   */
+  public void applyChanges(ChangeSet changes)
+  {
+    lock.writeLock().lock();
+    try {
+      if (changes.isWiped()) {
+        clearAll();
+      }
+      if (!changes.isEmpty()) {
+        storeCurrent = false;
+        competitionTotals = null;
+      }
 
-      while (rs.next()) {
-        int id = rs.getInt("id");
-        String name = rs.getString("name");
+      // Students whose rank may have changed
+      HashMap<Integer, Student> changed = new HashMap<>();
 
-        // Create Competition object
-        Competition comp = new Competition(id, name);
+      // Removals first, a write never removes and re-adds the same row
+      for (int[] result : changes.getRemovedResults()) {
+        Student student = roster.get(result[0]);
+        if (student != null) {
+          student.removeCompetition(result[1]);
+          changed.put(student.getId(), student);
+        }
+      }
+      for (int id : changes.getRemovedStudents()) {
+        unindexStudent(id);
+        byProblems.remove(id);
+        byCompetitions.remove(id);
+        changed.remove(id);
+      }
+      for (int id : changes.getRemovedCompetitions()) {
+        unindexCompetition(id);
+      }
 
-        // Add to the list of competitions
-        listOfComp.add(comp);
+      for (Competition comp : changes.getAddedCompetitions()) {
+        if (!listOfComp.containsKey(comp.getId())) {
+          indexCompetition(comp);
+        }
+      }
+      for (Student student : changes.getAddedStudents()) {
+        if (!roster.containsKey(student.getId())) {
+          indexStudent(student);
+          changed.put(student.getId(), student);
+        }
+      }
+      for (int[] result : changes.getAddedResults()) {
+        Student student = roster.get(result[0]);
+        Competition comp = listOfComp.get(result[1]);
+        if (student != null) {
+          student.addCompetition(new Competition(result[1], comp == null ? null : comp.getName(), result[2], result[3]));
+          changed.put(student.getId(), student);
+        }
+      }
+
+      for (Student student : changed.values()) {
+        reindex(student);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes every student and competition.
+   */
+  private void clearAll()
+  {
+    roster.clear();
+    listOfComp.clear();
+    studentsByName.clear();
+    studentsByEmail.clear();
+    competitionsByName.clear();
+    byProblems.clear();
+    byCompetitions.clear();
+    store = null;
+    storeCurrent = false;
+    competitionTotals = null;
+  }
+
+  /**
+   * Adds a student to the roster and to the lookup maps by name and email.
+   *
+   * @param student The student to add.
+   */
+  private void indexStudent(Student student)
+  {
+    roster.put(student.getId(), student);
+    studentsByName.computeIfAbsent(normalizeName(student.getName()), k -> new ArrayList<>(1)).add(student);
+    if (student.getEmail() != null && !student.getEmail().isEmpty()) {
+      studentsByEmail.put(student.getEmail().toLowerCase(Locale.ROOT), student);
+    }
+  }
+
+  /**
+   * Removes a student from the roster and from the lookup maps by name and email.
+   *
+   * @param id The ID of the student.
+   * @return The removed student, or null if there was no student with that ID.
+   */
+  private Student unindexStudent(int id)
+  {
+    Student student = roster.remove(id);
+    if (student == null) {
+      return null;
+    }
+    String name = normalizeName(student.getName());
+    List<Student> namesakes = studentsByName.get(name);
+    if (namesakes != null) {
+      removeByIdentity(namesakes, student);
+      if (namesakes.isEmpty()) {
+        studentsByName.remove(name);
+      }
+    }
+    if (student.getEmail() != null) {
+      studentsByEmail.remove(student.getEmail().toLowerCase(Locale.ROOT), student);
+    }
+    return student;
+  }
+
+  /**
+   * Adds a competition to the list of competitions and to the lookup map by name.
+   *
+   * @param comp The competition to add.
+   */
+  private void indexCompetition(Competition comp)
+  {
+    listOfComp.put(comp.getId(), comp);
+    competitionsByName.put(comp.getName(), comp);
+  }
+
+  /**
+   * Removes a competition from the list of competitions and from the lookup map by name.
+   *
+   * @param id The ID of the competition.
+   * @return The removed competition, or null if there was no competition with that ID.
+   */
+  private Competition unindexCompetition(int id)
+  {
+    Competition comp = listOfComp.remove(id);
+    if (comp != null) {
+      competitionsByName.remove(comp.getName(), comp);
+    }
+    return comp;
+  }
+
+  /**
+   * Normalizes a full name for lookups, so case and extra spaces do not matter.
+   *
+   * @param name The name to normalize.
+   * @return The trimmed lower case name with single spaces between words.
+   */
+  private static String normalizeName(String name)
+  {
+    return name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Moves a student to their current rank in both leaderboard indexes, adding them if they are not in them yet.
+   *
+   * @param student The student whose competitions may have changed.
+   */
+  private void reindex(Student student)
+  {
+    byProblems.update(student);
+    byCompetitions.update(student);
+  }
+
+  /**
+   * Removes an object from a list by identity rather than equals, since students and competitions are equal by name.
+   *
+   * @param list The list to remove from.
+   * @param item The object to remove, or null to do nothing.
+   * @param <T> The type of the list elements.
+   */
+  private static <T> void removeByIdentity(List<T> list, T item)
+  {
+    if (item == null) {
+      return;
+    }
+    for (int i = list.size() - 1; i >= 0; i--) {
+      if (list.get(i) == item) {
+        list.remove(i);
+        return;
       }
     }
   }
@@ -80,7 +390,12 @@ public class DataHandler {
    */
   public List<Competition> getCompetitionsForStudent(int studentId, Connection connection) throws SQLException
   {
-    String query = "SELECT * FROM results WHERE student_id = ?";
+    String query = """
+        SELECT r.competition_id, r.problems_solved, r.placement, c.name
+        FROM results r
+        LEFT JOIN competitions c ON c.id = r.competition_id
+        WHERE r.student_id = ?
+        ORDER BY r.rowid""";
     List<Competition> competitions = new ArrayList<>();
 
     try (PreparedStatement stmt = connection.prepareStatement(query)) {
@@ -91,21 +406,7 @@ public class DataHandler {
           int competitionId = rs.getInt("competition_id");
           int problemsSolved = rs.getInt("problems_solved");
           int placement = rs.getInt("placement");
-
-          String queryComp = "SELECT name FROM competitions WHERE id = ?";
-          String competitionName = null;
-
-          try (PreparedStatement stmtComp = connection.prepareStatement(queryComp)) {
-            // Set the competition ID in the query
-            stmtComp.setInt(1, competitionId);
-
-            try (ResultSet rsComp = stmtComp.executeQuery()) {
-              // If a row exists, get the competition name
-              if (rsComp.next()) {
-                competitionName = rsComp.getString("name");
-              }
-            }
-          }
+          String competitionName = rs.getString("name");
 
           competitions.add(new Competition(competitionId, competitionName, problemsSolved, placement));
         }
@@ -121,11 +422,17 @@ public class DataHandler {
    */
   public Student[] getStudents()
   {
-    Student[] s = new Student[roster.size()];
-    for (int i = 0; i < roster.size(); i++) {
-      s[i] = roster.get(i);
-    }
-    return s;
+    return roster.values().toArray(new Student[0]);
+  }
+
+  /**
+   * Tells whether the roster is empty, in which case queries run against the database.
+   *
+   * @return true if no students are loaded.
+   */
+  public boolean isEmpty()
+  {
+    return roster.isEmpty();
   }
 
   /**
@@ -135,52 +442,104 @@ public class DataHandler {
    */
   public Competition[] getCompetition()
   {
-    Competition[] c = new Competition[listOfComp.size()];
-    for (int i = 0; i < listOfComp.size(); i++) {
-      c[i] = listOfComp.get(i);
-    }
-    return c;
+    return listOfComp.values().toArray(new Competition[0]);
   }
 
   /**
    * Gets the students in the roster by level.
    *
-   * @param s The level of the students to get.
+   * @param s The name of the level of the students to get, anything else gets every student.
    * @return An array of students based on the level.
    */
   public Student[] getRosterByLevel(String s)
   {
-    if (s.equals("Novice")) {
-      ArrayList<Student> temp = new ArrayList<Student>();
-      for (Student student : roster) {
-        if (student.getLevel().equals("Novice")) {
-          temp.add(student);
-        }
-      }
-      Student[] students = new Student[temp.size()];
-      for (int i = 0; i < temp.size(); i++) {
-        students[i] = temp.get(i);
-      }
-      return students;
-    } else if (s.equals("Advanced")) {
-      ArrayList<Student> temp = new ArrayList<Student>();
-      for (Student student : roster) {
-        if (student.getLevel().equals("Advanced")) {
-          temp.add(student);
-        }
+    for (Level level : Level.values()) {
+      if (level.getDisplayName().equals(s)) {
+        return getRosterByLevel(level);
       }
-      Student[] students = new Student[temp.size()];
-      for (int i = 0; i < temp.size(); i++) {
-        students[i] = temp.get(i);
+    }
+    return getStudents();
+  }
+
+  /**
+   * Gets the students in the roster at a level.
+   *
+   * @param level The level of the students to get.
+   * @return An array of the students at that level, in roster order.
+   */
+  public Student[] getRosterByLevel(Level level)
+  {
+    ArrayList<Student> temp = new ArrayList<Student>();
+    for (Student student : roster.values()) {
+      if (student.getLevel() == level) {
+        temp.add(student);
       }
-      return students;
-    } else {
-      return getStudents();
     }
+    return temp.toArray(new Student[0]);
+  }
+
+  /**
+   * Gets a student by ID.
+   *
+   * @param id The ID of the student.
+   * @return The student, or null if there is no student with that ID.
+   */
+  public Student getStudentById(int id)
+  {
+    return roster.get(id);
+  }
+
+  /**
+   * Gets the students with a full name, ignoring case and extra spaces.
+   *
+   * @param name The full name of the students.
+   * @return The students with that name in roster order, empty if there are none.
+   */
+  public List<Student> getStudentsByName(String name)
+  {
+    List<Student> namesakes = studentsByName.get(normalizeName(name));
+    return namesakes == null ? List.of() : Collections.unmodifiableList(namesakes);
+  }
+
+  /**
+   * Gets a student by email, ignoring case. If students share an email the latest one loaded is returned.
+   *
+   * @param email The email of the student, or null.
+   * @return The student, or null if there is no student with that email or the email is null.
+   */
+  public Student getStudentByEmail(String email)
+  {
+    if (email == null) {
+      return null;
+    }
+    return studentsByEmail.get(email.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * Gets a competition by ID.
+   *
+   * @param id The ID of the competition.
+   * @return The competition, or null if there is no competition with that ID.
+   */
+  public Competition getCompetitionById(int id)
+  {
+    return listOfComp.get(id);
+  }
+
+  /**
+   * Gets a competition by name.
+   *
+   * @param name The name of the competition.
+   * @return The competition, or null if there is no competition with that name.
+   */
+  public Competition getCompetitionByName(String name)
+  {
+    return competitionsByName.get(name);
   }
 
   /**
-   * Gets the competition data for a specific competition.
+   * Gets the competition data for a specific competition. The results come from the result store while nothing has
+   * changed since it was loaded, otherwise from one indexed query. The student names come from the loaded students.
    *
    * @param competitionName The name of the competition.
    * @param connection The SQL database connection.
@@ -189,40 +548,30 @@ public class DataHandler {
    */
   public Object[][] getCompetitionData(String competitionName, Connection connection) throws SQLException
   {
-    Competition comp = new Competition(-1, competitionName);
-    int compId = -1;
-    for (Competition c : listOfComp) {
-      if (c.equals(comp)) {
-        compId = c.getId();
-      }
+    Competition comp = competitionsByName.get(competitionName);
+    if (comp == null) {
+      return new Object[0][];
     }
 
     ArrayList<Object[]> data = new ArrayList<>();
+    if (storeCurrent) {
+      store.forEachResultOf(comp.getId(), (studentId, problemsSolved, placement) -> {
+        Student student = roster.get(studentId);
+        data.add(new Object[]{student == null ? null : student.getName(), problemsSolved, placement});
+      });
+      return data.toArray(new Object[0][]);
+    }
 
-    String query = "SELECT * FROM results WHERE competition_id = ?";
+    String query = "SELECT student_id, problems_solved, placement FROM results WHERE competition_id = ? ORDER BY student_id";
 
     try (PreparedStatement stmt = connection.prepareStatement(query)) {
-      stmt.setInt(1, compId);
+      stmt.setInt(1, comp.getId());
 
       try (ResultSet rs = stmt.executeQuery()) {
         while (rs.next()) {
-          int studentId = rs.getInt("student_id");
-          int problemsSolved = rs.getInt("problems_solved");
-          int placement = rs.getInt("placement");
-
-          String queryStu = "SELECT firstname, lastname FROM students WHERE id = ?";
-          String studentName = null;
-
-          try (PreparedStatement stmtStu = connection.prepareStatement(queryStu)) {
-            stmtStu.setInt(1, studentId);
-
-            try (ResultSet rsStu = stmtStu.executeQuery()) {
-              if (rsStu.next()) {
-                studentName = rsStu.getString("firstname") + " " + rsStu.getString("lastname");
-              }
-            }
-          }
-          data.add(new Object[]{studentName, problemsSolved, placement});
+          Student student = roster.get(rs.getInt("student_id"));
+          String studentName = student == null ? null : student.getName();
+          data.add(new Object[]{studentName, rs.getInt("problems_solved"), rs.getInt("placement")});
         }
       }
     }
@@ -231,7 +580,7 @@ public class DataHandler {
   }
 
   /**
-   * Gets the student data for a specific student.
+   * Gets the student data for a specific student. If several students share the name, the last one loaded is used.
    *
    * @param stu The name of the student.
    * @param connection The SQL database connection.
@@ -239,14 +588,18 @@ public class DataHandler {
    */
   public Object[][] getStudent(String stu, Connection connection)
   {
-    Student student = new Student(-1, stu.split(" ")[0], stu.split(" ")[1], "", "");
-
-    for (Student s : roster) {
-      if (s.equals(student)) {
-        student = s;
-      }
-    }
+    List<Student> namesakes = getStudentsByName(stu);
+    return namesakes.isEmpty() ? new Object[0][] : getStudentData(namesakes.get(namesakes.size() - 1));
+  }
 
+  /**
+   * Gets the student data for a specific student.
+   *
+   * @param student The student.
+   * @return A 2D array of student data.
+   */
+  public Object[][] getStudentData(Student student)
+  {
     ArrayList<Object[]> data = new ArrayList<>();
     for (Competition comp : student.getCompetitions()) {
       data.add(new Object[]{comp.getName(), comp.getProblemsSolved(), comp.getPlacement()});
@@ -260,7 +613,18 @@ public class DataHandler {
    */
   public void emptyStudent()
   {
-    roster.clear();
+    lock.writeLock().lock();
+    try {
+      roster.clear();
+      studentsByName.clear();
+      studentsByEmail.clear();
+      byProblems.clear();
+      byCompetitions.clear();
+      storeCurrent = false;
+      competitionTotals = null;
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
@@ -268,101 +632,145 @@ public class DataHandler {
    */
   public void emptyCompetition()
   {
-    listOfComp.clear();
+    lock.writeLock().lock();
+    try {
+      listOfComp.clear();
+      competitionsByName.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
-   * Sorts the roster by competition.
+   * Sorts the roster by competition. The roster itself is left in its order.
    *
-   * @return An array of sorted students.
+   * @return An array of students, most competitions first.
    */
   public Student[] sortRosterByCompetition()
   {
-    if (roster.size() > 0) {
-      quickSortComp(0, roster.size() - 1);
-    }
-    return getStudents();
+    long start = System.nanoTime();
+    Student[] sorted = byCompetitions.topK(byCompetitions.size()).toArray(new Student[0]);
+    SORT_BY_COMPETITION_TIME.recordSince(start);
+    return sorted;
   }
 
   /**
-   * Sorts the roster by problem.
-   *
-   * @return An array of sorted students.
-   */
- public Student[] sortRosterByProblem()
- {
-   if (roster.size() > 0) {
-     quickSortProb(0, roster.size() - 1);
-   }
-   return getStudents();
- }
-
-  /**
-   * Quick sorts the roster by problem.
-   *
-   * @param low The low index of the roster to sort.
-   * @param high The high index of the roster to sort.
-   */
- private void quickSortProb(int low, int high)
- {
-   int left = low;
-   int right = high;
-   Student pivot = roster.get(low+(high-low)/2);
-   while (left <= right) {
-     while (roster.get(left).compareToProb(pivot) > 0) {
-       left++;
-     }
-     while (roster.get(right).compareToProb(pivot) < 0) {
-       right--;
-     }
-     if (left <= right) {
-       Student temp = roster.get(left);
-       roster.set(left, roster.get(right));
-       roster.set(right, temp);
-       left++;
-       right--;
-     }
-   }
-   if (low < right) {
-     quickSortProb(low, right);
-   }
-   if (left < high) {
-     quickSortProb(left, high);
-   }
- }
-
-  /**
-   * Quick sorts the roster by competition.
-   *
-   * @param low The low index of the roster to sort.
-   * @param high The high index of the roster to sort.
-   */
-  private void quickSortComp(int low, int high)
-  {
-    int left = low;
-    int right = high;
-    Student pivot = roster.get(low+(high-low)/2);
-    while (left <= right) {
-      while (roster.get(left).getCompetitions().size() - pivot.getCompetitions().size() > 0) {
-        left++;
-      }
-      while (roster.get(right).getCompetitions().size() - pivot.getCompetitions().size() < 0) {
-        right--;
-      }
-      if (left <= right) {
-        Student temp = roster.get(left);
-        roster.set(left, roster.get(right));
-        roster.set(right, temp);
-        left++;
-        right--;
+   * Sorts the roster by problem. The roster itself is left in its order.
+   *
+   * @return An array of students, most problems solved first.
+   */
+  public Student[] sortRosterByProblem()
+  {
+    long start = System.nanoTime();
+    Student[] sorted = byProblems.topK(byProblems.size()).toArray(new Student[0]);
+    SORT_BY_PROBLEM_TIME.recordSince(start);
+    return sorted;
+  }
+
+  /**
+   * Sums up the results of each competition. The totals are kept until the loaded data changes, so showing one
+   * competition after another sums up the roster only once.
+   *
+   * @return The totals of every competition that has a result, by competition ID.
+   */
+  public Map<Integer, ParallelRoster.Totals> getCompetitionTotals()
+  {
+    Map<Integer, ParallelRoster.Totals> totals = competitionTotals;
+    if (totals == null) {
+      lock.readLock().lock();
+      try {
+        totals = Collections.unmodifiableMap(ParallelRoster.shared().totalByCompetition(roster.values().toArray(new Student[0])));
+        competitionTotals = totals;
+      } finally {
+        lock.readLock().unlock();
       }
     }
-    if (low < right) {
-      quickSortComp(low, right);
+    return totals;
+  }
+
+  /**
+   * Gets the students with the most problems solved.
+   *
+   * @param n The number of students to get.
+   * @return Up to n students, most problems solved first.
+   */
+  public List<Student> getTopStudents(int n)
+  {
+    return byProblems.topK(n);
+  }
+
+  /**
+   * Gets a page of the leaderboard.
+   *
+   * @param order The counts to rank by.
+   * @param offset The number of higher ranked students to skip.
+   * @param limit The maximum number of students to get.
+   * @return Up to limit students, highest ranked first.
+   */
+  public List<Student> getLeaderboardPage(LeaderboardIndex.Order order, int offset, int limit)
+  {
+    return indexFor(order).page(offset, limit);
+  }
+
+  /**
+   * Gets the rank of a student on the leaderboard.
+   *
+   * @param order The counts to rank by.
+   * @param studentId The ID of the student.
+   * @return The rank of the student, starting at 1, or -1 if there is no such student.
+   */
+  public int getRank(LeaderboardIndex.Order order, int studentId)
+  {
+    return indexFor(order).rankOf(studentId);
+  }
+
+  /**
+   * Runs a query over the students. While students are loaded the query runs in memory, walking a leaderboard index
+   * when it is in a leaderboard order and scanning the roster otherwise; when nothing is loaded it runs against the
+   * database.
+   *
+   * @param query The query.
+   * @param dbHandler The DatabaseHandler to read from when nothing is loaded, or null to always run in memory.
+   * @return The rows, read as they are needed. Close the cursor if it is not read to the end.
+   * @throws SQLException if a database access error occurs.
+   */
+  public StudentQuery.Cursor query(StudentQuery query, DatabaseHandler dbHandler) throws SQLException
+  {
+    switch (query.plan(!roster.isEmpty() || dbHandler == null)) {
+      case INDEX:
+        return query.walk(indexFor(query.indexOrder()));
+      case SCAN:
+        return query.scan(roster.values());
+      default:
+        return query.execute(dbHandler);
     }
-    if (left < high) {
-      quickSortComp(left, high);
+  }
+
+  /**
+   * Counts the students a query matches, whatever its offset and limit. Like query, this counts the loaded students
+   * while any are loaded and the database otherwise.
+   *
+   * @param query The query.
+   * @param dbHandler The DatabaseHandler to read from when nothing is loaded, or null to always count in memory.
+   * @return The number of matching students.
+   * @throws SQLException if a database access error occurs.
+   */
+  public int count(StudentQuery query, DatabaseHandler dbHandler) throws SQLException
+  {
+    if (!roster.isEmpty() || dbHandler == null) {
+      return query.count(roster.values());
     }
+    return query.count(dbHandler);
   }
-}
 
+  /**
+   * Gets the leaderboard index for an order.
+   *
+   * @param order The counts to rank by.
+   * @return The index ranking by that order.
+   */
+  private LeaderboardIndex indexFor(LeaderboardIndex.Order order)
+  {
+    return order == LeaderboardIndex.Order.PROBLEMS ? byProblems : byCompetitions;
+  }
+}
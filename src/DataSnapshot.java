@@ -0,0 +1,240 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The DataSnapshot class saves the students, competitions and results loaded in a DataHandler to a compact binary
+ * file, and loads them back much faster than they can be read from the database. Every snapshot records the database
+ * generation it was taken at and is only loaded while the database is still at that generation.
+ *
+ * The file is read whole into the heap rather than memory-mapped: a mapping stays open until it is garbage collected,
+ * and on Windows an open mapping stops the next save from replacing the file.
+ *
+ * The file holds a header (magic number, format version, generation), a dictionary of every distinct string, then the
+ * competitions and the students with their results, with strings stored as dictionary indexes.
+ */
+public class DataSnapshot {
+    private static final int MAGIC = 0x4C42534E; // "LBSN"
+    private static final int FORMAT_VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private File file;
+
+    /**
+     * Constructs a DataSnapshot object.
+     * @param file The snapshot file.
+     */
+    public DataSnapshot(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Gets the snapshot file.
+     * @return The snapshot file.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Saves the loaded data. The snapshot is written to a temporary file that then replaces the old one, so a crash
+     * while saving never leaves a half-written snapshot behind.
+     * @param dataHandler The DataHandler holding the data.
+     * @param generation The database generation the data matches.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public void save(DataHandler dataHandler, long generation) throws IOException
+    {
+        long start = System.nanoTime();
+        Competition[] competitions = dataHandler.getCompetition();
+        Student[] students = dataHandler.getStudents();
+
+        // Every string is written once and referred to by its index
+        HashMap<String, Integer> indexes = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Competition comp : competitions) {
+            intern(comp.getName(), indexes, strings);
+        }
+        for (Student student : students) {
+            intern(student.getFirstName(), indexes, strings);
+            intern(student.getLastName(), indexes, strings);
+            intern(student.getEmail(), indexes, strings);
+        }
+
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(generation);
+
+            out.writeInt(strings.size());
+            for (String str : strings) {
+                byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            out.writeInt(competitions.length);
+            for (Competition comp : competitions) {
+                out.writeInt(comp.getId());
+                out.writeInt(indexOf(comp.getName(), indexes));
+            }
+
+            out.writeInt(students.length);
+            for (Student student : students) {
+                out.writeInt(student.getId());
+                out.writeInt(indexOf(student.getFirstName(), indexes));
+                out.writeInt(indexOf(student.getLastName(), indexes));
+                out.writeInt(indexOf(student.getEmail(), indexes));
+                out.writeInt(student.getLevel().getCode());
+
+                List<Competition> results = student.getCompetitions();
+                out.writeInt(results.size());
+                for (Competition result : results) {
+                    out.writeInt(result.getId());
+                    out.writeInt(result.getProblemsSolved());
+                    out.writeInt(result.getPlacement());
+                }
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Saved snapshot of %d students at generation %d in %.3f s%n", students.length, generation, seconds);
+    }
+
+    /**
+     * Loads the saved data into a DataHandler, if the snapshot exists and was taken at the current generation of the
+     * database. Nothing is changed if the snapshot cannot be used.
+     * @param dataHandler The DataHandler to load into.
+     * @param generation The current database generation.
+     * @return true if the snapshot was loaded, false if it is missing, out of date or unreadable.
+     */
+    public boolean load(DataHandler dataHandler, long generation)
+    {
+        long start = System.nanoTime();
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT_VERSION) {
+                System.out.println("Ignoring snapshot " + file.getName() + ": unknown format.");
+                return false;
+            }
+            long savedGeneration = buf.getLong();
+            if (savedGeneration != generation) {
+                System.out.println("Ignoring snapshot " + file.getName() + ": taken at generation " + savedGeneration + ", database is at " + generation + ".");
+                return false;
+            }
+
+            String[] strings = new String[buf.getInt()];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < strings.length; i++) {
+                int length = buf.getInt();
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                buf.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+
+            int competitionCount = buf.getInt();
+            List<Competition> competitions = new ArrayList<>(competitionCount);
+            ResultStore.Builder results = new ResultStore.Builder();
+            for (int i = 0; i < competitionCount; i++) {
+                int id = buf.getInt();
+                String name = stringAt(strings, buf.getInt());
+                competitions.add(new Competition(id, name));
+                results.addCompetition(id, name);
+            }
+
+            int studentCount = buf.getInt();
+            List<Student> students = new ArrayList<>(studentCount);
+            for (int i = 0; i < studentCount; i++) {
+                int id = buf.getInt();
+                String firstName = stringAt(strings, buf.getInt());
+                String lastName = stringAt(strings, buf.getInt());
+                String email = stringAt(strings, buf.getInt());
+                Level level = Level.fromCode(buf.getInt());
+                students.add(new Student(id, firstName, lastName, email, level));
+                results.addStudent(id);
+
+                int resultCount = buf.getInt();
+                for (int j = 0; j < resultCount; j++) {
+                    results.addResult(buf.getInt(), buf.getInt(), buf.getInt());
+                }
+            }
+
+            dataHandler.replaceData(competitions, students, results.build());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Loaded snapshot of %d students at generation %d in %.3f s%n", studentCount, generation, seconds);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            System.out.println("Ignoring unreadable snapshot " + file.getName() + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the snapshot file, if there is one.
+     */
+    public void delete()
+    {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            System.out.println("Failed to delete snapshot " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a string to the dictionary if it is not in it yet.
+     * @param str The string to add, or null.
+     * @param indexes The index of every string in the dictionary.
+     * @param strings The dictionary.
+     */
+    private static void intern(String str, HashMap<String, Integer> indexes, List<String> strings)
+    {
+        if (str != null && !indexes.containsKey(str)) {
+            indexes.put(str, strings.size());
+            strings.add(str);
+        }
+    }
+
+    /**
+     * Gets the dictionary index of a string.
+     * @param str The string, or null.
+     * @param indexes The index of every string in the dictionary.
+     * @return The index of the string, or -1 for null.
+     */
+    private static int indexOf(String str, HashMap<String, Integer> indexes)
+    {
+        return str == null ? -1 : indexes.get(str);
+    }
+
+    /**
+     * Gets a string from the dictionary.
+     * @param strings The dictionary.
+     * @param index The index of the string, or -1 for null.
+     * @return The string, or null.
+     */
+    private static String stringAt(String[] strings, int index)
+    {
+        return index == -1 ? null : strings[index];
+    }
+}
@@ -1,19 +1,240 @@
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * DatabaseHandler class is responsible for handling the data in relation to the SQL database. Database interacts with the driver class/main method.
  */
 public class DatabaseHandler {
-    private Connection connection;
+    /** The default number of team rows committed at a time by addTeamResults. */
+    public static final int DEFAULT_CHUNK_SIZE = 5000;
+
+    /** The default number of students and of competitions whose ids are cached. */
+    public static final int DEFAULT_IDENTITY_CACHE_SIZE = 100000;
+
+    private static final String SELECT_STUDENT = "SELECT id FROM students WHERE firstname = ? AND lastname = ? AND email = ?";
+    private static final String UPSERT_STUDENT = "INSERT INTO students (firstname, lastname, email, level) VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING RETURNING id";
+    private static final String SELECT_COMPETITION = "SELECT id FROM competitions WHERE name = ?";
+    private static final String UPSERT_COMPETITION = "INSERT INTO competitions (name) VALUES (?) ON CONFLICT DO NOTHING RETURNING id";
+    private static final String INSERT_RESULT = "INSERT INTO results (student_id, competition_id, problems_solved, placement) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_EMPTY_STATS = "INSERT INTO student_stats (student_id, total_problems, competitions, best_placement, placement_sum) VALUES (?, 0, 0, 0, 0)";
+    private static final String UPSERT_STATS = """
+            INSERT INTO student_stats (student_id, total_problems, competitions, best_placement, placement_sum)
+            VALUES (?, ?, 1, ?, ?)
+            ON CONFLICT (student_id) DO UPDATE SET
+            total_problems = total_problems + excluded.total_problems,
+            competitions = competitions + 1,
+            best_placement = CASE WHEN competitions = 0 THEN excluded.best_placement ELSE MIN(best_placement, excluded.best_placement) END,
+            placement_sum = placement_sum + excluded.placement_sum""";
+    private static final String REFRESH_STATS = """
+            UPDATE student_stats SET (total_problems, competitions, best_placement, placement_sum) = (
+            SELECT COALESCE(SUM(problems_solved), 0), COUNT(*), COALESCE(MIN(placement), 0), COALESCE(SUM(placement), 0)
+            FROM results WHERE results.student_id = student_stats.student_id)
+            WHERE student_id = ?""";
+    private static final String BUMP_GENERATION = "UPDATE meta SET value = value + 1 WHERE key = 'generation'";
+    private static final String SELECT_GENERATION = "SELECT value FROM meta WHERE key = 'generation'";
+
+    // Metrics, see Metrics.report for how they are read
+    private static final Metrics.Histogram BORROW_READ_TIME = Metrics.shared().histogram("db.borrowRead.wait.ns");
+    private static final Metrics.Histogram BORROW_WRITE_TIME = Metrics.shared().histogram("db.borrowWrite.wait.ns");
+    private static final Metrics.Histogram ADD_STUDENT_AND_COMPETITION_TIME = Metrics.shared().histogram("db.addStudentAndCompetition.ns");
+    private static final Metrics.Histogram ADD_TEAM_RESULTS_TIME = Metrics.shared().histogram("db.addTeamResults.ns");
+    private static final Metrics.Histogram ADD_STUDENT_TIME = Metrics.shared().histogram("db.addStudent.ns");
+    private static final Metrics.Histogram ADD_COMPETITION_TIME = Metrics.shared().histogram("db.addCompetition.ns");
+    private static final Metrics.Histogram PRIME_IDENTITY_CACHE_TIME = Metrics.shared().histogram("db.primeIdentityCache.ns");
+    private static final Metrics.Histogram GET_GENERATION_TIME = Metrics.shared().histogram("db.getGeneration.ns");
+    private static final Metrics.Histogram REMOVE_STUDENT_TIME = Metrics.shared().histogram("db.removeStudent.ns");
+    private static final Metrics.Histogram REMOVE_COMPETITION_TIME = Metrics.shared().histogram("db.removeCompetition.ns");
+    private static final Metrics.Histogram IS_DATABASE_EMPTY_TIME = Metrics.shared().histogram("db.isDatabaseEmpty.ns");
+    private static final Metrics.Histogram PRINT_ALL_STUDENTS_TIME = Metrics.shared().histogram("db.printAllStudents.ns");
+    private static final Metrics.Histogram PRINT_ALL_COMPETITIONS_TIME = Metrics.shared().histogram("db.printAllCompetitions.ns");
+    private static final Metrics.Histogram PRINT_ALL_RESULT_TIME = Metrics.shared().histogram("db.printAllResult.ns");
+    private static final Metrics.Histogram WIPE_DATABASE_TIME = Metrics.shared().histogram("db.wipeDatabase.ns");
+    private static final Metrics.Histogram BEGIN_BULK_LOAD_TIME = Metrics.shared().histogram("db.beginBulkLoad.ns");
+    private static final Metrics.Counter RESULTS_ADDED = Metrics.shared().counter("db.results.added");
+    private static final Metrics.Counter ROLLBACKS = Metrics.shared().counter("db.rollbacks");
+    private static final Metrics.Counter IDENTITY_CACHE_HITS = Metrics.shared().counter("db.identityCache.hits");
+    private static final Metrics.Counter IDENTITY_CACHE_MISSES = Metrics.shared().counter("db.identityCache.misses");
+
+    /**
+     * The schema migrations, applied in order. Migration i brings the database from version i to version i + 1, so
+     * new migrations are only ever added at the end.
+     */
+    private static final String[][] MIGRATIONS = {
+        // 1: the original tables
+        {
+            """
+            CREATE TABLE IF NOT EXISTS students (
+            id INTEGER PRIMARY KEY AUTOINCREMENT,
+            firstname TEXT NOT NULL,
+            lastname TEXT NOT NULL,
+            email TEXT NOT NULL,
+            level BIT NOT NULL
+            );""",
+            """
+            CREATE TABLE IF NOT EXISTS competitions (
+            id INTEGER PRIMARY KEY AUTOINCREMENT,
+            name TEXT NOT NULL
+            );""",
+            """
+            CREATE TABLE IF NOT EXISTS results (
+            student_id INTEGER,
+            competition_id INTEGER,
+            problems_solved INTEGER,
+            placement INTEGER
+            );"""
+        },
+        // 2: unique natural keys, foreign keys with cascading deletes and covering indexes on results.
+        // Duplicate students and competitions are merged into the one with the lowest id.
+        {
+            """
+            CREATE TABLE students_v2 (
+            id INTEGER PRIMARY KEY AUTOINCREMENT,
+            firstname TEXT NOT NULL,
+            lastname TEXT NOT NULL,
+            email TEXT NOT NULL,
+            level BIT NOT NULL,
+            UNIQUE (firstname, lastname, email)
+            );""",
+            "INSERT INTO students_v2 (id, firstname, lastname, email, level) SELECT MIN(id), firstname, lastname, email, level FROM students GROUP BY firstname, lastname, email",
+            """
+            CREATE TABLE competitions_v2 (
+            id INTEGER PRIMARY KEY AUTOINCREMENT,
+            name TEXT NOT NULL UNIQUE
+            );""",
+            "INSERT INTO competitions_v2 (id, name) SELECT MIN(id), name FROM competitions GROUP BY name",
+            """
+            CREATE TABLE results_v2 (
+            student_id INTEGER NOT NULL REFERENCES students (id) ON DELETE CASCADE,
+            competition_id INTEGER NOT NULL REFERENCES competitions (id) ON DELETE CASCADE,
+            problems_solved INTEGER,
+            placement INTEGER
+            );""",
+            """
+            INSERT INTO results_v2 (student_id, competition_id, problems_solved, placement)
+            SELECT s2.id, c2.id, r.problems_solved, r.placement
+            FROM results r
+            JOIN students s ON s.id = r.student_id
+            JOIN students_v2 s2 ON s2.firstname = s.firstname AND s2.lastname = s.lastname AND s2.email = s.email
+            JOIN competitions c ON c.id = r.competition_id
+            JOIN competitions_v2 c2 ON c2.name = c.name
+            ORDER BY r.rowid""",
+            // Keep handing out ids after the highest one ever used
+            "UPDATE sqlite_sequence SET seq = MAX(seq, (SELECT seq FROM sqlite_sequence WHERE name = 'students')) WHERE name = 'students_v2'",
+            "UPDATE sqlite_sequence SET seq = MAX(seq, (SELECT seq FROM sqlite_sequence WHERE name = 'competitions')) WHERE name = 'competitions_v2'",
+            "DROP TABLE results",
+            "DROP TABLE students",
+            "DROP TABLE competitions",
+            "ALTER TABLE students_v2 RENAME TO students",
+            "ALTER TABLE competitions_v2 RENAME TO competitions",
+            "ALTER TABLE results_v2 RENAME TO results",
+            "CREATE INDEX idx_results_student ON results (student_id, competition_id, problems_solved, placement)",
+            "CREATE INDEX idx_results_competition ON results (competition_id, student_id, problems_solved, placement)"
+        },
+        // 3: indexes dropped by a bulk load, so they can be rebuilt if the program stops before the load ends
+        {
+            """
+            CREATE TABLE deferred_indexes (
+            name TEXT PRIMARY KEY,
+            sql TEXT NOT NULL
+            );"""
+        },
+        // 4: per-student aggregates, kept in step with results so sorting does not need to scan them
+        {
+            """
+            CREATE TABLE student_stats (
+            student_id INTEGER PRIMARY KEY REFERENCES students (id) ON DELETE CASCADE,
+            total_problems INTEGER NOT NULL,
+            competitions INTEGER NOT NULL,
+            best_placement INTEGER NOT NULL,
+            placement_sum INTEGER NOT NULL
+            );""",
+            """
+            INSERT INTO student_stats (student_id, total_problems, competitions, best_placement, placement_sum)
+            SELECT student_id, COALESCE(SUM(problems_solved), 0), COUNT(*), COALESCE(MIN(placement), 0), COALESCE(SUM(placement), 0)
+            FROM results GROUP BY student_id"""
+        },
+        // 5: a generation number raised by every commit, so copies of the data kept outside the database can tell
+        // whether they are still current
+        {
+            """
+            CREATE TABLE meta (
+            key TEXT PRIMARY KEY,
+            value INTEGER NOT NULL
+            );""",
+            "INSERT INTO meta (key, value) VALUES ('generation', 0)"
+        },
+        // 6: levels stored as Level codes instead of their names
+        {
+            """
+            CREATE TABLE students_v6 (
+            id INTEGER PRIMARY KEY AUTOINCREMENT,
+            firstname TEXT NOT NULL,
+            lastname TEXT NOT NULL,
+            email TEXT NOT NULL,
+            level INTEGER NOT NULL CHECK (level IN (0, 1)),
+            UNIQUE (firstname, lastname, email)
+            );""",
+            """
+            INSERT INTO students_v6 (id, firstname, lastname, email, level)
+            SELECT id, firstname, lastname, email, CASE WHEN level IN ('Advanced', 1) THEN 1 ELSE 0 END
+            FROM students ORDER BY id""",
+            "UPDATE sqlite_sequence SET seq = MAX(seq, (SELECT seq FROM sqlite_sequence WHERE name = 'students')) WHERE name = 'students_v6'",
+            "DROP TABLE students",
+            "ALTER TABLE students_v6 RENAME TO students"
+        },
+        // 7: an aggregates row for every student, and indexes in leaderboard order, so pages of the leaderboard are
+        // read straight off an index
+        {
+            """
+            INSERT INTO student_stats (student_id, total_problems, competitions, best_placement, placement_sum)
+            SELECT id, 0, 0, 0, 0 FROM students WHERE id NOT IN (SELECT student_id FROM student_stats)""",
+            "CREATE INDEX idx_stats_problems ON student_stats (total_problems DESC, competitions DESC, student_id)",
+            "CREATE INDEX idx_stats_competitions ON student_stats (competitions DESC, total_problems DESC, student_id)"
+        }
+    };
+
+    private ConnectionPool pool;
+    private List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // Changes of the open transaction, published to the listeners when it commits. Only used by the writer.
+    private ChangeSet pending = new ChangeSet();
+    // Set by the writer, read by isTracking on any thread that writes
+    private volatile boolean bulkLoading;
+    // Ids of known students, keyed by studentKey, and of known competitions, keyed by name. Only used by the writer.
+    private LruCache<String, Integer> studentIds = new LruCache<>(DEFAULT_IDENTITY_CACHE_SIZE);
+    private LruCache<String, Integer> competitionIds = new LruCache<>(DEFAULT_IDENTITY_CACHE_SIZE);
 
     /**
      * Constructs a DatabaseHandler object and establishes a connection to the database.
      * @param dbURL The URL of the database.
      */
     public DatabaseHandler(String dbURL) 
+    {
+        this(dbURL, ConnectionPool.DEFAULT_READERS, PragmaProfile.INTERACTIVE);
+    }
+
+    /**
+     * Constructs a DatabaseHandler object with the specified settings and establishes a connection to the database.
+     * @param dbURL The URL of the database.
+     * @param profile The SQLite settings to use, e.g. PragmaProfile.READ_MOSTLY.
+     */
+    public DatabaseHandler(String dbURL, PragmaProfile profile)
+    {
+        this(dbURL, ConnectionPool.DEFAULT_READERS, profile);
+    }
+
+    /**
+     * Constructs a DatabaseHandler object with one write connection and up to the specified number of read-only
+     * connections to the database.
+     * @param dbURL The URL of the database.
+     * @param readers The maximum number of read-only connections.
+     * @param profile The SQLite settings to use, e.g. PragmaProfile.READ_MOSTLY.
+     */
+    public DatabaseHandler(String dbURL, int readers, PragmaProfile profile)
     {
         try {
-            connection = DriverManager.getConnection(dbURL);
+            pool = new ConnectionPool(dbURL, readers, profile);
             initializeTables();
         } catch (SQLException e) {
             System.out.println("Database connection failed: " + e.getMessage());
@@ -21,51 +242,306 @@ public class DatabaseHandler {
     }
 
     /**
-     * Returns the database connection.
-     * @return The database connection.
+     * Borrows a connection for reading. It must be closed to give it back, preferably with try-with-resources.
+     * @return A connection that may be used for reading.
+     * @throws SQLException if no connection could be borrowed.
+     */
+    public ConnectionPool.PooledConnection borrowRead() throws SQLException
+    {
+        if (pool == null) {
+            throw new SQLException("Connection is not established or is closed.");
+        }
+        long start = System.nanoTime();
+        ConnectionPool.PooledConnection reader = pool.borrowRead();
+        BORROW_READ_TIME.recordSince(start);
+        return reader;
+    }
+
+    /**
+     * Borrows the write connection, waiting until no other thread is writing. It must be closed to give it back.
+     * @return The write connection.
+     * @throws SQLException if the connection is not established or is closed.
      */
-    public Connection getConnection() 
+    private ConnectionPool.PooledConnection borrowWrite() throws SQLException
     {
-        return connection;
+        if (pool == null || pool.isClosed()) {
+            throw new SQLException("Connection is not established or is closed.");
+        }
+        long start = System.nanoTime();
+        ConnectionPool.PooledConnection writer = pool.borrowWrite();
+        BORROW_WRITE_TIME.recordSince(start);
+        return writer;
     }
 
     /**
-     * Initializes the necessary tables in the database if they do not already exist.
+     * Closes every connection to the database.
+     */
+    public void close()
+    {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Receives the rows added and removed by every committed write, on the writing thread.
+     */
+    public interface ChangeListener {
+        /**
+         * Called after a write was committed.
+         * @param changes The rows added and removed by the write.
+         */
+        void onChange(ChangeSet changes);
+    }
+
+    /**
+     * Registers a listener for the changes of every committed write. Changes made during a bulk-load session are not
+     * published; whoever runs the session should reload afterwards.
+     * @param listener The listener to add.
+     */
+    public void addChangeListener(ChangeListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a change listener.
+     * @param listener The listener to remove.
+     */
+    public void removeChangeListener(ChangeListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Checks if changes need to be recorded for the listeners.
+     * @return true if there is a listener and no bulk load is running, false otherwise.
+     */
+    private boolean isTracking()
+    {
+        return !bulkLoading && !listeners.isEmpty();
+    }
+
+    /**
+     * Publishes the recorded changes to the listeners. Called once the changes are committed.
+     */
+    private void publish()
+    {
+        ChangeSet changes = pending;
+        pending = new ChangeSet();
+        if (!changes.isEmpty()) {
+            for (ChangeListener listener : listeners) {
+                listener.onChange(changes);
+            }
+        }
+    }
+
+    /**
+     * Publishes the recorded changes if the connection is not inside a transaction, so they are already committed.
+     * @param connection The write connection.
      * @throws SQLException if a database access error occurs.
      */
+    private void publishIfCommitted(Connection connection) throws SQLException
+    {
+        if (connection.getAutoCommit()) {
+            publish();
+        }
+    }
+
+    /**
+     * Brings the database schema up to date. The schema version is kept in PRAGMA user_version, and every migration
+     * after the stored version is applied in order inside one transaction, so a failed upgrade leaves the database as
+     * it was.
+     * @throws SQLException if a database access error occurs or the database is newer than this program.
+     */
     private void initializeTables() throws SQLException 
     {
-        String studentTable = """
-                CREATE TABLE IF NOT EXISTS students (
-                id INTEGER PRIMARY KEY AUTOINCREMENT,
-                firstname TEXT NOT NULL,
-                lastname TEXT NOT NULL,
-                email TEXT NOT NULL,
-                level BIT NOT NULL
-                );""";
-        String competitionTable = """
-                CREATE TABLE IF NOT EXISTS competitions (
-                id INTEGER PRIMARY KEY AUTOINCREMENT,
-                name TEXT NOT NULL
-                );""";
-        String resultsTable = """
-                CREATE TABLE IF NOT EXISTS results (
-                student_id INTEGER,
-                competition_id INTEGER,
-                problems_solved INTEGER,
-                placement INTEGER
-                );""";
+        try (ConnectionPool.PooledConnection writer = borrowWrite();
+             Statement stmt = writer.getConnection().createStatement()) {
+            Connection connection = writer.getConnection();
+            int version;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+                version = rs.next() ? rs.getInt(1) : 0;
+            }
+
+            if (version > MIGRATIONS.length) {
+                throw new SQLException("Database schema version " + version + " is newer than this program supports (" + MIGRATIONS.length + ").");
+            }
+
+            if (version < MIGRATIONS.length) {
+                // Tables are rebuilt during migrations, so foreign keys are checked once at the end instead
+                stmt.execute("PRAGMA foreign_keys = OFF");
+                connection.setAutoCommit(false);
+                try {
+                    for (int v = version; v < MIGRATIONS.length; v++) {
+                        for (String sql : MIGRATIONS[v]) {
+                            stmt.execute(sql);
+                        }
+                        stmt.execute("PRAGMA user_version = " + (v + 1));
+                    }
+                    // A migration may renumber rows, so anything saved from the old schema is out of date
+                    stmt.execute(BUMP_GENERATION);
+
+                    try (ResultSet rs = stmt.executeQuery("PRAGMA foreign_key_check")) {
+                        if (rs.next()) {
+                            throw new SQLException("Migration left a dangling reference in table " + rs.getString(1));
+                        }
+                    }
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+
+            stmt.execute("PRAGMA foreign_keys = ON");
+            rebuildDeferredIndexes(connection);
+        }
+    }
+
+    /**
+     * A bulk-load session, started by beginBulkLoad. While it is open, the database uses the BULK settings and the
+     * secondary indexes are dropped; closing it rebuilds the indexes and restores the normal settings, also when the
+     * load failed. The session holds the write connection, so all writes must come from the thread that opened it.
+     * Rows written during the session are committed as they are written, so they stay even if closing fails.
+     */
+    public class BulkLoadSession implements AutoCloseable {
+        private ConnectionPool.PooledConnection writer;
+
+        /**
+         * Constructs a BulkLoadSession object and switches the database to bulk loading.
+         * @param writer The borrowed write connection, held until the session is closed.
+         * @throws SQLException if a database access error occurs.
+         */
+        private BulkLoadSession(ConnectionPool.PooledConnection writer) throws SQLException
+        {
+            this.writer = writer;
+            Connection connection = writer.getConnection();
+            PragmaProfile.BULK.apply(connection, true);
+            bulkLoading = true;
+
+            // Remember the definitions before dropping, so a crash mid-load can be repaired at the next start
+            try (Statement stmt = connection.createStatement()) {
+                connection.setAutoCommit(false);
+                stmt.execute("""
+                        INSERT OR REPLACE INTO deferred_indexes (name, sql)
+                        SELECT name, sql FROM sqlite_master
+                        WHERE type = 'index' AND sql IS NOT NULL AND tbl_name IN ('students', 'competitions', 'results', 'student_stats')""");
+                // An index cannot be dropped while a query on the same connection is still open
+                List<String> names = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery("SELECT name FROM deferred_indexes")) {
+                    while (rs.next()) {
+                        names.add(rs.getString("name"));
+                    }
+                }
+                for (String name : names) {
+                    stmt.execute("DROP INDEX IF EXISTS " + name);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        /**
+         * Rebuilds the dropped indexes, restores the normal settings and gives back the write connection. The
+         * connection is given back even if a step fails. Does nothing if the session was already closed.
+         * @throws SQLException if the indexes could not be rebuilt or the settings could not be restored. Indexes that
+         * were not rebuilt are rebuilt at the next start.
+         */
+        @Override
+        public void close() throws SQLException
+        {
+            if (writer == null) {
+                return;
+            }
+            Connection connection = writer.getConnection();
+            bulkLoading = false;
+            SQLException failure = null;
+            try {
+                rebuildDeferredIndexes(connection);
+            } catch (SQLException e) {
+                failure = new SQLException("Failed to rebuild indexes: " + e.getMessage(), e);
+            }
+            try {
+                // Also takes the journal out of WAL mode when the profile does not use it
+                pool.getProfile().apply(connection, true);
+            } catch (SQLException e) {
+                SQLException restore = new SQLException("Failed to restore database settings: " + e.getMessage(), e);
+                if (failure == null) {
+                    failure = restore;
+                } else {
+                    failure.addSuppressed(restore);
+                }
+            } finally {
+                writer.close();
+                writer = null;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Starts a bulk-load session. Use it in a try-with-resources block around a large import.
+     * @return The open session.
+     * @throws SQLException if a database access error occurs.
+     */
+    public BulkLoadSession beginBulkLoad() throws SQLException
+    {
+        long start = System.nanoTime();
+        ConnectionPool.PooledConnection writer = borrowWrite();
+        try {
+            return new BulkLoadSession(writer);
+        } catch (SQLException e) {
+            bulkLoading = false;
+            try {
+                pool.getProfile().apply(writer.getConnection(), true);
+            } finally {
+                writer.close();
+            }
+            throw e;
+        } finally {
+            BEGIN_BULK_LOAD_TIME.recordSince(start);
+        }
+    }
 
+    /**
+     * Recreates the indexes that a bulk load dropped and forgets them once they exist again.
+     * @param connection The write connection.
+     * @throws SQLException if a database access error occurs.
+     */
+    private void rebuildDeferredIndexes(Connection connection) throws SQLException
+    {
+        List<String> definitions = new ArrayList<>();
         try (Statement stmt = connection.createStatement()) {
-            stmt.execute(studentTable);
-            stmt.execute(competitionTable);
-            stmt.execute(resultsTable);
+            try (ResultSet rs = stmt.executeQuery("SELECT sql FROM deferred_indexes")) {
+                while (rs.next()) {
+                    definitions.add(rs.getString("sql").replaceFirst("(?i)^CREATE (UNIQUE )?INDEX ", "CREATE $1INDEX IF NOT EXISTS "));
+                }
+            }
+            if (definitions.isEmpty()) {
+                return;
+            }
+
+            for (String sql : definitions) {
+                stmt.execute(sql);
+            }
+            stmt.execute("DELETE FROM deferred_indexes");
+            // Refresh the planner statistics after the load
+            stmt.execute("ANALYZE");
         }
     }
 
     /**
      * Adds a student and their competition result to the database.
-     * @param teamType The type of the team (e.g., Novice, Advanced).
+     * @param teamType The level of the team.
      * @param name The name of the student.
      * @param email The email of the first member.
      * @param problemsSolved The number of problems solved by the student.
@@ -73,34 +549,14 @@ public class DatabaseHandler {
      * @param comp The name of the competition.
      * @throws SQLException if a database access error occurs.
      */
-    public void addStudentAndCompetition(String teamType, String name, String email, int problemsSolved, int placement, String comp) 
+    public void addStudentAndCompetition(Level teamType, String name, String email, int problemsSolved, int placement, String comp) 
     {
-        try {
-            if (connection == null || connection.isClosed()) {
-                throw new SQLException("Connection is not established or is closed.");
-            }
-
-            connection.setAutoCommit(false);
-            int student1Id = addStudent(name, email, teamType);
-            int competitionId = addCompetition(comp);
-
-            addResult(student1Id, competitionId, problemsSolved, placement);
-
-            connection.commit();
-        } catch (SQLException e) {
-            System.out.println("Error inserting data: " + e.getMessage());
-        } finally {
-            try {
-                connection.setAutoCommit(true); // Restore auto-commit mode
-            } catch (SQLException e) {
-                System.out.println("Failed to reset auto-commit: " + e.getMessage());
-            }
-        }
+        addStudentAndCompetition(teamType, name, email, "", "", "", "", problemsSolved, placement, comp);
     }
     
     /**
      * Adds multiple students and their competition results to the database.
-     * @param teamType The type of the team (e.g., Novice, Advanced).
+     * @param teamType The level of the team.
      * @param member1 The name of the first member.
      * @param email1 The email of the first member.
      * @param member2 The name of the second member.
@@ -112,92 +568,219 @@ public class DatabaseHandler {
      * @param comp The name of the competition.
      * @throws SQLException if a database access error occurs.
      */
-    public void addStudentAndCompetition(String teamType, String member1, String email1, String member2, String email2, String member3, String email3, int problemsSolved, int placement, String comp) 
+    public void addStudentAndCompetition(Level teamType, String member1, String email1, String member2, String email2, String member3, String email3, int problemsSolved, int placement, String comp) 
     {
-        try {
-            if (connection == null || connection.isClosed()) {
-                throw new SQLException("Connection is not established or is closed.");
-            }
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection writer = borrowWrite()) {
+            Connection connection = writer.getConnection();
+            try {
+                connection.setAutoCommit(false);
+                int student1Id = addStudent(member1, email1, teamType);
+                int competitionId = addCompetition(comp);
 
-            connection.setAutoCommit(false);
-            int student1Id = addStudent(member1, email1, teamType);
-            int competitionId = addCompetition(comp);
+                addResult(student1Id, competitionId, problemsSolved, placement);
 
-            addResult(student1Id, competitionId, problemsSolved, placement);
+                if (!member2.isEmpty() && !email2.isEmpty()) {
+                    int student2Id = addStudent(member2, email2, teamType);
+                    addResult(student2Id, competitionId, problemsSolved, placement);
+                }
 
-            if (!member2.isEmpty() && !email2.isEmpty()) {
-                int student2Id = addStudent(member2, email2, teamType);
-                addResult(student2Id, competitionId, problemsSolved, placement);
-            }
+                if (!member3.isEmpty() && !email3.isEmpty()) {
+                    int student3Id = addStudent(member3, email3, teamType);
+                    addResult(student3Id, competitionId, problemsSolved, placement);
+                }
 
-            if (!member3.isEmpty() && !email3.isEmpty()) {
-                int student3Id = addStudent(member3, email3, teamType);
-                addResult(student3Id, competitionId, problemsSolved, placement);
+                commit(writer);
+                publish();
+            } catch (SQLException e) {
+                System.out.println("Error inserting data: " + e.getMessage());
+                rollback(connection);
+            } finally {
+                connection.setAutoCommit(true); // Restore auto-commit mode
             }
-
-            connection.commit();
         } catch (SQLException e) {
             System.out.println("Error inserting data: " + e.getMessage());
         } finally {
+            ADD_STUDENT_AND_COMPETITION_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Adds a whole file's worth of team results for one competition to the database. The competition is resolved once,
+     * the student and result statements are prepared once and reused for every row, and the results are sent to the
+     * database in JDBC batches that are committed every chunkSize rows.
+     * @param comp The name of the competition.
+     * @param rows The team rows to add.
+     * @param chunkSize The number of team rows to commit at a time, or 0 to commit once for the whole list.
+     * @return The number of results added to the database.
+     * @throws SQLException if a database access error occurs. The chunk being written is rolled back, the chunks
+     * committed before it stay.
+     */
+    public int addTeamResults(String comp, List<TeamResult> rows, int chunkSize) throws SQLException
+    {
+        int added = 0;
+        int pendingResults = 0;
+        int pendingRows = 0;
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection writer = borrowWrite()) {
+            Connection connection = writer.getConnection();
             try {
-                connection.setAutoCommit(true); // Restore auto-commit mode
+                connection.setAutoCommit(false);
+                PreparedStatement resultStmt = writer.prepare(INSERT_RESULT);
+                PreparedStatement statsStmt = writer.prepare(UPSERT_STATS);
+                int competitionId = addCompetition(comp);
+
+                for (TeamResult row : rows) {
+                    // Validate every member before inserting any of them, so a bad row is skipped as a whole
+                    String[][] names = new String[row.getMemberCount()][];
+                    boolean valid = true;
+                    for (int i = 0; i < row.getMemberCount() && valid; i++) {
+                        if (row.hasMember(i)) {
+                            names[i] = row.getMember(i).split(" ", 2);
+                            valid = names[i].length == 2;
+                        }
+                    }
+                    if (!valid) {
+                        System.out.println("Skipping row, name must include both first and last name: " + row.getMember(0));
+                        continue;
+                    }
+
+                    for (int i = 0; i < row.getMemberCount(); i++) {
+                        if (names[i] == null) continue;
+                        int studentId = addStudent(writer, names[i][0], names[i][1], row.getEmail(i), row.getTeamType());
+
+                        resultStmt.setInt(1, studentId);
+                        resultStmt.setInt(2, competitionId);
+                        resultStmt.setInt(3, row.getProblemsSolved());
+                        resultStmt.setInt(4, row.getPlacement());
+                        resultStmt.addBatch();
+                        addStats(statsStmt, studentId, row.getProblemsSolved(), row.getPlacement());
+                        statsStmt.addBatch();
+                        pendingResults++;
+                        if (isTracking()) {
+                            pending.addResult(studentId, competitionId, row.getProblemsSolved(), row.getPlacement());
+                        }
+                    }
+
+                    pendingRows++;
+                    if (chunkSize > 0 && pendingRows >= chunkSize) {
+                        resultStmt.executeBatch();
+                        statsStmt.executeBatch();
+                        commit(writer);
+                        publish();
+                        added += pendingResults;
+                        RESULTS_ADDED.add(pendingResults);
+                        pendingResults = 0;
+                        pendingRows = 0;
+                    }
+                }
+
+                resultStmt.executeBatch();
+                statsStmt.executeBatch();
+                commit(writer);
+                publish();
+                added += pendingResults;
+                RESULTS_ADDED.add(pendingResults);
             } catch (SQLException e) {
-                System.out.println("Failed to reset auto-commit: " + e.getMessage());
+                writer.prepare(INSERT_RESULT).clearBatch();
+                writer.prepare(UPSERT_STATS).clearBatch();
+                rollback(connection);
+                throw e;
+            } finally {
+                connection.setAutoCommit(true); // Restore auto-commit mode
             }
+        } finally {
+            ADD_TEAM_RESULTS_TIME.recordSince(start);
         }
+        return added;
     }
 
     /**
      * Adds a student to the database.
      * @param name The name of the student.
      * @param email The email of the student.
-     * @param teamType The type of the team (e.g., Novice, Advanced).
+     * @param teamType The level of the team.
      * @return The ID of the newly added student, or -1 if the student could not be added.
      * @throws SQLException if a database access error occurs.
      */
-    public int addStudent(String name, String email, String teamType) throws SQLException
+    public int addStudent(String name, String email, Level teamType) throws SQLException
     {
         String[] nameParts = name.split(" ", 2); // Split into first and last name
         if (nameParts.length < 2) {
             throw new IllegalArgumentException("Name must include both first and last name.");
         }
 
-        String firstName = nameParts[0];
-        String lastName = nameParts[1];
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection writer = borrowWrite()) {
+            bumpGenerationIfAutoCommit(writer);
+            int id = addStudent(writer, nameParts[0], nameParts[1], email, teamType);
+            publishIfCommitted(writer.getConnection());
+            return id;
+        } finally {
+            ADD_STUDENT_TIME.recordSince(start);
+        }
+    }
 
-        // Check if the student already exists
-        String selectQuery = "SELECT id FROM students WHERE firstname = ? AND lastname = ? AND email = ?";
-        try (PreparedStatement selectStmt = connection.prepareStatement(selectQuery)) {
-            selectStmt.setString(1, firstName);
-            selectStmt.setString(2, lastName);
-            selectStmt.setString(3, email);
+    /**
+     * Adds a student to the database on a borrowed write connection. Known students are answered from the identity
+     * cache; otherwise the student is inserted, or looked up if they were already there.
+     * @param writer The borrowed write connection.
+     * @param firstName The first name of the student.
+     * @param lastName The last name of the student.
+     * @param email The email of the student.
+     * @param teamType The level of the team.
+     * @return The ID of the student, or -1 if the student could not be added.
+     * @throws SQLException if a database access error occurs.
+     */
+    private int addStudent(ConnectionPool.PooledConnection writer, String firstName, String lastName, String email, Level teamType) throws SQLException
+    {
+        String key = studentKey(firstName, lastName, email);
+        Integer cached = studentIds.get(key);
+        if (cached != null) {
+            IDENTITY_CACHE_HITS.increment();
+            return cached;
+        }
+        IDENTITY_CACHE_MISSES.increment();
 
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    // Student already exists, return their ID
-                    return rs.getInt("id");
+        // Insert the student, nothing is returned if they already exist
+        int id = -1;
+        PreparedStatement upsertStmt = writer.prepare(UPSERT_STUDENT);
+        upsertStmt.setString(1, firstName);
+        upsertStmt.setString(2, lastName);
+        upsertStmt.setString(3, email);
+        upsertStmt.setInt(4, teamType.getCode());
+        try (ResultSet rs = upsertStmt.executeQuery()) {
+            if (rs.next()) {
+                id = rs.getInt(1);
+                if (isTracking()) {
+                    SymbolTable symbols = SymbolTable.shared();
+                    pending.addStudent(new Student(id, symbols.intern(firstName), symbols.intern(lastName), email, teamType));
                 }
             }
         }
 
-        // If not exists, insert the student
-        String insertQuery = "INSERT INTO students (firstname, lastname, email, level) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement insertStmt = connection.prepareStatement(insertQuery, Statement.RETURN_GENERATED_KEYS)) {
-            insertStmt.setString(1, firstName);
-            insertStmt.setString(2, lastName);
-            insertStmt.setString(3, email);
-            insertStmt.setString(4, teamType);
-            insertStmt.executeUpdate();
-
-            // Retrieve and return the newly generated ID
-            try (ResultSet rs = insertStmt.getGeneratedKeys()) {
+        if (id != -1) {
+            // New students start with empty aggregates, so every student is on the leaderboard indexes
+            PreparedStatement statsStmt = writer.prepare(INSERT_EMPTY_STATS);
+            statsStmt.setInt(1, id);
+            statsStmt.executeUpdate();
+        } else {
+            // Student already exists, look up their ID
+            PreparedStatement selectStmt = writer.prepare(SELECT_STUDENT);
+            selectStmt.setString(1, firstName);
+            selectStmt.setString(2, lastName);
+            selectStmt.setString(3, email);
+            try (ResultSet rs = selectStmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getInt(1);
+                    id = rs.getInt("id");
                 }
             }
         }
 
-        return -1; // No ID was retrieved
+        if (id != -1) {
+            studentIds.put(key, id);
+        }
+        return id;
     }
 
     /**
@@ -208,37 +791,148 @@ public class DatabaseHandler {
      */
     public int addCompetition(String name) throws SQLException
     {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection writer = borrowWrite()) {
+            Integer cached = competitionIds.get(name);
+            if (cached != null) {
+                IDENTITY_CACHE_HITS.increment();
+                return cached;
+            }
+            IDENTITY_CACHE_MISSES.increment();
 
-        // Check if competition already exists
-        String selectQuery = "SELECT id FROM competitions WHERE name = ?";
-        try (PreparedStatement selectStmt = connection.prepareStatement(selectQuery)) {
-            selectStmt.setString(1, name);
-
-            try (ResultSet rs = selectStmt.executeQuery()) {
+            // Insert the competition, nothing is returned if it already exists
+            bumpGenerationIfAutoCommit(writer);
+            int id = -1;
+            PreparedStatement stmt = writer.prepare(UPSERT_COMPETITION);
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    // Competition already exists, return their ID
-                    return rs.getInt("id");
+                    id = rs.getInt(1);
+                    if (isTracking()) {
+                        pending.addCompetition(new Competition(id, SymbolTable.shared().intern(name)));
+                    }
                 }
             }
-        }
 
-        // If not exists, insert the competition
-        String query = "INSERT OR IGNORE INTO competitions (name) VALUES (?)";
-        try (PreparedStatement stmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, name);
-            stmt.executeUpdate();
+            if (id == -1) {
+                // Competition already exists, look up its ID
+                PreparedStatement selectStmt = writer.prepare(SELECT_COMPETITION);
+                selectStmt.setString(1, name);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (rs.next()) {
+                        id = rs.getInt("id");
+                    }
+                }
+            }
 
-            try (ResultSet rs = stmt.getGeneratedKeys()) {
-                if (rs.next())
-                    return rs.getInt(1);
+            if (id != -1) {
+                competitionIds.put(name, id);
             }
+            publishIfCommitted(writer.getConnection());
+            return id;
+        } finally {
+            ADD_COMPETITION_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Fills the identity cache with every student and competition in the database, up to the cache capacity. Useful
+     * before a large import, which then needs no lookups for returning students.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void primeIdentityCache() throws SQLException
+    {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection writer = borrowWrite();
+             Statement stmt = writer.getConnection().createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT id, firstname, lastname, email FROM students ORDER BY id DESC LIMIT " + studentIds.getCapacity())) {
+                while (rs.next()) {
+                    studentIds.put(studentKey(rs.getString("firstname"), rs.getString("lastname"), rs.getString("email")), rs.getInt("id"));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT id, name FROM competitions ORDER BY id DESC LIMIT " + competitionIds.getCapacity())) {
+                while (rs.next()) {
+                    competitionIds.put(rs.getString("name"), rs.getInt("id"));
+                }
+            }
+        } finally {
+            PRIME_IDENTITY_CACHE_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Builds the identity cache key of a student.
+     * @param firstName The first name of the student.
+     * @param lastName The last name of the student.
+     * @param email The email of the student.
+     * @return The key of the student.
+     */
+    private static String studentKey(String firstName, String lastName, String email)
+    {
+        return firstName + '\u0000' + lastName + '\u0000' + email;
+    }
+
+    /**
+     * Rolls back the current transaction and forgets its changes. Ids handed out inside it may no longer exist, so the
+     * identity cache is cleared as well.
+     * @param connection The write connection.
+     */
+    private void rollback(Connection connection)
+    {
+        ROLLBACKS.increment();
+        pending = new ChangeSet();
+        studentIds.clear();
+        competitionIds.clear();
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            System.out.println("Failed to roll back: " + e.getMessage());
         }
+    }
+
+    /**
+     * Raises the generation number and commits the current transaction, so the raise is part of it.
+     * @param writer The borrowed write connection.
+     * @throws SQLException if a database access error occurs.
+     */
+    private void commit(ConnectionPool.PooledConnection writer) throws SQLException
+    {
+        writer.prepare(BUMP_GENERATION).executeUpdate();
+        writer.getConnection().commit();
+    }
 
-        return -1; // No ID was retrieved
+    /**
+     * Raises the generation number ahead of a write made outside of a transaction. Raising it first means a crash
+     * between the two statements can only make saved copies look out of date, never make them look current.
+     * @param writer The borrowed write connection.
+     * @throws SQLException if a database access error occurs.
+     */
+    private void bumpGenerationIfAutoCommit(ConnectionPool.PooledConnection writer) throws SQLException
+    {
+        if (writer.getConnection().getAutoCommit()) {
+            writer.prepare(BUMP_GENERATION).executeUpdate();
+        }
+    }
+
+    /**
+     * Gets the generation number of the database, which every commit made through this class raises.
+     * @return The current generation number.
+     * @throws SQLException if a database access error occurs.
+     */
+    public long getGeneration() throws SQLException
+    {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection reader = borrowRead();
+             ResultSet rs = reader.prepare(SELECT_GENERATION).executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } finally {
+            GET_GENERATION_TIME.recordSince(start);
+        }
     }
 
     /**
-     * Adds a result to the results table.
+     * Adds a result to the results table and to the student's aggregates. Must be called inside a transaction, so
+     * both are written together.
      * @param studentId The ID of the student.
      * @param competitionId The ID of the competition.
      * @param problemsSolved The number of problems solved by the student.
@@ -247,16 +941,40 @@ public class DatabaseHandler {
      */
     private void addResult(int studentId, int competitionId, int problemsSolved, int placement) throws SQLException
     {
-        String query = "INSERT INTO results (student_id, competition_id, problems_solved, placement) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+        try (ConnectionPool.PooledConnection writer = borrowWrite()) {
+            PreparedStatement stmt = writer.prepare(INSERT_RESULT);
             stmt.setInt(1, studentId);
             stmt.setInt(2, competitionId);
             stmt.setInt(3, problemsSolved);
             stmt.setInt(4, placement);
             stmt.executeUpdate();
+
+            PreparedStatement statsStmt = writer.prepare(UPSERT_STATS);
+            addStats(statsStmt, studentId, problemsSolved, placement);
+            statsStmt.executeUpdate();
+            RESULTS_ADDED.increment();
+            if (isTracking()) {
+                pending.addResult(studentId, competitionId, problemsSolved, placement);
+            }
         }
     }
 
+    /**
+     * Sets the parameters of the student aggregates statement for one new result.
+     * @param statsStmt The prepared aggregates statement.
+     * @param studentId The ID of the student.
+     * @param problemsSolved The number of problems solved by the student.
+     * @param placement The placement of the student in the competition.
+     * @throws SQLException if a database access error occurs.
+     */
+    private static void addStats(PreparedStatement statsStmt, int studentId, int problemsSolved, int placement) throws SQLException
+    {
+        statsStmt.setInt(1, studentId);
+        statsStmt.setInt(2, problemsSolved);
+        statsStmt.setInt(3, placement);
+        statsStmt.setInt(4, placement);
+    }
+
     /**
      * Removes a student from the database.
      * @param name The name of the student.
@@ -272,33 +990,38 @@ public class DatabaseHandler {
         String firstName = nameParts[0];
         String lastName = nameParts[1];
     
-        // Find the student ID
-        String selectQuery = "SELECT id FROM students WHERE firstname = ? AND lastname = ?";
-        try (PreparedStatement selectStmt = connection.prepareStatement(selectQuery)) {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection writer = borrowWrite()) {
+            // Find the student ID
+            int studentId = -1;
+            String email = null;
+            PreparedStatement selectStmt = writer.prepare("SELECT id, email FROM students WHERE firstname = ? AND lastname = ?");
             selectStmt.setString(1, firstName);
             selectStmt.setString(2, lastName);
-    
             try (ResultSet rs = selectStmt.executeQuery()) {
                 if (rs.next()) {
-                    int studentId = rs.getInt("id");
-    
-                    // Remove from results table
-                    String deleteResultsQuery = "DELETE FROM results WHERE student_id = ?";
-                    try (PreparedStatement deleteResultsStmt = connection.prepareStatement(deleteResultsQuery)) {
-                        deleteResultsStmt.setInt(1, studentId);
-                        deleteResultsStmt.executeUpdate();
-                    }
-    
-                    // Remove from students table
-                    String deleteStudentQuery = "DELETE FROM students WHERE id = ?";
-                    try (PreparedStatement deleteStudentStmt = connection.prepareStatement(deleteStudentQuery)) {
-                        deleteStudentStmt.setInt(1, studentId);
-                        deleteStudentStmt.executeUpdate();
-                    }
-                } else {
-                    System.out.println("Student not found: " + name);
+                    studentId = rs.getInt("id");
+                    email = rs.getString("email");
                 }
             }
+
+            if (studentId == -1) {
+                System.out.println("Student not found: " + name);
+                return;
+            }
+
+            // Remove from students table, the results are removed by the cascading foreign key
+            bumpGenerationIfAutoCommit(writer);
+            PreparedStatement deleteStudentStmt = writer.prepare("DELETE FROM students WHERE id = ?");
+            deleteStudentStmt.setInt(1, studentId);
+            deleteStudentStmt.executeUpdate();
+            studentIds.remove(studentKey(firstName, lastName, email));
+            if (isTracking()) {
+                pending.removeStudent(studentId);
+            }
+            publishIfCommitted(writer.getConnection());
+        } finally {
+            REMOVE_STUDENT_TIME.recordSince(start);
         }
     }
 
@@ -309,32 +1032,72 @@ public class DatabaseHandler {
      */
     public void removeCompetition(String competitionName) throws SQLException
     {
-        // Find the competition ID
-        String selectQuery = "SELECT id FROM competitions WHERE name = ?";
-        try (PreparedStatement selectStmt = connection.prepareStatement(selectQuery)) {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection writer = borrowWrite()) {
+            // Find the competition ID
+            int competitionId = -1;
+            PreparedStatement selectStmt = writer.prepare(SELECT_COMPETITION);
             selectStmt.setString(1, competitionName);
-    
             try (ResultSet rs = selectStmt.executeQuery()) {
                 if (rs.next()) {
-                    int competitionId = rs.getInt("id");
-    
-                    // Remove from results table
-                    String deleteResultsQuery = "DELETE FROM results WHERE competition_id = ?";
-                    try (PreparedStatement deleteResultsStmt = connection.prepareStatement(deleteResultsQuery)) {
-                        deleteResultsStmt.setInt(1, competitionId);
-                        deleteResultsStmt.executeUpdate();
+                    competitionId = rs.getInt("id");
+                }
+            }
+
+            if (competitionId == -1) {
+                System.out.println("Competition not found: " + competitionName);
+                return;
+            }
+
+            Connection connection = writer.getConnection();
+            boolean ownTransaction = connection.getAutoCommit();
+            try {
+                connection.setAutoCommit(false);
+
+                // Find which students lose results before the cascade removes them
+                List<Integer> studentIdsAffected = new ArrayList<>();
+                PreparedStatement resultsStmt = writer.prepare("SELECT DISTINCT student_id FROM results WHERE competition_id = ?");
+                resultsStmt.setInt(1, competitionId);
+                try (ResultSet rs = resultsStmt.executeQuery()) {
+                    while (rs.next()) {
+                        studentIdsAffected.add(rs.getInt("student_id"));
                     }
-    
-                    // Remove from competitions table
-                    String deleteCompetitionQuery = "DELETE FROM competitions WHERE id = ?";
-                    try (PreparedStatement deleteCompetitionStmt = connection.prepareStatement(deleteCompetitionQuery)) {
-                        deleteCompetitionStmt.setInt(1, competitionId);
-                        deleteCompetitionStmt.executeUpdate();
+                }
+
+                // Remove from competitions table, the results are removed by the cascading foreign key
+                PreparedStatement deleteCompetitionStmt = writer.prepare("DELETE FROM competitions WHERE id = ?");
+                deleteCompetitionStmt.setInt(1, competitionId);
+                deleteCompetitionStmt.executeUpdate();
+
+                // Recompute the aggregates of the students who lost results
+                PreparedStatement refreshStmt = writer.prepare(REFRESH_STATS);
+                for (int studentId : studentIdsAffected) {
+                    refreshStmt.setInt(1, studentId);
+                    refreshStmt.addBatch();
+                    if (isTracking()) {
+                        pending.removeResults(studentId, competitionId);
                     }
-                } else {
-                    System.out.println("Competition not found: " + competitionName);
                 }
+                refreshStmt.executeBatch();
+                if (isTracking()) {
+                    pending.removeCompetition(competitionId);
+                }
+
+                if (ownTransaction) {
+                    commit(writer);
+                }
+            } catch (SQLException e) {
+                if (ownTransaction) {
+                    rollback(connection);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(ownTransaction);
             }
+            competitionIds.remove(competitionName);
+            publishIfCommitted(writer.getConnection());
+        } finally {
+            REMOVE_COMPETITION_TIME.recordSince(start);
         }
     }
 
@@ -345,10 +1108,13 @@ public class DatabaseHandler {
      */
     public boolean isDatabaseEmpty() throws SQLException
     {
-        String sql = "SELECT COUNT(*) AS count FROM students";
-        Statement statement = connection.createStatement();
-        ResultSet rs = statement.executeQuery(sql);
-        return rs.next() && rs.getInt("count") == 0;
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection reader = borrowRead();
+             ResultSet rs = reader.prepare("SELECT EXISTS (SELECT 1 FROM students) AS found").executeQuery()) {
+            return !(rs.next() && rs.getInt("found") == 1);
+        } finally {
+            IS_DATABASE_EMPTY_TIME.recordSince(start);
+        }
     }
 
     /**
@@ -358,8 +1124,9 @@ public class DatabaseHandler {
     public void printAllStudents() throws SQLException
     {
         String query = "SELECT * FROM students";
-        try (PreparedStatement stmt = connection.prepareStatement(query);
-             ResultSet rs = stmt.executeQuery()) {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection reader = borrowRead();
+             ResultSet rs = reader.prepare(query).executeQuery()) {
 
             System.out.println("ID\tFirst Name\tLast Name\tEmail\tLevel");
             System.out.println("--------------------------------------------------");
@@ -370,11 +1137,13 @@ public class DatabaseHandler {
                 String firstName = rs.getString("firstname");
                 String lastName = rs.getString("lastname");
                 String email = rs.getString("email");
-                String level = rs.getString("level");
+                Level level = Level.fromCode(rs.getInt("level"));
 
                 // Print each row
                 System.out.printf("%d\t%s\t%s\t%s\t%s%n", id, firstName, lastName, email, level);
             }
+        } finally {
+            PRINT_ALL_STUDENTS_TIME.recordSince(start);
         }
     }
 
@@ -385,8 +1154,9 @@ public class DatabaseHandler {
     public void printAllCompetitions() throws SQLException
     {
         String query = "SELECT * FROM competitions";
-        try (PreparedStatement stmt = connection.prepareStatement(query);
-             ResultSet rs = stmt.executeQuery()) {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection reader = borrowRead();
+             ResultSet rs = reader.prepare(query).executeQuery()) {
 
             System.out.println("ID\tName");
             System.out.println("--------------------------------------------------");
@@ -399,6 +1169,8 @@ public class DatabaseHandler {
                 // Print each row
                 System.out.printf("%d\t%s", id, name);
             }
+        } finally {
+            PRINT_ALL_COMPETITIONS_TIME.recordSince(start);
         }
     }
 
@@ -409,8 +1181,9 @@ public class DatabaseHandler {
     public void printAllResult() throws SQLException
     {
         String query = "SELECT * FROM results";
-        try (PreparedStatement stmt = connection.prepareStatement(query);
-             ResultSet rs = stmt.executeQuery()) {
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection reader = borrowRead();
+             ResultSet rs = reader.prepare(query).executeQuery()) {
 
             System.out.println("Student ID\tCompetition ID\t\tEmail\tLevel");
             System.out.println("--------------------------------------------------");
@@ -425,6 +1198,8 @@ public class DatabaseHandler {
                 // Print each row
                 System.out.printf("%d\t%d\t%d\t%d%n", student_id, competition_id, problems_solved, placement);
             }
+        } finally {
+            PRINT_ALL_RESULT_TIME.recordSince(start);
         }
     }
 
@@ -434,19 +1209,35 @@ public class DatabaseHandler {
      */
     public void wipeDatabase() throws SQLException
     {
-        try (Statement stmt = connection.createStatement()) { 
-            connection.setAutoCommit(false); 
+        long start = System.nanoTime();
+        try (ConnectionPool.PooledConnection writer = borrowWrite();
+             Statement stmt = writer.getConnection().createStatement()) { 
+            Connection connection = writer.getConnection();
+            try {
+                connection.setAutoCommit(false); 
     
-            stmt.executeUpdate("DELETE FROM students");
-            stmt.executeUpdate("DELETE FROM competitions");
-            stmt.executeUpdate("DELETE FROM results");
+                // Results and aggregates first, so the deletes below have nothing to cascade to
+                stmt.executeUpdate("DELETE FROM student_stats");
+                stmt.executeUpdate("DELETE FROM results");
+                stmt.executeUpdate("DELETE FROM students");
+                stmt.executeUpdate("DELETE FROM competitions");
     
-            connection.commit();
-        } catch (SQLException e) {
-            connection.rollback();
-            throw e;
+                if (isTracking()) {
+                    pending = new ChangeSet();
+                    pending.wipe();
+                }
+                commit(writer);
+                studentIds.clear();
+                competitionIds.clear();
+                publish();
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
         } finally {
-            connection.setAutoCommit(true);
+            WIPE_DATABASE_TIME.recordSince(start);
         }
     }
 }
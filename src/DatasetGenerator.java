@@ -0,0 +1,388 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The DatasetGenerator class writes synthetic competition data for load testing, either as one file per competition
+ * in the layout SpreadsheetParser reads (an advanced section after a "#" row and a novice section after a "~" row,
+ * with up to three members per team) or as one flat file in the layout of an export. Rows are written as they are
+ * generated, so the size of a dataset is only limited by the disk. The same seed always gives the same data.
+ *
+ * Usage: java DatasetGenerator [--students N] [--competitions N] [--teams N] [--min-team N] [--max-team N]
+ * [--skew X] [--duplicates X] [--seed N] [--format sectioned|flat|both] [--out DIR]
+ */
+public class DatasetGenerator {
+    private static final String[] FIRST_NAMES = {
+        "Ava", "Ben", "Chloe", "Daniel", "Emma", "Felix", "Grace", "Henry", "Isla", "Jack", "Kate", "Liam", "Maya",
+        "Noah", "Olivia", "Priya", "Quinn", "Ravi", "Sofia", "Theo", "Uma", "Victor", "Wei", "Xuan", "Yusuf", "Zoe"
+    };
+    private static final String[] LAST_NAMES = {
+        "Adams", "Brown", "Chen", "Diaz", "Evans", "Fischer", "Garcia", "Huang", "Ito", "Johnson", "Kim", "Lopez",
+        "Miller", "Nguyen", "Okafor", "Patel", "Quintero", "Rossi", "Smith", "Tanaka", "Usman", "Volkov", "Wong",
+        "Xu", "Yamada", "Zhang"
+    };
+
+    private int students = 10000;
+    private int competitions = 20;
+    private int teamsPerCompetition = 500;
+    private int minTeamSize = 1;
+    private int maxTeamSize = 3;
+    private double skew = 2.0;
+    private double duplicateRate = 0.0;
+    private long seed = 42;
+    // The rows of each level written by the last call of writeCompetitionFiles
+    private long advancedRows;
+    private long noviceRows;
+
+    /**
+     * Sets the number of distinct students teams are drawn from.
+     * @param students The number of students.
+     */
+    public void setStudents(int students)
+    {
+        this.students = Math.max(1, students);
+    }
+
+    /**
+     * Sets the number of competitions.
+     * @param competitions The number of competitions.
+     */
+    public void setCompetitions(int competitions)
+    {
+        this.competitions = Math.max(1, competitions);
+    }
+
+    /**
+     * Sets the number of teams in each competition.
+     * @param teamsPerCompetition The number of teams.
+     */
+    public void setTeamsPerCompetition(int teamsPerCompetition)
+    {
+        this.teamsPerCompetition = Math.max(1, teamsPerCompetition);
+    }
+
+    /**
+     * Sets the range of team sizes. Sizes are drawn uniformly from the range, which is clamped to 1 to 3 members.
+     * @param minTeamSize The smallest team.
+     * @param maxTeamSize The largest team.
+     */
+    public void setTeamSize(int minTeamSize, int maxTeamSize)
+    {
+        this.minTeamSize = Math.max(1, Math.min(3, minTeamSize));
+        this.maxTeamSize = Math.max(this.minTeamSize, Math.min(3, maxTeamSize));
+    }
+
+    /**
+     * Sets how strongly competitions draw on the same returning students. At 1 every student is equally likely to
+     * compete; higher values make a small group of students compete far more often than the rest.
+     * @param skew The skew, at least 1.
+     */
+    public void setSkew(double skew)
+    {
+        this.skew = Math.max(1.0, skew);
+    }
+
+    /**
+     * Sets the chance of a team row being written twice in a row, to test how duplicates are handled.
+     * @param duplicateRate The chance of a duplicate, between 0 and 1.
+     */
+    public void setDuplicateRate(double duplicateRate)
+    {
+        this.duplicateRate = Math.max(0.0, Math.min(1.0, duplicateRate));
+    }
+
+    /**
+     * Sets the seed of the random numbers.
+     * @param seed The seed.
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Gets the number of results the settings produce on average, not counting duplicates.
+     * @return The expected number of results.
+     */
+    public long getExpectedResults()
+    {
+        return (long) competitions * teamsPerCompetition * (minTeamSize + maxTeamSize) / 2;
+    }
+
+    /**
+     * Writes one file per competition in the layout SpreadsheetParser reads, named so the competition name can be
+     * taken from the file name.
+     * @param dir The directory to write to, created if needed.
+     * @return The files written, in competition order.
+     * @throws IOException if a file could not be written.
+     */
+    public List<File> writeCompetitionFiles(Path dir) throws IOException
+    {
+        Files.createDirectories(dir);
+        Random random = new Random(seed);
+        StringBuilder advanced = new StringBuilder();
+        StringBuilder row = new StringBuilder(160);
+        List<File> files = new ArrayList<>(competitions);
+        advancedRows = 0;
+        noviceRows = 0;
+
+        for (int c = 0; c < competitions; c++) {
+            File file = dir.resolve(competitionName(c) + ".csv").toFile();
+            try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                // Novice rows are written straight away, advanced rows are held back until the novice section is done
+                advanced.setLength(0);
+                advanced.append("#,,,,,,,,,,\n");
+                out.write("~,,,,,,,,,,\n");
+                for (int t = 0; t < teamsPerCompetition; t++) {
+                    row.setLength(0);
+                    boolean isAdvanced = appendTeamRow(row, random, t);
+                    int copies = random.nextDouble() < duplicateRate ? 2 : 1;
+                    for (int i = 0; i < copies; i++) {
+                        if (isAdvanced) {
+                            advanced.append(row);
+                            advancedRows++;
+                        } else {
+                            out.append(row);
+                            noviceRows++;
+                        }
+                    }
+                    if (advanced.length() > 1 << 16) {
+                        // Keep memory flat by spilling the advanced rows into a second advanced section, then going
+                        // back to the novice section
+                        out.append(advanced);
+                        out.write("~,,,,,,,,,,\n");
+                        advanced.setLength(0);
+                        advanced.append("#,,,,,,,,,,\n");
+                    }
+                }
+                out.append(advanced);
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Checks that files written by writeCompetitionFiles parse back into as many advanced and novice rows as were
+     * written, so every row ended up in the section of its level.
+     * @param files The files written.
+     * @throws IOException if a file could not be read or the number of rows of a level differs.
+     */
+    public void checkCompetitionFiles(List<File> files) throws IOException
+    {
+        long[] parsed = new long[2]; // Advanced and novice rows
+        SpreadsheetParser parser = new SpreadsheetParser(null);
+        for (File file : files) {
+            parser.parse(file, IngestPipeline.DEFAULT_BATCH_SIZE, rows -> {
+                for (TeamResult result : rows) {
+                    parsed[result.getTeamType() == Level.ADVANCED ? 0 : 1]++;
+                }
+            });
+        }
+        if (parsed[0] != advancedRows || parsed[1] != noviceRows) {
+            throw new IOException(String.format(Locale.ROOT, "Wrote %d advanced and %d novice rows, but the files hold %d advanced and %d novice rows", advancedRows, noviceRows, parsed[0], parsed[1]));
+        }
+    }
+
+    /**
+     * Writes one file with a header row and one row per result, in the layout of an export. The same seed gives the
+     * same teams as writeCompetitionFiles.
+     * @param file The file to write to.
+     * @return The number of results written.
+     * @throws IOException if the file could not be written.
+     */
+    public long writeFlatFile(File file) throws IOException
+    {
+        Random random = new Random(seed);
+        StringBuilder row = new StringBuilder(160);
+        long written = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write(String.join(",", DataExporter.HEADER));
+            out.write('\n');
+            int[] members = new int[3];
+            for (int c = 0; c < competitions; c++) {
+                String competition = competitionName(c);
+                for (int t = 0; t < teamsPerCompetition; t++) {
+                    int size = drawTeam(random, members);
+                    int problems = problemsSolved(t);
+                    int placement = t + 1;
+                    int copies = random.nextDouble() < duplicateRate ? 2 : 1;
+                    for (int i = 0; i < copies; i++) {
+                        for (int m = 0; m < size; m++) {
+                            row.setLength(0);
+                            row.append(competition).append(',');
+                            appendName(row, members[m]);
+                            row.append(',').append(problems).append(',').append(placement).append('\n');
+                            out.append(row);
+                            written++;
+                        }
+                    }
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Appends one team row in the layout SpreadsheetParser reads.
+     * @param row The builder to append to.
+     * @param random The random numbers.
+     * @param team The index of the team in its competition, which is also its placement minus one.
+     * @return true if the team is in the advanced section, false if it is in the novice section.
+     */
+    private boolean appendTeamRow(StringBuilder row, Random random, int team)
+    {
+        int[] members = new int[3];
+        int size = drawTeam(random, members);
+        int problems = problemsSolved(team);
+
+        row.append("Team ").append(team + 1).append(",School ").append(members[0] % 50).append(',');
+        for (int m = 0; m < 3; m++) {
+            row.append(',');
+            if (m < size) {
+                appendName(row, members[m]);
+                row.append(',');
+                appendEmail(row, members[m]);
+            } else {
+                row.append(',');
+            }
+        }
+        row.append(',').append(problems).append(',').append(team + 1).append('\n');
+        return isAdvanced(members[0]);
+    }
+
+    /**
+     * Draws the members of a team, without drawing the same student twice.
+     * @param random The random numbers.
+     * @param members The array to put the student numbers in.
+     * @return The size of the team.
+     */
+    private int drawTeam(Random random, int[] members)
+    {
+        int size = minTeamSize + random.nextInt(maxTeamSize - minTeamSize + 1);
+        for (int m = 0; m < size; m++) {
+            int student;
+            boolean repeated;
+            do {
+                // A power of a uniform number piles up near 0, so low-numbered students keep coming back
+                student = (int) (Math.pow(random.nextDouble(), skew) * students);
+                repeated = false;
+                for (int k = 0; k < m; k++) {
+                    repeated |= members[k] == student;
+                }
+            } while (repeated && students > m);
+            members[m] = student;
+        }
+        return size;
+    }
+
+    /**
+     * Gets the problems solved by a team, which go down from 12 for the winner to 0 for the last place.
+     * @param team The index of the team in its competition.
+     * @return The number of problems solved.
+     */
+    private int problemsSolved(int team)
+    {
+        return (int) (12L * (teamsPerCompetition - team) / teamsPerCompetition);
+    }
+
+    /**
+     * Checks the level of a team by its first member, so about a third of the teams are advanced.
+     * @param student The number of the first member.
+     * @return true if the team is advanced, false if novice.
+     */
+    private static boolean isAdvanced(int student)
+    {
+        return student % 3 == 0;
+    }
+
+    /**
+     * Appends the full name of a student. Every student number gets a different name.
+     * @param row The builder to append to.
+     * @param student The number of the student.
+     */
+    private static void appendName(StringBuilder row, int student)
+    {
+        int combos = FIRST_NAMES.length * LAST_NAMES.length;
+        row.append(FIRST_NAMES[student % FIRST_NAMES.length]).append(' ').append(LAST_NAMES[(student / FIRST_NAMES.length) % LAST_NAMES.length]);
+        if (student >= combos) {
+            row.append(student / combos + 1);
+        }
+    }
+
+    /**
+     * Appends the email of a student.
+     * @param row The builder to append to.
+     * @param student The number of the student.
+     */
+    private static void appendEmail(StringBuilder row, int student)
+    {
+        row.append("student").append(student).append("@example.edu");
+    }
+
+    /**
+     * Gets the name of a competition.
+     * @param competition The number of the competition.
+     * @return The name of the competition.
+     */
+    private static String competitionName(int competition)
+    {
+        return String.format(Locale.ROOT, "Competition %05d", competition + 1);
+    }
+
+    /**
+     * Generates a dataset from the command line.
+     * @param args The command line options.
+     * @throws IOException if a file could not be written.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        DatasetGenerator generator = new DatasetGenerator();
+        String format = "sectioned";
+        Path out = Path.of("generated");
+        int minTeam = 1;
+        int maxTeam = 3;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--students" -> generator.setStudents(Integer.parseInt(value));
+                case "--competitions" -> generator.setCompetitions(Integer.parseInt(value));
+                case "--teams" -> generator.setTeamsPerCompetition(Integer.parseInt(value));
+                case "--min-team" -> minTeam = Integer.parseInt(value);
+                case "--max-team" -> maxTeam = Integer.parseInt(value);
+                case "--skew" -> generator.setSkew(Double.parseDouble(value));
+                case "--duplicates" -> generator.setDuplicateRate(Double.parseDouble(value));
+                case "--seed" -> generator.setSeed(Long.parseLong(value));
+                case "--format" -> format = value;
+                case "--out" -> out = Path.of(value);
+                default -> {
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+                }
+            }
+        }
+        generator.setTeamSize(minTeam, maxTeam);
+
+        long start = System.nanoTime();
+        if (format.equals("sectioned") || format.equals("both")) {
+            List<File> files = generator.writeCompetitionFiles(out);
+            generator.checkCompetitionFiles(files);
+            System.out.println("Wrote " + files.size() + " competition files to " + out.toAbsolutePath());
+        }
+        if (format.equals("flat") || format.equals("both")) {
+            Files.createDirectories(out);
+            File flat = out.resolve("all-results.csv").toFile();
+            long rows = generator.writeFlatFile(flat);
+            System.out.println("Wrote " + rows + " results to " + flat.getAbsolutePath());
+        }
+        System.out.printf("Done in %.2f s, about %d results per layout%n", (System.nanoTime() - start) / 1e9, generator.getExpectedResults());
+    }
+}
@@ -0,0 +1,309 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The IngestPipeline class loads many competition CSV files at once. The files are parsed on a pool of worker threads
+ * that put batches of rows on a bounded queue, and the calling thread is the only writer, draining the queue into the
+ * database. SQLite only allows one writer, so this uses every core for parsing without fighting over the write lock,
+ * and the bounded queue holds the parsers back when the writer falls behind. The writes run in a bulk-load session.
+ */
+public class IngestPipeline {
+    /** The default number of rows per batch handed from a parser to the writer. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /** The default number of batches that may wait for the writer. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private DatabaseHandler db;
+    private SpreadsheetParser parser;
+    private int parserThreads;
+    private int queueCapacity;
+    private int batchSize;
+    private List<File> failedFiles = new ArrayList<>();
+
+    /**
+     * A batch of rows for one competition, or the end marker of a file when rows is null.
+     */
+    private static class Batch {
+        private final File file;
+        private final String comp;
+        private final List<TeamResult> rows;
+        private final String error;
+
+        /**
+         * Constructs a Batch object.
+         * @param file The file the rows were read from.
+         * @param comp The name of the competition.
+         * @param rows The rows, or null for the end marker of the file.
+         * @param error Why the file could not be read to its end, or null. Only set on an end marker.
+         */
+        private Batch(File file, String comp, List<TeamResult> rows, String error)
+        {
+            this.file = file;
+            this.comp = comp;
+            this.rows = rows;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Constructs an IngestPipeline object that parses on every available core.
+     * @param dbHandler The DatabaseHandler to write the rows to.
+     */
+    public IngestPipeline(DatabaseHandler dbHandler)
+    {
+        this(dbHandler, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs an IngestPipeline object.
+     * @param dbHandler The DatabaseHandler to write the rows to.
+     * @param parserThreads The number of threads parsing files.
+     * @param queueCapacity The number of batches that may wait for the writer before the parsers block.
+     * @param batchSize The number of rows per batch, which is also the number of rows per commit.
+     */
+    public IngestPipeline(DatabaseHandler dbHandler, int parserThreads, int queueCapacity, int batchSize)
+    {
+        this.db = dbHandler;
+        this.parser = new SpreadsheetParser(dbHandler);
+        this.parserThreads = Math.max(1, parserThreads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Lists the CSV files of a directory in name order.
+     * @param dir The directory to list.
+     * @return The CSV files in the directory.
+     */
+    public static List<File> listCsvFiles(File dir)
+    {
+        File[] files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".csv"));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * Gets the competition name for a file, which is the file name without its ".csv" extension.
+     * @param file The CSV file.
+     * @return The name of the competition.
+     */
+    public static String competitionName(File file)
+    {
+        String name = file.getName();
+        return name.toLowerCase().endsWith(".csv") ? name.substring(0, name.length() - 4) : name;
+    }
+
+    /**
+     * Loads every CSV file of a directory.
+     * @param dir The directory to load.
+     * @return The number of results added to the database.
+     * @throws InterruptedIOException if the calling thread was interrupted.
+     * @throws SQLException if the bulk load could not be started or finished.
+     */
+    public int ingestDirectory(File dir) throws InterruptedIOException, SQLException
+    {
+        return ingest(listCsvFiles(dir));
+    }
+
+    /**
+     * Loads the specified CSV files, naming each competition after its file. Files that cannot be read are reported
+     * and skipped, the others are still loaded. A file that fails partway keeps the rows written before the failure
+     * and is reported as partly loaded.
+     * @param files The CSV files to load.
+     * @return The number of results added to the database.
+     * @throws InterruptedIOException if the calling thread was interrupted.
+     * @throws SQLException if the bulk load could not be started or finished.
+     */
+    public int ingest(List<File> files) throws InterruptedIOException, SQLException
+    {
+        return ingest(files, null);
+    }
+
+    /**
+     * Loads the specified CSV files, naming each competition after its file, and reports every file that is done.
+     * @param files The CSV files to load.
+     * @param progress The listener to report the number of files done to, or null. If it throws, the load stops and
+     * the files not yet written are left out.
+     * @return The number of results added to the database.
+     * @throws InterruptedIOException if the calling thread was interrupted.
+     * @throws SQLException if the bulk load could not be started or finished, or rows could not be written. The rows
+     * committed before the failure stay in the database.
+     */
+    public int ingest(List<File> files, DataExporter.ProgressListener progress) throws InterruptedIOException, SQLException
+    {
+        failedFiles = new ArrayList<>();
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        try {
+            // Returning students then need no lookups at all
+            db.primeIdentityCache();
+        } catch (SQLException e) {
+            System.out.println("Failed to prime identity cache: " + e.getMessage());
+        }
+
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parserThreads, files.size()), r -> {
+            Thread t = new Thread(r, "csv-parser");
+            t.setDaemon(true);
+            return t;
+        });
+
+        for (File file : files) {
+            String comp = competitionName(file);
+            pool.execute(() -> {
+                String error = null;
+                boolean stopped = false;
+                try {
+                    rejected.addAndGet(parser.parse(file, batchSize, rows -> put(queue, new Batch(file, comp, rows, null))));
+                } catch (InterruptedIOException e) {
+                    // The writer has stopped, nobody is waiting for the end marker
+                    stopped = true;
+                } catch (IOException | RuntimeException e) {
+                    error = e.getMessage() != null ? e.getMessage() : e.toString();
+                } catch (Error e) {
+                    // Still reported, e.g. running out of memory on an unterminated quote, then passed on
+                    error = e.toString();
+                    throw e;
+                } finally {
+                    // Always sent, or the writer would wait for this file forever while holding the bulk load
+                    if (!stopped) {
+                        try {
+                            queue.put(new Batch(file, comp, null, error));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+
+        // The calling thread is the single writer
+        int rows = 0;
+        int added = 0;
+        int filesDone = 0;
+        // The rows written of each file that is not done yet
+        Map<File, Integer> written = new HashMap<>();
+        boolean finished = false;
+        DatabaseHandler.BulkLoadSession bulk;
+        try {
+            bulk = db.beginBulkLoad();
+        } catch (SQLException e) {
+            pool.shutdownNow();
+            throw new SQLException("Failed to start bulk load: " + e.getMessage(), e);
+        }
+        try {
+            while (filesDone < files.size()) {
+                Batch batch = queue.take();
+                if (batch.rows == null) {
+                    filesDone++;
+                    Integer partial = written.remove(batch.file);
+                    if (batch.error != null) {
+                        failedFiles.add(batch.file);
+                        reportFailed(batch.file, partial, batch.error);
+                    }
+                    if (progress != null) {
+                        progress.onProgress(filesDone, files.size());
+                    }
+                    continue;
+                }
+                try {
+                    added += db.addTeamResults(batch.comp, batch.rows, 0);
+                } catch (SQLException e) {
+                    throw new SQLException("Failed to write rows of " + batch.file.getName() + " after " + added + " results were added: " + e.getMessage(), e);
+                }
+                rows += batch.rows.size();
+                written.merge(batch.file, batch.rows.size(), Integer::sum);
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ingest interrupted after " + rows + " rows");
+        } finally {
+            if (!finished) {
+                // Parsers blocked on the full queue are woken by the interrupt, and nothing more is taken from it
+                pool.shutdownNow();
+                queue.clear();
+                written.forEach((file, count) -> {
+                    failedFiles.add(file);
+                    reportFailed(file, count, "the load stopped");
+                });
+                try {
+                    bulk.close();
+                } catch (SQLException e) {
+                    // The failure that stopped the load is the one passed on
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+        try {
+            bulk.close();
+        } catch (SQLException e) {
+            throw new SQLException("Loaded " + added + " results, but failed to finish the bulk load. " + e.getMessage(), e);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Loaded %d files, %d rows (%d results, %d rejected) in %.2f s (%.0f rows/sec)%n", files.size(), rows, added, rejected.get(), seconds, rows / Math.max(seconds, 1e-9));
+        return added;
+    }
+
+    /**
+     * Gets the files of the last load that could not be loaded to their end, whether they were skipped or partly
+     * loaded.
+     * @return The files, empty if every file was loaded.
+     */
+    public List<File> getFailedFiles()
+    {
+        return failedFiles;
+    }
+
+    /**
+     * Reports a file that could not be loaded to its end.
+     * @param file The file.
+     * @param written The number of its rows written before it failed, or null if none were.
+     * @param reason Why it failed.
+     */
+    private static void reportFailed(File file, Integer written, String reason)
+    {
+        if (written == null) {
+            System.out.println("Skipped " + file.getName() + ": " + reason);
+        } else {
+            System.out.println("Partly loaded " + file.getName() + ", " + written + " rows were written before it failed: " + reason);
+        }
+    }
+
+    /**
+     * Puts a batch on the queue, blocking while the queue is full.
+     * @param queue The queue to the writer.
+     * @param batch The batch to put.
+     * @throws InterruptedIOException if the parser thread was interrupted while waiting.
+     */
+    private static void put(BlockingQueue<Batch> queue, Batch batch) throws InterruptedIOException
+    {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parser interrupted");
+        }
+    }
+}
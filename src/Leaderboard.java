@@ -1,13 +1,16 @@
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.File;
-import java.io.FileNotFoundException;
 import javax.swing.JOptionPane;
-import javax.swing.JTable;
-import javax.swing.JScrollPane;
+import javax.swing.JComboBox;
+import javax.swing.JTextField;
 import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.sql.*;
 
 /**
@@ -24,6 +27,12 @@ public class Leaderboard {
   static DataHandler dataHandler;
   static SpreadsheetParser parser;
   static boolean fileLoaded = false;
+  static DataSnapshot snapshot;
+  // Runs loads, exports and wipes in the background, one at a time
+  static TaskRunner runner;
+  static LeaderboardServer server;
+  // The generation of the database the snapshot file was taken at, -1 if it is out of date
+  static long snapshotGeneration = -1;
   /**
    * Main method of the program.
    * @param args Command line arguments.
@@ -31,42 +40,220 @@ public class Leaderboard {
    */
   public static void main(String[] args) throws SQLException
   {
+    // With arguments, run one command without any dialogs, e.g. "import data/" or "leaderboard --top 20"
+    if (args.length > 0) {
+      int status = BatchCli.run(args);
+      if (status != 0) {
+        System.exit(status);
+      }
+      return;
+    }
+
+    // Metrics can be read with any JMX client, and printed every few seconds with -Dleaderboard.metrics.period=<seconds>
+    Metrics.shared().registerMBeans();
+    int metricsPeriod = Integer.getInteger("leaderboard.metrics.period", 0);
+    if (metricsPeriod > 0) {
+      Metrics.shared().startReporter(metricsPeriod, TimeUnit.SECONDS, System.out);
+    }
+
     dbHandler = new DatabaseHandler("jdbc:sqlite:competition-student-database.db");
     parser = new SpreadsheetParser(dbHandler);
     dataHandler = new DataHandler();
+    runner = new TaskRunner();
 
-    // Loads pre-existing data from the database
+    // Keeps the loaded data up to date with every write, instead of reloading it
+    dbHandler.addChangeListener(dataHandler::applyChanges);
+
+    // Loads pre-existing data in the background, from the snapshot if the database has not changed since it was taken
+    snapshot = new DataSnapshot(new File("competition-student-database.snapshot"));
     if (!dbHandler.isDatabaseEmpty()) {
-      dataHandler.loadData(dbHandler.getConnection());
+      long generation = dbHandler.getGeneration();
+      CompletableFuture<Void> load = runner.submit(progress -> {
+        if (snapshot.load(dataHandler, generation)) {
+          snapshotGeneration = generation;
+        } else {
+          try (ConnectionPool.PooledConnection reader = dbHandler.borrowRead()) {
+            dataHandler.loadData(reader.getConnection());
+          }
+        }
+        return null;
+      }, null);
+      new ProgressDialog("Loading data").attach(load, false);
       fileLoaded = true;
     }
 
+    // Serves the leaderboard to browsers with -Dleaderboard.http.port=<port>, on every network interface with
+    // -Dleaderboard.http.host=0.0.0.0
+    int httpPort = Integer.getInteger("leaderboard.http.port", -1);
+    if (httpPort >= 0) {
+      server = new LeaderboardServer(dataHandler, dbHandler);
+      try {
+        server.start(System.getProperty("leaderboard.http.host", "localhost"), httpPort);
+        System.out.println("Serving the leaderboard on port " + server.getPort());
+      } catch (IOException e) {
+        System.out.println("Failed to start the HTTP server: " + e.getMessage());
+        server = null;
+      }
+    }
+
     int choice;
-    // Loop to display menu & get user input
-    do
-    {
-      // choice = 0 is quit
-      choice = printMenu();
-      if (choice != 0)
+    try {
+      // Loop to display menu & get user input
+      do
       {
-        getChoice(choice);
+        // choice = 0 is quit
+        choice = printMenu();
+        if (choice != 0)
+        {
+          getChoice(choice);
+        }
+      } while(choice != 0);
+    } finally {
+      // Also when a menu action failed, so queued imports finish and the snapshot is still saved
+      if (server != null) {
+        server.close();
+      }
+      try {
+        waitForTasks();
+        saveSnapshot();
+      } finally {
+        runner.close();
+        dbHandler.close();
+      }
+    }
+  }
+
+  /**
+   * Waits for the background tasks to finish, showing a progress window while they run.
+   */
+  public static void waitForTasks()
+  {
+    while (runner.getPending() > 0) {
+      CompletableFuture<Void> idle = runner.whenIdle();
+      new ProgressDialog("Waiting for background tasks").attach(idle, false);
+      try {
+        idle.join();
+      } catch (CompletionException e) {
+        // The queue is full, so wait for it to drain a little
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Shows a message once a background task finishes.
+   * @param future The future of the task.
+   * @param action The name of the task, e.g. "Export".
+   * @param success Builds the message shown when the task succeeds from its result.
+   * @param <T> The type of the result.
+   */
+  public static <T> void reportWhenDone(CompletableFuture<T> future, String action, Function<T, String> success)
+  {
+    future.whenComplete((value, error) -> SwingUtilities.invokeLater(() -> {
+      if (future.isCancelled()) {
+        JOptionPane.showMessageDialog(null, action + " cancelled.");
+      } else if (error != null) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        JOptionPane.showMessageDialog(null, action + " failed: " + cause.getMessage());
+      } else {
+        JOptionPane.showMessageDialog(null, success.apply(value));
+      }
+    }));
+  }
+
+  /**
+   * Saves the loaded data to the snapshot file, unless the snapshot is already up to date.
+   */
+  public static void saveSnapshot()
+  {
+    try {
+      long generation = dbHandler.getGeneration();
+      if (generation != snapshotGeneration) {
+        snapshot.save(dataHandler, generation);
+        snapshotGeneration = generation;
+      }
+    } catch (SQLException | IOException e) {
+      System.out.println("Failed to save snapshot: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Asks the user which students to show and in what order.
+   * @return The query, or null if the user cancelled.
+   */
+  public static StudentQuery askStudentQuery()
+  {
+    String[] levels = {"Any", "Novice", "Advanced"};
+    String[] orders = {"# of Competitions Participated in", "# of Problems Solved", "Name", "Order added"};
+    JComboBox<String> levelBox = new JComboBox<>(levels);
+    JTextField minCompetitions = new JTextField();
+    JTextField minProblems = new JTextField();
+    JTextField nameContains = new JTextField();
+    JComboBox<String> orderBox = new JComboBox<>(orders);
+    Object[] form = {"Level", levelBox, "At least # of competitions", minCompetitions, "At least # of problems solved", minProblems,
+        "Name contains", nameContains, "Sort by", orderBox};
+
+    while (true) {
+      if (JOptionPane.showConfirmDialog(null, form, "Filter Students", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+        return null;
       }
-    } while(choice != 0);
+
+      StudentQuery query = new StudentQuery();
+      try {
+        if (levelBox.getSelectedIndex() > 0) {
+          query.where(StudentQuery.eq(StudentQuery.Field.LEVEL, Level.fromName(levels[levelBox.getSelectedIndex()])));
+        }
+        if (!minCompetitions.getText().isBlank()) {
+          query.where(StudentQuery.ge(StudentQuery.Field.COMPETITIONS, Integer.parseInt(minCompetitions.getText().trim())));
+        }
+        if (!minProblems.getText().isBlank()) {
+          query.where(StudentQuery.ge(StudentQuery.Field.PROBLEMS, Integer.parseInt(minProblems.getText().trim())));
+        }
+      } catch (NumberFormatException e) {
+        JOptionPane.showMessageDialog(null, "Please enter whole numbers.");
+        continue;
+      }
+      if (!nameContains.getText().isBlank()) {
+        query.where(StudentQuery.contains(StudentQuery.Field.NAME, nameContains.getText().trim()));
+      }
+
+      switch (orderBox.getSelectedIndex()) {
+        case 0:
+          query.orderBy(LeaderboardIndex.Order.COMPETITIONS);
+          break;
+        case 1:
+          query.orderBy(LeaderboardIndex.Order.PROBLEMS);
+          break;
+        case 2:
+          query.orderBy(StudentQuery.Field.LAST_NAME, false).orderBy(StudentQuery.Field.FIRST_NAME, false);
+          break;
+        default:
+          break;
+      }
+      return query;
+    }
   }
 
   /**
-   * Prompts the user to select a CSV file.
-   * @return The selected file, or null if no file was selected.
+   * Prompts the user to select one or more CSV files or folders of CSV files.
+   * @return The selected files and folders, empty if nothing was selected.
    */
-  public static File selectCSVFile()
+  public static File[] selectCSVFiles()
   {
     JFileChooser fileChooser = new JFileChooser();
-    fileChooser.setDialogTitle("Select CSV file");
+    fileChooser.setDialogTitle("Select CSV files or folders");
+    fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+    fileChooser.setMultiSelectionEnabled(true);
     int userSelection = fileChooser.showOpenDialog(null);
     if (userSelection == JFileChooser.APPROVE_OPTION) {
-        return fileChooser.getSelectedFile();
+        return fileChooser.getSelectedFiles();
     }
-    return null;
+    return new File[0];
   }
 
   /**
@@ -98,8 +285,14 @@ public class Leaderboard {
   public static void getChoice(int choice) throws SQLException
   {
 
+    // Loading, exporting and wiping run in the background, everything else waits for them to finish first
+    boolean background = choice == 1 || choice == 11 || choice == 12;
+    if (!background) {
+      waitForTasks();
+    }
+
     // If the user does not load a file for it's first executable choice, display an error message
-    if (dbHandler.isDatabaseEmpty() && choice != 1) {
+    if (runner.getPending() == 0 && dbHandler.isDatabaseEmpty() && choice != 1) {
       JOptionPane.showMessageDialog(null, "Please load data first.");
       return;
     }
@@ -109,61 +302,70 @@ public class Leaderboard {
     {
       // Load data
       case 1:
-        try {
-          File file = selectCSVFile();
+        File[] selected = selectCSVFiles();
 
+        if (selected.length == 1 && selected[0].isFile()) {
+          File file = selected[0];
           String comp = JOptionPane.showInputDialog("Competition Name?");
 
-          if (file != null && file.getName().endsWith(".csv")) {
-            parser.read(file, comp);
-            dataHandler.loadData(dbHandler.getConnection());
+          if (file.getName().endsWith(".csv")) {
+            CompletableFuture<Integer> load = runner.read(parser, file, comp);
+            new ProgressDialog("Loading " + file.getName()).attach(load, false);
+            runner.submit(progress -> {
+              saveSnapshot();
+              return null;
+            }, null);
             fileLoaded = true;
 
-            JOptionPane.showMessageDialog(null, "Data loaded successfully.");
+            reportWhenDone(load, "Loading data", added -> "Data loaded successfully.");
           } else {
-            // If no file is selected or the file does not end with ".csv", display an error message
+            // If the file does not end with ".csv", display an error message
             JOptionPane.showMessageDialog(null, "Failed to find file.");
           }
-        } catch (FileNotFoundException e) {
-          e.printStackTrace();
+        } else {
+          // Several files or folders: each file is its own competition, named after the file
+          ArrayList<File> files = new ArrayList<>();
+          for (File f : selected) {
+            if (f.isDirectory()) {
+              files.addAll(IngestPipeline.listCsvFiles(f));
+            } else if (f.getName().endsWith(".csv")) {
+              files.add(f);
+            }
+          }
+
+          if (files.isEmpty()) {
+            // If no file is selected or no file ends with ".csv", display an error message
+            JOptionPane.showMessageDialog(null, "Failed to find file.");
+          } else {
+            ProgressDialog ingestDialog = new ProgressDialog("Loading files");
+            CompletableFuture<Integer> load = runner.ingest(new IngestPipeline(dbHandler), files, ingestDialog);
+            ingestDialog.attach(load, true);
+
+            // Bulk loads do not publish their changes, so reload once they are done, even if cancelled part way
+            CompletableFuture<Void> reload = runner.loadData(dataHandler, dbHandler);
+            new ProgressDialog("Reloading data").attach(reload, false);
+            runner.submit(progress -> {
+              if (server != null) {
+                server.invalidate();
+              }
+              saveSnapshot();
+              return null;
+            }, null);
+            fileLoaded = true;
+
+            reportWhenDone(load, "Loading files", added -> files.size() + " files loaded successfully.");
+          }
         }
         break;
       // View leaderboard
       case 2:
-        // Sort student by the # of competitions participated in
-        Student[] students = dataHandler.sortRosterByCompetition();
-
-        // Creating arrays to store data for the JTable
-        Object[][] rows = new Object[students.length][3];
-        Object[] cols = {"Name","# of Competitions Participated in","Total # of problems solved"};
-
-        // Loop through the students and add their data to the 2D array
-        for (int i = 0; i < students.length; i++) {
-          Object[] row = {students[i].getName(), students[i].getCompetitions().size(), students[i].getTotalProb()};
-          rows[i] = row;
-        }
-
-        JTable table = new JTable(rows, cols);
-        // Display JTable
-        JOptionPane.showMessageDialog(null, new JScrollPane(table));
+        // Students by the # of competitions participated in, read from the database a page at a time
+        JOptionPane.showMessageDialog(null, PagedTableModel.createView(PagedTableModel.students(dbHandler, LeaderboardIndex.Order.COMPETITIONS, null)));
         break;
       // View all data
       case 3:
-        Competition[] compList = dataHandler.getCompetition();
-
-
-        Object[] colsData = {"Competition Name","Student Name","# of problems solved","Placement"};
-        ArrayList<Object[]> rowsData = new ArrayList<>();
-        // loop for data
-        for (Competition compExported : compList) {
-          Object[][] competitionData = dataHandler.getCompetitionData(compExported.getName(), dbHandler.getConnection());
-          for (int i = 0; i < competitionData.length; i++) {
-            rowsData.add(new Object[]{compExported.getName(), competitionData[i][0], competitionData[i][1], competitionData[i][2]});
-          }
-        }
-
-        JTable tabAllData = new JTable(rowsData.toArray(new Object[0][]), colsData);
-        JOptionPane.showMessageDialog(null, new JScrollPane(tabAllData));
+        // Only the rows on screen are read
+        JOptionPane.showMessageDialog(null, PagedTableModel.createView(PagedTableModel.allResults(dbHandler)));
         break;
       // Add student
       case 4:
@@ -171,8 +373,8 @@ public class Leaderboard {
           String name = JOptionPane.showInputDialog("Name (First & Last)");
           String email = JOptionPane.showInputDialog("Email");
 
-          String[] myChoices = {"Novice", "Advanced"};
-          String level = myChoices[JOptionPane.showOptionDialog(null, "Level of Student?", "Level", JOptionPane.OK_OPTION, JOptionPane.INFORMATION_MESSAGE, null, myChoices, myChoices[0])];
+          Level[] myChoices = Level.values();
+          Level level = myChoices[JOptionPane.showOptionDialog(null, "Level of Student?", "Level", JOptionPane.OK_OPTION, JOptionPane.INFORMATION_MESSAGE, null, myChoices, myChoices[0])];
 
           if (name.equals("") && email.equals("")) {
             JOptionPane.showMessageDialog(null, "Failed to add student. No Name or email given.");
@@ -206,9 +408,6 @@ public class Leaderboard {
             cont = JOptionPane.showConfirmDialog(null, "Continue?", "Continue to Add Competitions", JOptionPane.YES_NO_OPTION);
           } while (cont == 0 && compNameStrings.length > 0);
 
-          // Load data from the database to update the datahandler
-          dataHandler.loadData(dbHandler.getConnection());
-
           // Display success message
           JOptionPane.showMessageDialog(null, "success!", "Added Student", JOptionPane.PLAIN_MESSAGE);
         } catch (Exception e) {
@@ -228,9 +427,8 @@ public class Leaderboard {
             // Ask user for a student's name
             String str = (String) JOptionPane.showInputDialog(null, "Choose Student to Remove", "Student Removal", JOptionPane.PLAIN_MESSAGE, null, rosterStrings, rosterStrings[0]);
 
-            // Remove student from the list and update datahandler
+            // Remove student from the list, the datahandler is updated by its change listener
             dbHandler.removeStudent(str);
-            dataHandler.loadData(dbHandler.getConnection());
 
             JOptionPane.showMessageDialog(null, "Student removed successfully.");
           } catch (Exception e) {
@@ -272,7 +470,6 @@ public class Leaderboard {
           } else {
             dbHandler.addCompetition(compName);
           }
-          dataHandler.loadData(dbHandler.getConnection());
           JOptionPane.showMessageDialog(null, "Competition added successfully.");
         } catch (Exception e) {
           JOptionPane.showMessageDialog(null, "No Competition added.");
@@ -291,9 +488,8 @@ public class Leaderboard {
         try {
           String comp = (String) JOptionPane.showInputDialog(null, "Choose Competition to Remove", "Competition Removal", JOptionPane.PLAIN_MESSAGE, null, compStrings, compStrings[0]);
 
-          // Remove competition from the list and update datahandler
+          // Remove competition from the list, the datahandler is updated by its change listener
           dbHandler.removeCompetition(comp);
-          dataHandler.loadData(dbHandler.getConnection());
 
           JOptionPane.showMessageDialog(null, "Competition removed successfully.");
         } catch (Exception e) {
@@ -302,39 +498,14 @@ public class Leaderboard {
         break;
       // Filter students
       case 8:
-        // Get the list of choices for filtering students
-        String[] choices = {"# of Competitions Participated in", "# of Problems Solved", "Novice", "Advanced"};
-        String filter = choices[JOptionPane.showOptionDialog(null, "Filter Students by?", "Filter", JOptionPane.OK_OPTION, JOptionPane.INFORMATION_MESSAGE, null, choices, choices[0])];
-        // Create an array of students based on the user's choice
-        Student[] filteredStudents = new Student[0];
-
-        if (filter.equals(choices[0])) {
-          // Sorts students by # of competitions participated in
-          filteredStudents = dataHandler.sortRosterByCompetition();
-        } else if (filter.equals(choices[1])) {
-          // Sorts students by # of problems solved
-          filteredStudents = dataHandler.sortRosterByProblem();
-        } else if (filter.equals(choices[2])) {
-          // Display students with novice level
-          filteredStudents = dataHandler.getRosterByLevel("Novice");
-          // Display students with advance level
-        } else if (filter.equals(choices[3])) {
-          filteredStudents = dataHandler.getRosterByLevel("Advanced");
-        }
-
-        // Create a 2D array to store the data for the JTable
-        Object[][] rows2 = new Object[filteredStudents.length][3];
-        Object[] cols2 = {"Name","Problems Solved","# of participated competitions"};
-
-        // Loop through the students and add their data to the 2D array
-        for (int i = 0; i < filteredStudents.length; i++) {
-          Object[] row = {filteredStudents[i].getName(), Integer.valueOf(filteredStudents[i].getTotalProb()), Integer.valueOf(filteredStudents[i].getCompetitions().size())};
-          rows2[i] = row;
+        // Filters can be combined, e.g. advanced students with at least 3 competitions by problems solved
+        StudentQuery query = askStudentQuery();
+        if (query == null) {
+          break;
         }
 
-        JTable table2 = new JTable(rows2, cols2);
-        // Display the JTable
-        JOptionPane.showMessageDialog(null, new JScrollPane(table2));
+        // Display the table, the database filters and sorts it a page at a time
+        JOptionPane.showMessageDialog(null, PagedTableModel.createView(PagedTableModel.students(dbHandler, query)));
         break;
       // View competition data
       case 9:
@@ -347,17 +518,24 @@ public class Leaderboard {
 
         String comp2 = (String) JOptionPane.showInputDialog(null, "Choose Competition", "Competition Data", JOptionPane.PLAIN_MESSAGE, null, compStrings2, compStrings2[0]);
 
-        // Get the competition data from the datahandler to be displayed with JTable
-        Object[][] compData = dataHandler.getCompetitionData(comp2, dbHandler.getConnection());
-        Object[] col = {"Name","Problems Solved","Placement"};
-        // Displays JTable with data
-        JTable tab = new JTable(compData, col);
-        JOptionPane.showMessageDialog(null, new JScrollPane(tab));
+        if (comp2 == null) {
+          break;
+        }
+        // Displays the results of the competition, read a page at a time
+        int compId = listOfComp2[Arrays.asList(compStrings2).indexOf(comp2)].getId();
+        ParallelRoster.Totals compTotals = dataHandler.getCompetitionTotals().getOrDefault(compId, new ParallelRoster.Totals());
+        String summary = String.format("%,d students, %.1f problems solved and placed %.1f on average", compTotals.getStudents(),
+            compTotals.getAverageProblems(), compTotals.getAveragePlacement());
+        JOptionPane.showMessageDialog(null, new Object[]{summary, PagedTableModel.createView(PagedTableModel.competitionResults(dbHandler, compId))});
         break;
       // View student data
       case 10:
         // Get list of student names
         Student[] listOfStudents = dataHandler.getStudents();
+        if (listOfStudents.length == 0) {
+          JOptionPane.showMessageDialog(null, "No students are loaded.");
+          break;
+        }
         String[] stuStrings2 = new String[listOfStudents.length];
         for (int i = 0; i < listOfStudents.length; i++) {
           stuStrings2[i] = listOfStudents[i].getName();
@@ -365,59 +543,48 @@ public class Leaderboard {
 
         String stu = (String) JOptionPane.showInputDialog(null, "Choose Student", "Student Data", JOptionPane.PLAIN_MESSAGE, null, stuStrings2, stuStrings2[0]);
 
-        // Get the competition data from the datahandler to be displayed with JTable
-        Object[][] stuData = dataHandler.getStudent(stu, dbHandler.getConnection());
-        Object[] col2 = {"Competition","Problems Solved","Placed"};
-        // Display JTable
-        JTable tab2 = new JTable(stuData, col2);
-        JOptionPane.showMessageDialog(null, new JScrollPane(tab2));
+        if (stu == null) {
+          break;
+        }
+
+        // The names in the list are in roster order
+        Student chosen = listOfStudents[Arrays.asList(stuStrings2).indexOf(stu)];
+
+        // Rank by problems solved
+        int rank = dataHandler.getRank(LeaderboardIndex.Order.PROBLEMS, chosen.getId());
+        String rankText = String.format("%s is #%,d of %,d by problems solved", stu, rank, listOfStudents.length);
+
+        // Display the results of the student
+        JOptionPane.showMessageDialog(null, new Object[]{rankText, PagedTableModel.createView(PagedTableModel.studentResults(dbHandler, chosen.getId()))});
         break;
       // Exports All Data
       case 11:
-        Competition[] compListExport = dataHandler.getCompetition();
-        String fileName = JOptionPane.showInputDialog("File Name to save to?");
-        try {
-          // Create filewriter that writes to a csv file
-          FileWriter writer = new FileWriter(fileName + ".csv");
-
-          // header of file
-          writer.append("Competition Name");
-          writer.append(',');
-          writer.append("Student Name");
-          writer.append(',');
-          writer.append("Problems Solved");
-          writer.append(',');
-          writer.append("Placement");
-          writer.append('\n');
-
-          // loop for data
-          for (Competition compExported : compListExport) {
-            Object[][] competitionData = dataHandler.getCompetitionData(compExported.getName(), dbHandler.getConnection());
-            for (int i = 0; i < competitionData.length; i++) {
-              writer.append(compExported.getName());
-              writer.append(',');
-              writer.append(String.valueOf(competitionData[i][0]));
-              writer.append(',');
-              writer.append(String.valueOf(competitionData[i][1]));
-              writer.append(',');
-              writer.append(String.valueOf(competitionData[i][2]));
-              writer.append('\n');
-            }
-          }
-
-          writer.flush();
-          writer.close();
-          JOptionPane.showMessageDialog(null, "Exported successfully.");
-        } catch(IOException e) {
-          e.printStackTrace();
+        String fileName = JOptionPane.showInputDialog("File Name to save to? (end it with .gz to compress)");
+        if (fileName == null) {
+          break;
         }
+        // Stream every result straight to the file
+        boolean gzip = fileName.endsWith(".gz");
+        File exportFile = new File(gzip ? fileName : fileName + ".csv");
+        ProgressDialog exportDialog = new ProgressDialog("Exporting");
+        CompletableFuture<Long> export = runner.export(new DataExporter(dbHandler), exportFile, gzip, exportDialog);
+        exportDialog.attach(export, true);
+
+        // Queued behind the export, so a cancelled export has really stopped writing before its file is removed
+        runner.submit(progress -> {
+          if (export.isCompletedExceptionally()) {
+            exportFile.delete();
+          }
+          return null;
+        }, null);
+        reportWhenDone(export, "Export", exported -> "Exported " + exported + " rows successfully.");
         break;
       // Wipe database memory
       case 12:
-        dbHandler.wipeDatabase();
-        dataHandler.loadData(dbHandler.getConnection());
+        CompletableFuture<Void> wipe = runner.wipe(dbHandler);
+        new ProgressDialog("Wiping database").attach(wipe, false);
         fileLoaded = false;
-        JOptionPane.showMessageDialog(null, "Database wiped successfully.");
+        reportWhenDone(wipe, "Wipe", done -> "Database wiped successfully.");
         break;
       // default: display error message for invalid choice
       default:
@@ -0,0 +1,288 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The LeaderboardIndex class keeps students ranked as an order-statistic tree (a treap whose nodes know the size of
+ * their subtree). Students are ranked by a primary and a secondary count, highest first, with ties broken by the lower
+ * id. Adding, updating and removing a student, finding the rank of a student and finding the student at a rank all
+ * take logarithmic time.
+ *
+ * The ranking key of a student is copied into the index when the student is added, so after a student's
+ * competitions change the index must be told with update.
+ */
+public class LeaderboardIndex {
+    /**
+     * The counts a leaderboard ranks by.
+     */
+    public enum Order {
+        /** Total problems solved, then number of competitions. */
+        PROBLEMS,
+        /** Number of competitions, then total problems solved. */
+        COMPETITIONS
+    }
+
+    /**
+     * A node of the treap, holding a student and the ranking key they had when they were added.
+     */
+    private static class Node {
+        private final Student student;
+        private final int primary;
+        private final int secondary;
+        private final int priority;
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        private Node(Student student, int primary, int secondary, int priority)
+        {
+            this.student = student;
+            this.primary = primary;
+            this.secondary = secondary;
+            this.priority = priority;
+        }
+    }
+
+    private Order order;
+    private Node root;
+    private HashMap<Integer, Node> nodes = new HashMap<>();
+    private Random random = new Random(42);
+
+    /**
+     * Constructs an empty LeaderboardIndex object.
+     * @param order The counts to rank by.
+     */
+    public LeaderboardIndex(Order order)
+    {
+        this.order = order;
+    }
+
+    /**
+     * Gets the counts the index ranks by.
+     * @return The order of the index.
+     */
+    public Order getOrder()
+    {
+        return order;
+    }
+
+    /**
+     * Gets the number of students in the index.
+     * @return The number of students.
+     */
+    public int size()
+    {
+        return size(root);
+    }
+
+    /**
+     * Removes every student from the index.
+     */
+    public void clear()
+    {
+        root = null;
+        nodes.clear();
+    }
+
+    /**
+     * Adds a student to the index, or moves them to their current rank if they are already in it.
+     * @param student The student to add or update.
+     */
+    public void update(Student student)
+    {
+        remove(student.getId());
+        int problems = student.getTotalProb();
+        int competitions = student.getCompetitionCount();
+        Node node = order == Order.PROBLEMS
+                ? new Node(student, problems, competitions, random.nextInt())
+                : new Node(student, competitions, problems, random.nextInt());
+        nodes.put(student.getId(), node);
+
+        Node[] parts = split(root, node);
+        root = merge(merge(parts[0], node), parts[1]);
+    }
+
+    /**
+     * Removes a student from the index.
+     * @param studentId The ID of the student.
+     */
+    public void remove(int studentId)
+    {
+        Node node = nodes.remove(studentId);
+        if (node != null) {
+            root = remove(root, node);
+        }
+    }
+
+    /**
+     * Gets the rank of a student.
+     * @param studentId The ID of the student.
+     * @return The rank of the student, starting at 1, or -1 if the student is not in the index.
+     */
+    public int rankOf(int studentId)
+    {
+        Node node = nodes.get(studentId);
+        if (node == null) {
+            return -1;
+        }
+
+        int rank = 1;
+        Node current = root;
+        while (current != node) {
+            if (compare(node, current) < 0) {
+                current = current.left;
+            } else {
+                rank += size(current.left) + 1;
+                current = current.right;
+            }
+        }
+        return rank + size(node.left);
+    }
+
+    /**
+     * Gets the highest ranked students.
+     * @param n The number of students to get.
+     * @return Up to n students, highest ranked first.
+     */
+    public List<Student> topK(int n)
+    {
+        return page(0, n);
+    }
+
+    /**
+     * Gets a page of the leaderboard.
+     * @param offset The number of higher ranked students to skip.
+     * @param limit The maximum number of students to get.
+     * @return Up to limit students, highest ranked first.
+     */
+    public List<Student> page(int offset, int limit)
+    {
+        List<Student> students = new ArrayList<>(Math.max(0, Math.min(limit, size() - offset)));
+        collect(root, Math.max(0, offset), limit, students);
+        return students;
+    }
+
+    /**
+     * Adds the students of a subtree to a list in rank order, skipping the first ones without visiting them.
+     * @param node The root of the subtree.
+     * @param skip The number of students of the subtree to skip.
+     * @param limit The maximum size of the list.
+     * @param students The list to add to.
+     */
+    private static void collect(Node node, int skip, int limit, List<Student> students)
+    {
+        if (node == null || students.size() >= limit) {
+            return;
+        }
+        int leftSize = size(node.left);
+        if (skip < leftSize) {
+            collect(node.left, skip, limit, students);
+        }
+        if (skip <= leftSize && students.size() < limit) {
+            students.add(node.student);
+        }
+        collect(node.right, Math.max(0, skip - leftSize - 1), limit, students);
+    }
+
+    /**
+     * Compares two nodes by rank.
+     * @param a The first node.
+     * @param b The second node.
+     * @return A negative number if a ranks higher than b, a positive number if lower, 0 if they are the same.
+     */
+    private static int compare(Node a, Node b)
+    {
+        if (a.primary != b.primary) {
+            return Integer.compare(b.primary, a.primary);
+        }
+        if (a.secondary != b.secondary) {
+            return Integer.compare(b.secondary, a.secondary);
+        }
+        return Integer.compare(a.student.getId(), b.student.getId());
+    }
+
+    /**
+     * Splits a subtree into the nodes ranked higher than a key and the rest.
+     * @param node The root of the subtree.
+     * @param key The node to split at.
+     * @return The higher ranked part and the rest.
+     */
+    private static Node[] split(Node node, Node key)
+    {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(node, key) < 0) {
+            Node[] parts = split(node.right, key);
+            node.right = parts[0];
+            resize(node);
+            parts[0] = node;
+            return parts;
+        } else {
+            Node[] parts = split(node.left, key);
+            node.left = parts[1];
+            resize(node);
+            parts[1] = node;
+            return parts;
+        }
+    }
+
+    /**
+     * Merges two subtrees where every node of the first ranks higher than every node of the second.
+     * @param a The higher ranked subtree.
+     * @param b The lower ranked subtree.
+     * @return The root of the merged subtree.
+     */
+    private static Node merge(Node a, Node b)
+    {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            resize(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            resize(b);
+            return b;
+        }
+    }
+
+    /**
+     * Removes a node from a subtree.
+     * @param node The root of the subtree.
+     * @param target The node to remove.
+     * @return The new root of the subtree.
+     */
+    private static Node remove(Node node, Node target)
+    {
+        if (node == null) {
+            return null;
+        }
+        if (node == target) {
+            return merge(node.left, node.right);
+        }
+        if (compare(target, node) < 0) {
+            node.left = remove(node.left, target);
+        } else {
+            node.right = remove(node.right, target);
+        }
+        resize(node);
+        return node;
+    }
+
+    private static int size(Node node)
+    {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void resize(Node node)
+    {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+}
@@ -0,0 +1,724 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The LeaderboardServer class serves the loaded data as JSON over HTTP, read-only, so the leaderboard can be viewed
+ * from a browser. Each request runs on its own virtual thread when the JVM supports them.
+ *
+ * Responses are cached by URL together with the generation of the database they were built at, and every write
+ * published by DatabaseHandler empties the cache. A cached response is sent without touching the DataHandler or the
+ * database. Cache misses are built on the request's own thread, reading the DataHandler under its read lock so
+ * changes wait until the response is built, and reading the database only through read connections. Every response
+ * has the generation as its ETag, so a browser revalidating an unchanged page gets an empty 304 reply.
+ *
+ * Endpoints, all GET:
+ *   /api/leaderboard?by=problems|competitions&offset=0&top=10   A page of the leaderboard
+ *   /api/students?level=novice|advanced&minProblems=0&minCompetitions=0&by=problems|competitions&offset=0&top=100
+ *                                                                Students matching every filter given, in roster order
+ *                                                                unless ranked by one of the leaderboard orders, and
+ *                                                                the total number of matches
+ *   /api/competitions                                            Every competition, with its number of students
+ *                                                                and average problems solved and placement
+ *   /api/competition?name=NAME                                   The results of a competition
+ *   /api/student?id=ID or ?name=NAME                             The results and ranks of a student
+ */
+public class LeaderboardServer implements AutoCloseable {
+    /** The most rows a single response may hold. */
+    public static final int MAX_ROWS = 1000;
+    /** The default number of responses kept in the cache. */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+    /** How long a request waits for the loaded data to stop changing before giving up with a 503. */
+    public static final long BUILD_TIMEOUT_SECONDS = 10;
+
+    private static final long UNKNOWN = -1;
+
+    private static final Metrics.Counter REQUESTS = Metrics.shared().counter("http.requests");
+    private static final Metrics.Counter CACHE_HITS = Metrics.shared().counter("http.cacheHits");
+    private static final Metrics.Counter NOT_MODIFIED = Metrics.shared().counter("http.notModified");
+    private static final Metrics.Counter ERRORS = Metrics.shared().counter("http.errors");
+    private static final Metrics.Histogram REQUEST_TIME = Metrics.shared().histogram("http.request.ns");
+    private static final Metrics.Histogram BUILD_TIME = Metrics.shared().histogram("http.build.ns");
+
+    private final DataHandler dataHandler;
+    private final DatabaseHandler dbHandler;
+    private final DatabaseHandler.ChangeListener invalidator = changes -> invalidate();
+    private final LruCache<String, Response> cache;
+    private final Object lock = new Object();
+    // The generation the cached responses were built at, UNKNOWN until the next miss reads it. Guarded by lock.
+    private long generation = UNKNOWN;
+    // Raised by every invalidation, so a response built across one is not cached. Guarded by lock.
+    private long invalidations;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * A response ready to send.
+     */
+    private static class Response {
+        private final int status;
+        private final byte[] body;
+        private final String etag;
+
+        /**
+         * Constructs a Response object.
+         * @param status The HTTP status code.
+         * @param body The JSON body.
+         * @param generation The generation of the database the body was built at.
+         */
+        private Response(int status, String body, long generation)
+        {
+            this.status = status;
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+            this.etag = "\"" + generation + "\"";
+        }
+    }
+
+    /**
+     * Thrown when a request is not valid, and sent to the client as a 400 or 404.
+     */
+    private static class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        /**
+         * Constructs a RequestException object.
+         * @param status The HTTP status code.
+         * @param message The reason, sent to the client.
+         */
+        private RequestException(int status, String message)
+        {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Constructs a LeaderboardServer object. It does not listen until start is called.
+     * @param dataHandler The loaded data to serve.
+     * @param dbHandler The database the data was loaded from, watched for changes.
+     */
+    public LeaderboardServer(DataHandler dataHandler, DatabaseHandler dbHandler)
+    {
+        this(dataHandler, dbHandler, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs a LeaderboardServer object. It does not listen until start is called.
+     * @param dataHandler The loaded data to serve.
+     * @param dbHandler The database the data was loaded from, watched for changes.
+     * @param cacheSize The number of responses to keep in the cache.
+     */
+    public LeaderboardServer(DataHandler dataHandler, DatabaseHandler dbHandler, int cacheSize)
+    {
+        this.dataHandler = dataHandler;
+        this.dbHandler = dbHandler;
+        this.cache = new LruCache<>(cacheSize);
+        Metrics.shared().gauge("http.cacheSize", () -> {
+            synchronized (lock) {
+                return cache.size();
+            }
+        });
+    }
+
+    /**
+     * Starts listening.
+     * @param host The address to listen on, e.g. "localhost", or "0.0.0.0" for every network interface.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException if the port could not be opened.
+     */
+    public synchronized void start(String host, int port) throws IOException
+    {
+        if (server != null) {
+            return;
+        }
+        // Small responses would otherwise wait on Nagle's algorithm and delayed acknowledgements, about 40 ms each.
+        // Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        executor = newExecutor();
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+        dbHandler.addChangeListener(invalidator);
+        server.start();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     * @return The port, or -1 if the server is not started.
+     */
+    public synchronized int getPort()
+    {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /**
+     * Creates the executor requests run on, a virtual thread per request when the JVM supports them (Java 21),
+     * otherwise a pool of daemon threads.
+     * @return The executor.
+     */
+    private static ExecutorService newExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), task -> {
+                Thread thread = new Thread(task, "http-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Empties the cache. Called for every write published by the database; call it too after reloading the
+     * DataHandler, since bulk loads do not publish their changes.
+     */
+    public void invalidate()
+    {
+        synchronized (lock) {
+            invalidations++;
+            generation = UNKNOWN;
+            cache.clear();
+        }
+    }
+
+    /**
+     * Answers one request.
+     * @param exchange The request and its response.
+     * @throws IOException if the response could not be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        long start = System.nanoTime();
+        REQUESTS.increment();
+        try {
+            String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                send(exchange, new Response(405, error("Method not allowed"), 0), false);
+                return;
+            }
+
+            String path = exchange.getRequestURI().getRawPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            String key = query == null ? path : path + "?" + query;
+            Response response;
+            synchronized (lock) {
+                response = generation == UNKNOWN ? null : cache.get(key);
+            }
+            if (response != null) {
+                CACHE_HITS.increment();
+            } else {
+                response = build(key, path, query);
+            }
+            send(exchange, response, method.equals("HEAD"));
+        } finally {
+            exchange.close();
+            REQUEST_TIME.recordSince(start);
+        }
+    }
+
+    /**
+     * Builds a response and caches it, unless the data changed while it was built.
+     * @param key The key of the response in the cache.
+     * @param path The path of the request.
+     * @param query The raw query string of the request, or null.
+     * @return The response.
+     */
+    private Response build(String key, String path, String query)
+    {
+        long seen;
+        synchronized (lock) {
+            seen = invalidations;
+        }
+
+        long start = System.nanoTime();
+        long current;
+        Response response;
+        try {
+            current = dbHandler.getGeneration();
+            try {
+                response = new Response(200, route(path, parseQuery(query)), current);
+            } catch (RequestException e) {
+                if (e.status >= 500) {
+                    // Not an answer about the data, so not cached
+                    return new Response(e.status, error(e.getMessage()), 0);
+                }
+                response = new Response(e.status, error(e.getMessage()), current);
+            }
+        } catch (SQLException | RuntimeException e) {
+            ERRORS.increment();
+            System.out.println("Failed to answer " + key + ": " + e);
+            return new Response(500, error("Internal error"), 0);
+        }
+        BUILD_TIME.recordSince(start);
+
+        synchronized (lock) {
+            if (invalidations == seen) {
+                generation = current;
+                cache.put(key, response);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Something read from the loaded data.
+     * @param <T> The type of what is read.
+     */
+    private interface Read<T> {
+        /**
+         * Reads it. Called while the read lock of the DataHandler is held.
+         * @return What was read.
+         * @throws RequestException if the request is not valid.
+         * @throws SQLException if a database access error occurs.
+         */
+        T run() throws RequestException, SQLException;
+    }
+
+    /**
+     * Reads from the loaded data while it cannot change. Any database connection the read needs must be borrowed
+     * before calling this, since changes are applied while the database is locked.
+     * @param read What to read.
+     * @param <T> The type of what is read.
+     * @return What was read.
+     * @throws RequestException with status 503 if the data kept changing for BUILD_TIMEOUT_SECONDS, or as thrown by
+     * the read.
+     * @throws SQLException if a database access error occurs.
+     */
+    private <T> T read(Read<T> read) throws RequestException, SQLException
+    {
+        Lock readLock = dataHandler.readLock();
+        try {
+            if (!readLock.tryLock(BUILD_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                // A long load is running, the response would be out of date by the time it was built
+                throw new RequestException(503, "Busy, try again shortly");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestException(503, "Interrupted");
+        }
+        try {
+            return read.run();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Sends a response, or an empty 304 if the client already has it.
+     * @param exchange The request and its response.
+     * @param response The response to send.
+     * @param headOnly true to send only the headers.
+     * @throws IOException if the response could not be sent.
+     */
+    private static void send(HttpExchange exchange, Response response, boolean headOnly) throws IOException
+    {
+        // The server drops the connection after a reply without a body unless the request was read to its end
+        exchange.getRequestBody().close();
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (response.status == 200) {
+            // Browsers may keep the response but must check it is still current before using it
+            exchange.getResponseHeaders().set("ETag", response.etag);
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null && (ifNoneMatch.equals(response.etag) || ifNoneMatch.equals("W/" + response.etag))) {
+                NOT_MODIFIED.increment();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+        if (headOnly) {
+            exchange.sendResponseHeaders(response.status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(response.status, response.body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response.body);
+        }
+    }
+
+    /**
+     * Builds the JSON body for a path.
+     * @param path The path of the request.
+     * @param params The query parameters.
+     * @return The JSON body.
+     * @throws RequestException if the path or a parameter is not valid.
+     * @throws SQLException if a database access error occurs.
+     */
+    private String route(String path, Map<String, String> params) throws RequestException, SQLException
+    {
+        switch (path) {
+            case "/api/leaderboard":
+                return leaderboard(params);
+            case "/api/students":
+                return students(params);
+            case "/api/competitions":
+                return competitions();
+            case "/api/competition":
+                return competition(params);
+            case "/api/student":
+                return student(params);
+            default:
+                throw new RequestException(404, "No such endpoint: " + path);
+        }
+    }
+
+    /**
+     * Builds a page of the leaderboard.
+     * @param params The query parameters by, offset and top.
+     * @return The JSON body.
+     * @throws RequestException if a parameter is not valid.
+     * @throws SQLException never, the leaderboard is read from the loaded data.
+     */
+    private String leaderboard(Map<String, String> params) throws RequestException, SQLException
+    {
+        LeaderboardIndex.Order order;
+        try {
+            order = LeaderboardIndex.Order.valueOf(params.getOrDefault("by", "problems").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "by must be problems or competitions");
+        }
+        int offset = intParam(params, "offset", 0, 0, Integer.MAX_VALUE);
+        int top = intParam(params, "top", 10, 0, MAX_ROWS);
+
+        StringBuilder json = new StringBuilder("{\"by\":").append(quote(order.name().toLowerCase(Locale.ROOT)));
+        json.append(",\"offset\":").append(offset).append(",\"students\":[");
+        read(() -> {
+            List<Student> page = dataHandler.getLeaderboardPage(order, offset, top);
+            for (int i = 0; i < page.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendStudent(json.append("{\"rank\":").append(offset + i + 1).append(','), page.get(i)).append('}');
+            }
+            return null;
+        });
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Builds a page of the students matching some filters.
+     * @param params The query parameters level, minProblems, minCompetitions, by, offset and top.
+     * @return The JSON body.
+     * @throws RequestException if a parameter is not valid.
+     * @throws SQLException if a database access error occurs.
+     */
+    private String students(Map<String, String> params) throws RequestException, SQLException
+    {
+        StudentQuery query = new StudentQuery();
+        if (params.containsKey("level")) {
+            try {
+                query.where(StudentQuery.eq(StudentQuery.Field.LEVEL, Level.fromName(params.get("level"))));
+            } catch (IllegalArgumentException e) {
+                throw new RequestException(400, "level must be novice or advanced");
+            }
+        }
+        if (params.containsKey("minProblems")) {
+            query.where(StudentQuery.ge(StudentQuery.Field.PROBLEMS, intParam(params, "minProblems", 0, 0, Integer.MAX_VALUE)));
+        }
+        if (params.containsKey("minCompetitions")) {
+            query.where(StudentQuery.ge(StudentQuery.Field.COMPETITIONS, intParam(params, "minCompetitions", 0, 0, Integer.MAX_VALUE)));
+        }
+        if (params.containsKey("by")) {
+            try {
+                query.orderBy(LeaderboardIndex.Order.valueOf(params.get("by").toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new RequestException(400, "by must be problems or competitions");
+            }
+        }
+        int offset = intParam(params, "offset", 0, 0, Integer.MAX_VALUE);
+        query.offset(offset).limit(intParam(params, "top", 100, 0, MAX_ROWS));
+        query.select(StudentQuery.Field.ID, StudentQuery.Field.NAME, StudentQuery.Field.LEVEL, StudentQuery.Field.PROBLEMS,
+                StudentQuery.Field.COMPETITIONS);
+
+        StringBuilder json = new StringBuilder("{\"total\":");
+        boolean loaded = read(() -> {
+            if (dataHandler.isEmpty()) {
+                return false;
+            }
+            json.append(dataHandler.count(query, null)).append(",\"offset\":").append(offset).append(",\"students\":[");
+            try (StudentQuery.Cursor rows = dataHandler.query(query, null)) {
+                appendRows(json, rows);
+            }
+            return true;
+        });
+        if (!loaded) {
+            // Nothing is loaded, so the query borrows a read connection, which must not happen under the read lock
+            json.append(query.count(dbHandler)).append(",\"offset\":").append(offset).append(",\"students\":[");
+            try (StudentQuery.Cursor rows = query.execute(dbHandler)) {
+                appendRows(json, rows);
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Appends the rows of a student query, selecting ID, name, level, problems solved and competitions.
+     * @param json The JSON being built.
+     * @param rows The rows.
+     */
+    private static void appendRows(StringBuilder json, StudentQuery.Cursor rows)
+    {
+        boolean first = true;
+        while (rows.hasNext()) {
+            Object[] row = rows.next();
+            json.append(first ? "{" : ",{").append("\"id\":").append(row[0]).append(",\"name\":").append(quote((String) row[1]));
+            json.append(",\"level\":").append(quote(row[2] == null ? null : ((Level) row[2]).getDisplayName()));
+            json.append(",\"problemsSolved\":").append(row[3]).append(",\"competitions\":").append(row[4]).append('}');
+            first = false;
+        }
+    }
+
+    /**
+     * Builds the list of competitions.
+     * @return The JSON body.
+     * @throws RequestException if the loaded data kept changing.
+     * @throws SQLException never, the competitions are read from the loaded data.
+     */
+    private String competitions() throws RequestException, SQLException
+    {
+        return read(() -> competitionsJson(dataHandler.getCompetition(), dataHandler.getCompetitionTotals()));
+    }
+
+    /**
+     * Builds the list of competitions from their totals.
+     * @param competitions The competitions.
+     * @param totals The totals of every competition that has a result, by competition ID.
+     * @return The JSON body.
+     */
+    private static String competitionsJson(Competition[] competitions, Map<Integer, ParallelRoster.Totals> totals)
+    {
+        StringBuilder json = new StringBuilder("{\"competitions\":[");
+        ParallelRoster.Totals none = new ParallelRoster.Totals();
+        for (int i = 0; i < competitions.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            ParallelRoster.Totals comp = totals.getOrDefault(competitions[i].getId(), none);
+            json.append("{\"id\":").append(competitions[i].getId()).append(",\"name\":").append(quote(competitions[i].getName()));
+            json.append(",\"students\":").append(comp.getStudents());
+            json.append(String.format(Locale.ROOT, ",\"averageProblemsSolved\":%.2f,\"averagePlacement\":%.2f}", comp.getAverageProblems(), comp.getAveragePlacement()));
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Builds the results of a competition.
+     * @param params The query parameter name.
+     * @return The JSON body.
+     * @throws RequestException if there is no such competition.
+     * @throws SQLException if a database access error occurs.
+     */
+    private String competition(Map<String, String> params) throws RequestException, SQLException
+    {
+        String name = params.get("name");
+        if (name == null) {
+            throw new RequestException(404, "No such competition");
+        }
+
+        StringBuilder json = new StringBuilder("{\"name\":").append(quote(name)).append(",\"results\":[");
+        Object[][] rows;
+        // Borrowed before the read lock is taken
+        try (ConnectionPool.PooledConnection reader = dbHandler.borrowRead()) {
+            rows = read(() -> {
+                if (dataHandler.getCompetitionByName(name) == null) {
+                    throw new RequestException(404, "No such competition");
+                }
+                return dataHandler.getCompetitionData(name, reader.getConnection());
+            });
+        }
+        for (int i = 0; i < rows.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"student\":").append(quote((String) rows[i][0]));
+            json.append(",\"problemsSolved\":").append(rows[i][1]).append(",\"placement\":").append(rows[i][2]).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Builds the results and ranks of a student.
+     * @param params The query parameter id, or name for the last student loaded with that name.
+     * @return The JSON body.
+     * @throws RequestException if there is no such student.
+     * @throws SQLException never, the student is read from the loaded data.
+     */
+    private String student(Map<String, String> params) throws RequestException, SQLException
+    {
+        int id = params.containsKey("id") ? intParam(params, "id", 0, Integer.MIN_VALUE, Integer.MAX_VALUE) : 0;
+        return read(() -> {
+            Student student = null;
+            if (params.containsKey("id")) {
+                student = dataHandler.getStudentById(id);
+            } else if (params.containsKey("name")) {
+                // The same choice of namesake as getStudent
+                List<Student> namesakes = dataHandler.getStudentsByName(params.get("name"));
+                student = namesakes.isEmpty() ? null : namesakes.get(namesakes.size() - 1);
+            }
+            if (student == null) {
+                throw new RequestException(404, "No such student");
+            }
+            return studentJson(student);
+        });
+    }
+
+    /**
+     * Builds the results and ranks of a student. Called while the read lock is held.
+     * @param student The student.
+     * @return The JSON body.
+     */
+    private String studentJson(Student student)
+    {
+        StringBuilder json = appendStudent(new StringBuilder("{"), student);
+        json.append(",\"rankByProblems\":").append(dataHandler.getRank(LeaderboardIndex.Order.PROBLEMS, student.getId()));
+        json.append(",\"rankByCompetitions\":").append(dataHandler.getRank(LeaderboardIndex.Order.COMPETITIONS, student.getId()));
+        json.append(",\"results\":[");
+        Object[][] rows = dataHandler.getStudentData(student);
+        for (int i = 0; i < rows.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"competition\":").append(quote((String) rows[i][0]));
+            json.append(",\"problemsSolved\":").append(rows[i][1]).append(",\"placement\":").append(rows[i][2]).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Appends the fields of a student, without the surrounding braces.
+     * @param json The JSON being built.
+     * @param student The student.
+     * @return The JSON being built.
+     */
+    private static StringBuilder appendStudent(StringBuilder json, Student student)
+    {
+        json.append("\"id\":").append(student.getId());
+        json.append(",\"name\":").append(quote(student.getName()));
+        json.append(",\"level\":").append(quote(student.getLevel() == null ? null : student.getLevel().getDisplayName()));
+        json.append(",\"problemsSolved\":").append(student.getTotalProb());
+        json.append(",\"competitions\":").append(student.getCompetitionCount());
+        return json;
+    }
+
+    /**
+     * Reads a whole number parameter.
+     * @param params The query parameters.
+     * @param name The name of the parameter.
+     * @param defaultValue The value when the parameter is missing.
+     * @param min The smallest value allowed.
+     * @param max The largest value allowed.
+     * @return The value.
+     * @throws RequestException if the parameter is not a number in range.
+     */
+    private static int intParam(Map<String, String> params, String name, int defaultValue, int min, int max) throws RequestException
+    {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int n = Integer.parseInt(value.trim());
+            if (n >= min && n <= max) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new RequestException(400, name + " must be a number from " + min + " to " + max);
+    }
+
+    /**
+     * Splits a query string into its parameters. A parameter given twice keeps its first value.
+     * @param query The raw query string, or null.
+     * @return The decoded parameters.
+     */
+    private static Map<String, String> parseQuery(String query)
+    {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.putIfAbsent(name, value);
+        }
+        return params;
+    }
+
+    /**
+     * Builds the body of an error response.
+     * @param message The reason for the error.
+     * @return The JSON body.
+     */
+    private static String error(String message)
+    {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    /**
+     * Quotes a string for JSON.
+     * @param s The string, or null.
+     * @return The quoted and escaped string, or null.
+     */
+    private static String quote(String s)
+    {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder out = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /**
+     * Stops listening, waiting up to a second for requests being answered, and stops watching the database.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        executor.shutdownNow();
+        dbHandler.removeChangeListener(invalidator);
+        server = null;
+        executor = null;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * The Level enum holds the levels a student can compete at. The database stores a level as its code.
+ */
+public enum Level {
+    NOVICE(0, "Novice"),
+    ADVANCED(1, "Advanced");
+
+    private static final Level[] BY_CODE = {NOVICE, ADVANCED};
+
+    private final int code;
+    private final String displayName;
+
+    /**
+     * Constructs a Level.
+     * @param code The code stored in the database.
+     * @param displayName The name shown to the user.
+     */
+    Level(int code, String displayName)
+    {
+        this.code = code;
+        this.displayName = displayName;
+    }
+
+    /**
+     * Gets the code stored in the database for the level.
+     * @return The code of the level.
+     */
+    public int getCode()
+    {
+        return code;
+    }
+
+    /**
+     * Gets the name shown to the user for the level.
+     * @return The name of the level, e.g. "Novice".
+     */
+    public String getDisplayName()
+    {
+        return displayName;
+    }
+
+    /**
+     * Gets the level with a code.
+     * @param code The code stored in the database.
+     * @return The level with that code.
+     * @throws IllegalArgumentException if no level has that code.
+     */
+    public static Level fromCode(int code)
+    {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown level code: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Gets the level with a name, ignoring case.
+     * @param name The name of the level, e.g. "Advanced".
+     * @return The level with that name.
+     * @throws IllegalArgumentException if no level has that name.
+     */
+    public static Level fromName(String name)
+    {
+        for (Level level : BY_CODE) {
+            if (level.displayName.equalsIgnoreCase(name.trim())) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("Unknown level: " + name);
+    }
+
+    /**
+     * Gets the name shown to the user for the level.
+     * @return The name of the level.
+     */
+    @Override
+    public String toString()
+    {
+        return displayName;
+    }
+}
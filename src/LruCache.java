@@ -0,0 +1,45 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The LruCache class is a map that holds at most a fixed number of entries, evicting the least recently used entry
+ * when a new one does not fit. It is not thread-safe.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class LruCache<K, V> extends LinkedHashMap<K, V> {
+    private static final long serialVersionUID = 1L;
+
+    private int capacity;
+
+    /**
+     * Constructs an LruCache object.
+     * @param capacity The maximum number of entries.
+     */
+    public LruCache(int capacity)
+    {
+        super(16, 0.75f, true);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the maximum number of entries.
+     * @return The capacity of the cache.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Evicts the least recently used entry once the cache is over capacity.
+     * @param eldest The least recently used entry.
+     * @return true if the entry should be evicted, false otherwise.
+     */
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+    {
+        return size() > capacity;
+    }
+}
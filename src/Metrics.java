@@ -0,0 +1,415 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * The Metrics class is a registry of named counters, gauges and histograms that show where the program spends its
+ * time. Metrics are created once, usually into static fields, and updating them never allocates, so they can stay
+ * on in hot loops. They can be read over JMX once registerMBeans is called, or printed with report and startReporter.
+ * Histograms of durations are named with a ".ns" ending and hold nanoseconds.
+ */
+public class Metrics {
+    /** The JMX domain the metrics are registered under. */
+    public static final String JMX_DOMAIN = "leaderboard";
+
+    private static final Metrics SHARED = new Metrics();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private volatile boolean jmxEnabled;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * The JMX view of a counter.
+     */
+    public interface CounterMBean {
+        /**
+         * Gets the value of the counter.
+         * @return The count.
+         */
+        long getCount();
+    }
+
+    /**
+     * The JMX view of a gauge.
+     */
+    public interface GaugeMBean {
+        /**
+         * Gets the current value of the gauge.
+         * @return The value.
+         */
+        long getValue();
+    }
+
+    /**
+     * The JMX view of a histogram.
+     */
+    public interface HistogramMBean {
+        /**
+         * Gets the number of values recorded.
+         * @return The count.
+         */
+        long getCount();
+
+        /**
+         * Gets the mean of the values recorded.
+         * @return The mean.
+         */
+        double getMean();
+
+        /**
+         * Gets the median of the values recorded.
+         * @return The 50th percentile.
+         */
+        long getP50();
+
+        /**
+         * Gets the 90th percentile of the values recorded.
+         * @return The 90th percentile.
+         */
+        long getP90();
+
+        /**
+         * Gets the 99th percentile of the values recorded.
+         * @return The 99th percentile.
+         */
+        long getP99();
+
+        /**
+         * Gets the 99.9th percentile of the values recorded.
+         * @return The 99.9th percentile.
+         */
+        long getP999();
+
+        /**
+         * Gets the largest value recorded.
+         * @return The maximum.
+         */
+        long getMax();
+    }
+
+    /**
+     * A count that only goes up, such as the number of rows read.
+     */
+    public static class Counter implements CounterMBean {
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Adds one to the counter.
+         */
+        public void increment()
+        {
+            count.increment();
+        }
+
+        /**
+         * Adds to the counter.
+         * @param n The amount to add.
+         */
+        public void add(long n)
+        {
+            count.add(n);
+        }
+
+        @Override
+        public long getCount()
+        {
+            return count.sum();
+        }
+    }
+
+    /**
+     * A value that is computed when it is read, such as the size of a cache.
+     */
+    public static class Gauge implements GaugeMBean {
+        private final LongSupplier supplier;
+
+        /**
+         * Constructs a Gauge object.
+         * @param supplier The function computing the value.
+         */
+        private Gauge(LongSupplier supplier)
+        {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public long getValue()
+        {
+            return supplier.getAsLong();
+        }
+    }
+
+    /**
+     * A distribution of values, such as the durations of a method. Values are counted in buckets that are exact up
+     * to 16 and then 16 to each power of two, so percentiles are within about 6% of the true value.
+     */
+    public static class Histogram implements HistogramMBean {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Records a value.
+         * @param value The value, negative values count as 0.
+         */
+        public void record(long value)
+        {
+            value = Math.max(0, value);
+            buckets.incrementAndGet(bucketOf(value));
+            count.increment();
+            sum.add(value);
+            if (value > max.get()) {
+                max.accumulateAndGet(value, Math::max);
+            }
+        }
+
+        /**
+         * Records the time since a start time.
+         * @param startNanos The start time, from System.nanoTime.
+         */
+        public void recordSince(long startNanos)
+        {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Finds the bucket of a value.
+         * @param value The value, at least 0.
+         * @return The index of the bucket.
+         */
+        private static int bucketOf(long value)
+        {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * Finds the largest value that falls in a bucket.
+         * @param bucket The index of the bucket.
+         * @return The upper bound of the bucket.
+         */
+        private static long upperBoundOf(int bucket)
+        {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+        }
+
+        /**
+         * Gets a percentile of the values recorded.
+         * @param p The percentile, between 0 and 100.
+         * @return The percentile, or 0 if nothing was recorded.
+         */
+        public long getPercentile(double p)
+        {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += buckets.get(i);
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), max.get());
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+        @Override
+        public double getMean()
+        {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        @Override
+        public long getP50()
+        {
+            return getPercentile(50);
+        }
+
+        @Override
+        public long getP90()
+        {
+            return getPercentile(90);
+        }
+
+        @Override
+        public long getP99()
+        {
+            return getPercentile(99);
+        }
+
+        @Override
+        public long getP999()
+        {
+            return getPercentile(99.9);
+        }
+
+        @Override
+        public long getMax()
+        {
+            return max.get();
+        }
+    }
+
+    /**
+     * Gets the registry shared by the whole program.
+     * @return The shared registry.
+     */
+    public static Metrics shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Gets the counter with a name, creating it if needed.
+     * @param name The name of the counter, e.g. "parser.rows".
+     * @return The counter.
+     */
+    public Counter counter(String name)
+    {
+        return counters.computeIfAbsent(name, key -> register("Counter", key, new Counter(), CounterMBean.class));
+    }
+
+    /**
+     * Sets the function computing a gauge, replacing any gauge with the same name.
+     * @param name The name of the gauge, e.g. "parser.bytesPerSecond".
+     * @param supplier The function computing the value.
+     * @return The gauge.
+     */
+    public Gauge gauge(String name, LongSupplier supplier)
+    {
+        Gauge gauge = register("Gauge", name, new Gauge(supplier), GaugeMBean.class);
+        gauges.put(name, gauge);
+        return gauge;
+    }
+
+    /**
+     * Gets the histogram with a name, creating it if needed.
+     * @param name The name of the histogram, e.g. "db.addStudent.ns".
+     * @return The histogram.
+     */
+    public Histogram histogram(String name)
+    {
+        return histograms.computeIfAbsent(name, key -> register("Histogram", key, new Histogram(), HistogramMBean.class));
+    }
+
+    /**
+     * Registers every metric as an MBean with the platform MBean server, along with every metric created later.
+     */
+    public synchronized void registerMBeans()
+    {
+        if (jmxEnabled) {
+            return;
+        }
+        jmxEnabled = true;
+        counters.forEach((name, counter) -> register("Counter", name, counter, CounterMBean.class));
+        gauges.forEach((name, gauge) -> register("Gauge", name, gauge, GaugeMBean.class));
+        histograms.forEach((name, histogram) -> register("Histogram", name, histogram, HistogramMBean.class));
+    }
+
+    /**
+     * Registers a metric as an MBean if JMX is enabled, replacing an earlier MBean with the same name.
+     * @param type The kind of metric, used in the object name.
+     * @param name The name of the metric.
+     * @param metric The metric.
+     * @param view The interface exposed over JMX.
+     * @return The metric.
+     */
+    private <T, M extends T> M register(String type, String name, M metric, Class<T> view)
+    {
+        if (!jmxEnabled) {
+            return metric;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new StandardMBean(metric, view), objectName);
+        } catch (JMException e) {
+            System.out.println("Failed to register metric " + name + ": " + e.getMessage());
+        }
+        return metric;
+    }
+
+    /**
+     * Formats every metric, one per line and sorted by name.
+     * @return The text of the report.
+     */
+    public String report()
+    {
+        StringBuilder out = new StringBuilder();
+        new TreeMap<>(counters).forEach((name, counter) -> out.append(String.format(Locale.ROOT, "%-36s count=%d%n", name, counter.getCount())));
+        new TreeMap<>(gauges).forEach((name, gauge) -> out.append(String.format(Locale.ROOT, "%-36s value=%d%n", name, gauge.getValue())));
+        new TreeMap<>(histograms).forEach((name, h) -> out.append(String.format(Locale.ROOT, "%-36s count=%d mean=%.0f p50=%d p90=%d p99=%d p999=%d max=%d%n",
+                name, h.getCount(), h.getMean(), h.getP50(), h.getP90(), h.getP99(), h.getP999(), h.getMax())));
+        return out.toString();
+    }
+
+    /**
+     * Prints the report at a fixed rate on a background thread, replacing any earlier schedule.
+     * @param period The time between reports.
+     * @param unit The unit of the period.
+     * @param out The stream to print to.
+     */
+    public synchronized void startReporter(long period, TimeUnit unit, PrintStream out)
+    {
+        stopReporter();
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.print(report()), period, period, unit);
+    }
+
+    /**
+     * Stops printing the report.
+     */
+    public synchronized void stopReporter()
+    {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+}
@@ -0,0 +1,559 @@
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * The PagedTableModel class shows the rows of a query in a JTable without reading them all. Rows are read a page at
+ * a time when the table first needs them, and only the most recently used pages are kept, so memory stays the same
+ * however many rows there are. Sorting and searching are done by the database.
+ *
+ * Pages are found by keyset pagination: the next page starts after the sort values of the last row of the page
+ * before, which an index can seek to directly. Only a page whose previous page has not been read, e.g. after
+ * dragging the scroll bar to the end, is found with an OFFSET.
+ *
+ * The model is only used on the event dispatch thread, but never reads there. Rows that are not read yet show as
+ * empty while their page is read on a background thread, and the table is told to repaint them when it arrives.
+ */
+public class PagedTableModel extends AbstractTableModel {
+    /** The default number of rows read at a time. */
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    /** The default number of pages kept. */
+    public static final int DEFAULT_CACHED_PAGES = 16;
+
+    private static final long serialVersionUID = 1L;
+    private static final Object[][] EMPTY_PAGE = new Object[0][];
+    // Shared by every table, one read at a time is enough for what is on screen
+    private static final ExecutorService READER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "table-pages");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private DatabaseHandler db;
+    private String from;
+    private String baseFilter;
+    private Object[] baseParams;
+    private List<Column> columns = new ArrayList<>();
+    // The sort order, the last key is always unique so every row has its own place
+    private List<SortKey> sort = new ArrayList<>();
+    private SortKey uniqueKey;
+    private int sortedColumn = -1;
+    private String search = "";
+    private int pageSize;
+    private int rowCount = -1;
+    private LruCache<Integer, Object[][]> pages;
+    // The sort values of the last row before each page, for the pages whose previous page has been read
+    private Map<Integer, Object[]> pageStarts = new HashMap<>();
+    // The pages being read, and whether the rows are being counted
+    private Set<Integer> loading = new HashSet<>();
+    private boolean counting;
+    // Changed by every refresh, so reads started before it are thrown away
+    private int generation;
+
+    /**
+     * A column of the table.
+     */
+    private static class Column {
+        private final String label;
+        private final String sql;
+        private final Class<?> type;
+        private final boolean searchable;
+
+        private Column(String label, String sql, Class<?> type, boolean searchable)
+        {
+            this.label = label;
+            this.sql = sql;
+            this.type = type;
+            this.searchable = searchable;
+        }
+    }
+
+    /**
+     * One part of the sort order.
+     */
+    private static class SortKey {
+        private final String sql;
+        private final boolean descending;
+
+        private SortKey(String sql, boolean descending)
+        {
+            this.sql = sql;
+            this.descending = descending;
+        }
+    }
+
+    /**
+     * Constructs a PagedTableModel object with no columns.
+     * @param dbHandler The DatabaseHandler to read from.
+     * @param from The FROM clause, without the keyword, e.g. "results r JOIN students s ON s.id = r.student_id".
+     * @param uniqueKey An expression that is different for every row, used to break ties, e.g. "r.rowid".
+     * @param filter A condition every row must meet, or null for all rows.
+     * @param params The values of the ? parameters of the filter.
+     */
+    public PagedTableModel(DatabaseHandler dbHandler, String from, String uniqueKey, String filter, Object... params)
+    {
+        this.db = dbHandler;
+        this.from = from;
+        this.uniqueKey = new SortKey(uniqueKey, false);
+        this.baseFilter = filter;
+        this.baseParams = params;
+        this.pageSize = DEFAULT_PAGE_SIZE;
+        this.pages = new LruCache<>(DEFAULT_CACHED_PAGES);
+        sort.add(this.uniqueKey);
+    }
+
+    /**
+     * Adds a column.
+     * @param label The name shown in the header.
+     * @param sql The expression of the column.
+     * @param type The type of the values, e.g. Integer.class.
+     * @param searchable true if the search box matches this column.
+     */
+    public void addColumn(String label, String sql, Class<?> type, boolean searchable)
+    {
+        columns.add(new Column(label, sql, type, searchable));
+    }
+
+    /**
+     * Sets the order the rows are shown in before the user picks a column to sort by.
+     * @param sql The expressions to sort by, most significant first.
+     * @param descending For each expression, true to sort it highest first.
+     */
+    public void setDefaultSort(String[] sql, boolean[] descending)
+    {
+        sort.clear();
+        for (int i = 0; i < sql.length; i++) {
+            sort.add(new SortKey(sql[i], descending[i]));
+        }
+        if (!sql[sql.length - 1].equals(uniqueKey.sql)) {
+            sort.add(uniqueKey);
+        }
+        sortedColumn = -1;
+        refresh();
+    }
+
+    /**
+     * Sorts the rows by a column. Sorting by the same column again reverses the order.
+     * @param column The index of the column.
+     */
+    public void sortBy(int column)
+    {
+        boolean descending = column == sortedColumn && !sort.get(0).descending;
+        sort.clear();
+        sort.add(new SortKey(columns.get(column).sql, descending));
+        sort.add(uniqueKey);
+        sortedColumn = column;
+        refresh();
+        fireTableStructureChanged();
+    }
+
+    /**
+     * Shows only the rows where a searchable column contains some text, ignoring case.
+     * @param text The text to search for, empty to show every row.
+     */
+    public void setSearch(String text)
+    {
+        search = text == null ? "" : text.trim();
+        refresh();
+    }
+
+    /**
+     * Forgets every page read so far and the number of rows, so they are read again.
+     */
+    public void refresh()
+    {
+        pages.clear();
+        pageStarts.clear();
+        loading.clear();
+        counting = false;
+        generation++;
+        rowCount = -1;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Gets the number of rows. Until they have been counted this is 0, and the table is told when the count arrives.
+     * @return The number of rows.
+     */
+    @Override
+    public int getRowCount()
+    {
+        if (rowCount < 0 && !counting) {
+            counting = true;
+            List<Object> params = new ArrayList<>();
+            String query = "SELECT COUNT(*) FROM " + from + where(params, null);
+            int started = generation;
+            READER.execute(() -> {
+                int count;
+                try (ConnectionPool.PooledConnection reader = db.borrowRead()) {
+                    PreparedStatement stmt = reader.prepare(query);
+                    bind(stmt, params);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        count = rs.next() ? rs.getInt(1) : 0;
+                    }
+                } catch (SQLException e) {
+                    System.out.println("Failed to count rows: " + e.getMessage());
+                    count = 0;
+                }
+                int rows = count;
+                SwingUtilities.invokeLater(() -> {
+                    if (started == generation) {
+                        counting = false;
+                        rowCount = rows;
+                        fireTableDataChanged();
+                    }
+                });
+            });
+        }
+        return Math.max(rowCount, 0);
+    }
+
+    @Override
+    public int getColumnCount()
+    {
+        return columns.size();
+    }
+
+    @Override
+    public String getColumnName(int column)
+    {
+        String label = columns.get(column).label;
+        if (column == sortedColumn) {
+            return label + (sort.get(0).descending ? " (desc)" : " (asc)");
+        }
+        return label;
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column)
+    {
+        return columns.get(column).type;
+    }
+
+    /**
+     * Gets a value, or null while its page is being read.
+     * @param row The index of the row.
+     * @param column The index of the column.
+     * @return The value.
+     */
+    @Override
+    public Object getValueAt(int row, int column)
+    {
+        Object[][] page = page(row / pageSize, true);
+        int i = row % pageSize;
+        // The rows may have changed since they were counted
+        return page != null && i < page.length ? page[i][column] : null;
+    }
+
+    /**
+     * Gets a page of rows, starting to read it if it is not kept.
+     * @param number The number of the page, from 0.
+     * @param prefetch true to also read the page after it once it has been read.
+     * @return The rows of the page, empty if it could not be read, or null while it is being read.
+     */
+    private Object[][] page(int number, boolean prefetch)
+    {
+        Object[][] page = pages.get(number);
+        if (page == null && loading.add(number)) {
+            readPage(number, prefetch);
+        }
+        return page;
+    }
+
+    /**
+     * Reads a page of rows from the database on the reader thread, then keeps it and repaints its rows.
+     * @param number The number of the page, from 0.
+     * @param prefetch true to also read the page after it, so scrolling down finds it by its keyset.
+     */
+    private void readPage(int number, boolean prefetch)
+    {
+        Object[] start = pageStarts.get(number);
+        List<Object> params = new ArrayList<>();
+        StringBuilder query = new StringBuilder("SELECT ");
+        for (Column column : columns) {
+            query.append(column.sql).append(", ");
+        }
+        for (int i = 0; i < sort.size(); i++) {
+            query.append(i > 0 ? ", " : "").append(sort.get(i).sql);
+        }
+        query.append(" FROM ").append(from).append(where(params, start)).append(" ORDER BY ");
+        for (int i = 0; i < sort.size(); i++) {
+            query.append(i > 0 ? ", " : "").append(sort.get(i).sql).append(sort.get(i).descending ? " DESC" : "");
+        }
+        // Bound rather than written into the query, so the connection's statement cache does not fill with pages
+        query.append(" LIMIT ? OFFSET ?");
+        params.add(pageSize);
+        params.add(number > 0 && start == null ? (long) number * pageSize : 0L);
+
+        int columnCount = columns.size();
+        int keyCount = sort.size();
+        int started = generation;
+        READER.execute(() -> {
+            List<Object[]> rows = new ArrayList<>(pageSize);
+            Object[] last = null;
+            try (ConnectionPool.PooledConnection reader = db.borrowRead()) {
+                PreparedStatement stmt = reader.prepare(query.toString());
+                bind(stmt, params);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Object[] row = new Object[columnCount];
+                        for (int c = 0; c < row.length; c++) {
+                            row[c] = rs.getObject(c + 1);
+                        }
+                        rows.add(row);
+                        last = new Object[keyCount];
+                        for (int k = 0; k < last.length; k++) {
+                            last[k] = rs.getObject(columnCount + k + 1);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                // Kept empty, so the table does not ask for it over and over
+                System.out.println("Failed to read rows: " + e.getMessage());
+                rows.clear();
+                last = null;
+            }
+            Object[][] page = rows.toArray(EMPTY_PAGE);
+            Object[] next = last != null && page.length == pageSize ? last : null;
+            SwingUtilities.invokeLater(() -> pageRead(started, number, page, next, prefetch));
+        });
+    }
+
+    /**
+     * Keeps a page that has been read and repaints its rows. Called on the event dispatch thread.
+     * @param started The generation the read was started in.
+     * @param number The number of the page, from 0.
+     * @param page The rows of the page.
+     * @param next The sort values of the last row of the page, or null if it is the last page.
+     * @param prefetch true to also read the page after it.
+     */
+    private void pageRead(int started, int number, Object[][] page, Object[] next, boolean prefetch)
+    {
+        if (started != generation) {
+            return;
+        }
+        loading.remove(number);
+        pages.put(number, page);
+        if (next != null) {
+            pageStarts.put(number + 1, next);
+        }
+        int first = number * pageSize;
+        int end = Math.min(first + pageSize, getRowCount()) - 1;
+        if (end >= first) {
+            fireTableRowsUpdated(first, end);
+        }
+        if (prefetch && next != null) {
+            // Not prefetching from a prefetched page, which would read every page in turn
+            page(number + 1, false);
+        }
+    }
+
+    /**
+     * Builds the WHERE clause from the filter, the search text and the start of a page.
+     * @param params The list to add the values of the ? parameters to.
+     * @param start The sort values of the last row before the page, or null to start at the first row.
+     * @return The WHERE clause with a leading space, or an empty string if every row matches.
+     */
+    private String where(List<Object> params, Object[] start)
+    {
+        List<String> conditions = new ArrayList<>();
+        if (baseFilter != null) {
+            conditions.add("(" + baseFilter + ")");
+            params.addAll(List.of(baseParams));
+        }
+
+        if (!search.isEmpty()) {
+            List<String> matches = new ArrayList<>();
+            String pattern = "%" + search.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+            for (Column column : columns) {
+                if (column.searchable) {
+                    matches.add(column.sql + " LIKE ? ESCAPE '\\'");
+                    params.add(pattern);
+                }
+            }
+            if (!matches.isEmpty()) {
+                conditions.add("(" + String.join(" OR ", matches) + ")");
+            }
+        }
+
+        if (start != null) {
+            // After (a, b, c) means a beyond start, or a equal and b beyond, or a and b equal and c beyond. The
+            // leading bound on its own lets an index on a seek straight to the page.
+            SortKey first = sort.get(0);
+            conditions.add(first.sql + (first.descending ? " <= ?" : " >= ?"));
+            params.add(start[0]);
+            List<String> alternatives = new ArrayList<>();
+            for (int k = 0; k < sort.size(); k++) {
+                StringBuilder alternative = new StringBuilder("(");
+                for (int e = 0; e < k; e++) {
+                    alternative.append(sort.get(e).sql).append(" = ? AND ");
+                    params.add(start[e]);
+                }
+                alternative.append(sort.get(k).sql).append(sort.get(k).descending ? " < ?" : " > ?").append(")");
+                params.add(start[k]);
+                alternatives.add(alternative.toString());
+            }
+            conditions.add("(" + String.join(" OR ", alternatives) + ")");
+        }
+
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    /**
+     * Sets the ? parameters of a statement in order.
+     * @param stmt The statement.
+     * @param params The values of the parameters.
+     * @throws SQLException if a database access error occurs.
+     */
+    private static void bind(PreparedStatement stmt, List<Object> params) throws SQLException
+    {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+    }
+
+    /**
+     * Builds a view of the model: the table, with a search box above it if any column is searchable. Clicking a
+     * column header sorts by that column.
+     * @param model The model to show.
+     * @return The view, to put in a dialog.
+     */
+    public static JComponent createView(PagedTableModel model)
+    {
+        JTable table = new JTable(model);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e)
+            {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    model.sortBy(table.convertColumnIndexToModel(column));
+                }
+            }
+        });
+
+        JPanel panel = new JPanel(new BorderLayout(4, 4));
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(720, 420));
+        panel.add(scrollPane, BorderLayout.CENTER);
+        if (model.columns.stream().anyMatch(column -> column.searchable)) {
+            JTextField searchField = new JTextField();
+            searchField.addActionListener(e -> model.setSearch(searchField.getText()));
+            JPanel searchPanel = new JPanel(new BorderLayout(4, 4));
+            searchPanel.add(new JLabel("Search (press Enter):"), BorderLayout.WEST);
+            searchPanel.add(searchField, BorderLayout.CENTER);
+            panel.add(searchPanel, BorderLayout.NORTH);
+        }
+        return panel;
+    }
+
+    /**
+     * Builds a model of the students, ranked like the leaderboard or filtered by level.
+     * @param dbHandler The DatabaseHandler to read from.
+     * @param order The counts to rank by, or null to keep the order the students were added in.
+     * @param level The level to show, or null for every level.
+     * @return The model, with name, problems solved and competitions columns.
+     */
+    public static PagedTableModel students(DatabaseHandler dbHandler, LeaderboardIndex.Order order, Level level)
+    {
+        StudentQuery query = new StudentQuery();
+        if (level != null) {
+            query.where(StudentQuery.eq(StudentQuery.Field.LEVEL, level));
+        }
+        if (order != null) {
+            query.orderBy(order);
+        }
+        return students(dbHandler, query);
+    }
+
+    /**
+     * Builds a model of the students a query matches, in the order of the query. The limit, offset and selected
+     * fields of the query are not used; the table pages through every match itself.
+     * @param dbHandler The DatabaseHandler to read from.
+     * @param query The query.
+     * @return The model, with name, problems solved and competitions columns.
+     */
+    public static PagedTableModel students(DatabaseHandler dbHandler, StudentQuery query)
+    {
+        List<Object> params = new ArrayList<>();
+        String filter = query.whereSql(params);
+        PagedTableModel model = new PagedTableModel(dbHandler, "student_stats st JOIN students s ON s.id = st.student_id",
+                StudentQuery.Field.ID.getSql(), filter, params.toArray());
+        model.addColumn("Name", StudentQuery.Field.NAME.getSql(), String.class, true);
+        model.addColumn("Problems Solved", StudentQuery.Field.PROBLEMS.getSql(), Integer.class, false);
+        model.addColumn("# of Competitions", StudentQuery.Field.COMPETITIONS.getSql(), Integer.class, false);
+        // The leaderboard orders are the orders of idx_stats_problems and idx_stats_competitions
+        model.setDefaultSort(query.orderSql(), query.orderDescending());
+        return model;
+    }
+
+    /**
+     * Builds a model of every result, in the order of the export.
+     * @param dbHandler The DatabaseHandler to read from.
+     * @return The model, with competition, student, problems solved and placement columns.
+     */
+    public static PagedTableModel allResults(DatabaseHandler dbHandler)
+    {
+        PagedTableModel model = new PagedTableModel(dbHandler,
+                "results r JOIN competitions c ON c.id = r.competition_id JOIN students s ON s.id = r.student_id", "r.rowid", null);
+        model.addColumn("Competition Name", "c.name", String.class, true);
+        model.addColumn("Student Name", "s.firstname || ' ' || s.lastname", String.class, true);
+        model.addColumn("# of problems solved", "r.problems_solved", Integer.class, false);
+        model.addColumn("Placement", "r.placement", Integer.class, false);
+        model.setDefaultSort(new String[]{"r.competition_id", "r.student_id", "r.rowid"}, new boolean[]{false, false, false});
+        return model;
+    }
+
+    /**
+     * Builds a model of the results of one competition.
+     * @param dbHandler The DatabaseHandler to read from.
+     * @param competitionId The ID of the competition.
+     * @return The model, with name, problems solved and placement columns.
+     */
+    public static PagedTableModel competitionResults(DatabaseHandler dbHandler, int competitionId)
+    {
+        PagedTableModel model = new PagedTableModel(dbHandler, "results r JOIN students s ON s.id = r.student_id", "r.rowid",
+                "r.competition_id = ?", competitionId);
+        model.addColumn("Name", "s.firstname || ' ' || s.lastname", String.class, true);
+        model.addColumn("Problems Solved", "r.problems_solved", Integer.class, false);
+        model.addColumn("Placement", "r.placement", Integer.class, false);
+        model.setDefaultSort(new String[]{"r.student_id", "r.rowid"}, new boolean[]{false, false});
+        return model;
+    }
+
+    /**
+     * Builds a model of the results of one student.
+     * @param dbHandler The DatabaseHandler to read from.
+     * @param studentId The ID of the student.
+     * @return The model, with competition, problems solved and placement columns.
+     */
+    public static PagedTableModel studentResults(DatabaseHandler dbHandler, int studentId)
+    {
+        PagedTableModel model = new PagedTableModel(dbHandler, "results r JOIN competitions c ON c.id = r.competition_id", "r.rowid",
+                "r.student_id = ?", studentId);
+        model.addColumn("Competition", "c.name", String.class, true);
+        model.addColumn("Problems Solved", "r.problems_solved", Integer.class, false);
+        model.addColumn("Placed", "r.placement", Integer.class, false);
+        return model;
+    }
+}
@@ -0,0 +1,499 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * The ParallelRoster class sorts and sums up students on several cores with fork/join. Work is split in halves until
+ * a piece is smaller than the threshold, so rosters below the threshold run on the calling thread without any
+ * forking. The threshold can be set with -Dleaderboard.parallel.threshold.
+ *
+ * Sorting is a stable merge sort: the pieces are sorted with Arrays.sort, which is stable, and merged in parallel
+ * by splitting the larger run at its middle and the other run at the matching position, taking from the left run
+ * on ties. Students that compare equal keep their order, as with List.sort.
+ */
+public class ParallelRoster {
+    /** The default size below which work is not split. */
+    public static final int DEFAULT_THRESHOLD = 8192;
+
+    private static final ParallelRoster SHARED = new ParallelRoster(ForkJoinPool.commonPool(),
+            Integer.getInteger("leaderboard.parallel.threshold", DEFAULT_THRESHOLD));
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * The totals of some students or results, e.g. of everyone in one competition.
+     */
+    public static class Totals {
+        private long students;
+        private long results;
+        private long problems;
+        private long placementSum;
+        private int bestPlacement;
+
+        /**
+         * Adds a student and all of their results.
+         * @param student The student.
+         */
+        private void addStudent(Student student)
+        {
+            students++;
+            results += student.getCompetitionCount();
+            problems += student.getTotalProb();
+            for (Competition comp : student.getCompetitions()) {
+                addPlacement(comp.getPlacement());
+            }
+        }
+
+        /**
+         * Adds one result of a student.
+         * @param comp The result.
+         */
+        private void addResult(Competition comp)
+        {
+            students++;
+            results++;
+            problems += comp.getProblemsSolved();
+            addPlacement(comp.getPlacement());
+        }
+
+        /**
+         * Adds a placement to the sum and the best placement.
+         * @param placement The placement.
+         */
+        private void addPlacement(int placement)
+        {
+            placementSum += placement;
+            if (placement > 0 && (bestPlacement == 0 || placement < bestPlacement)) {
+                bestPlacement = placement;
+            }
+        }
+
+        /**
+         * Adds other totals to these.
+         * @param other The other totals.
+         * @return These totals.
+         */
+        private Totals merge(Totals other)
+        {
+            students += other.students;
+            results += other.results;
+            problems += other.problems;
+            placementSum += other.placementSum;
+            if (other.bestPlacement > 0 && (bestPlacement == 0 || other.bestPlacement < bestPlacement)) {
+                bestPlacement = other.bestPlacement;
+            }
+            return this;
+        }
+
+        /**
+         * Gets the number of students counted.
+         * @return The number of students.
+         */
+        public long getStudents()
+        {
+            return students;
+        }
+
+        /**
+         * Gets the number of results counted.
+         * @return The number of results.
+         */
+        public long getResults()
+        {
+            return results;
+        }
+
+        /**
+         * Gets the total number of problems solved.
+         * @return The total problems solved.
+         */
+        public long getProblems()
+        {
+            return problems;
+        }
+
+        /**
+         * Gets the best (lowest) placement.
+         * @return The best placement, or 0 if there are no results.
+         */
+        public int getBestPlacement()
+        {
+            return bestPlacement;
+        }
+
+        /**
+         * Gets the average number of problems solved per student.
+         * @return The average, or 0 if there are no students.
+         */
+        public double getAverageProblems()
+        {
+            return students == 0 ? 0 : (double) problems / students;
+        }
+
+        /**
+         * Gets the average number of results per student.
+         * @return The average, or 0 if there are no students.
+         */
+        public double getAverageResults()
+        {
+            return students == 0 ? 0 : (double) results / students;
+        }
+
+        /**
+         * Gets the average placement over all results.
+         * @return The average, or 0 if there are no results.
+         */
+        public double getAveragePlacement()
+        {
+            return results == 0 ? 0 : (double) placementSum / results;
+        }
+    }
+
+    /**
+     * Constructs a ParallelRoster object.
+     * @param pool The pool to run on, e.g. ForkJoinPool.commonPool().
+     * @param threshold The size below which work is not split, at least 2.
+     */
+    public ParallelRoster(ForkJoinPool pool, int threshold)
+    {
+        this.pool = pool;
+        this.threshold = Math.max(2, threshold);
+    }
+
+    /**
+     * Gets the instance shared by the whole program, running on the common pool.
+     * @return The shared instance.
+     */
+    public static ParallelRoster shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Gets the size below which work is not split.
+     * @return The threshold.
+     */
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * Sorts an array, keeping the order of items that compare equal.
+     * @param items The items to sort, in place.
+     * @param order The order to sort in.
+     * @param <T> The type of the items.
+     */
+    public <T> void sort(T[] items, Comparator<? super T> order)
+    {
+        if (items.length <= threshold) {
+            Arrays.sort(items, order);
+            return;
+        }
+        Object[] buffer = new Object[items.length];
+        pool.invoke(new SortTask<>(items, buffer, 0, items.length, false, order, threshold));
+    }
+
+    /**
+     * Sums up some students and all of their results.
+     * @param students The students.
+     * @return The totals.
+     */
+    public Totals total(Student[] students)
+    {
+        return run(new TotalTask(students, 0, students.length, threshold), students.length);
+    }
+
+    /**
+     * Sums up some students in groups, e.g. by level.
+     * @param students The students.
+     * @param key The group of a student.
+     * @param <K> The type of the groups.
+     * @return The totals of every group that has a student.
+     */
+    public <K> Map<K, Totals> totalBy(Student[] students, Function<Student, K> key)
+    {
+        return run(new GroupTask<>(students, 0, students.length, threshold, key), students.length);
+    }
+
+    /**
+     * Sums up the results of some students by competition.
+     * @param students The students.
+     * @return The totals of every competition, by competition ID. The number of students of a competition is the
+     * number of its results.
+     */
+    public Map<Integer, Totals> totalByCompetition(Student[] students)
+    {
+        return run(new GroupTask<Integer>(students, 0, students.length, threshold, null), students.length);
+    }
+
+    /**
+     * Runs a task, on the calling thread if it will not split.
+     * @param task The task.
+     * @param size The number of students of the task.
+     * @param <R> The type of the result.
+     * @return The result.
+     */
+    private <R> R run(RecursiveTask<R> task, int size)
+    {
+        return size <= threshold ? task.invoke() : pool.invoke(task);
+    }
+
+    /**
+     * Sorts a range of an array with the help of a buffer of the same size. The halves are sorted into the other
+     * array than the one the range should end up in, then merged back, so nothing is copied between levels.
+     * @param <T> The type of the items.
+     */
+    private static class SortTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final T[] items;
+        private final Object[] buffer;
+        private final int lo;
+        private final int hi;
+        private final boolean intoBuffer;
+        private final Comparator<? super T> order;
+        private final int threshold;
+
+        /**
+         * Constructs a SortTask object.
+         * @param items The array being sorted.
+         * @param buffer The buffer, as long as items.
+         * @param lo The start of the range.
+         * @param hi The end of the range, exclusive.
+         * @param intoBuffer true if the sorted range should end up in the buffer, false if in items.
+         * @param order The order to sort in.
+         * @param threshold The size below which the range is not split.
+         */
+        SortTask(T[] items, Object[] buffer, int lo, int hi, boolean intoBuffer, Comparator<? super T> order, int threshold)
+        {
+            this.items = items;
+            this.buffer = buffer;
+            this.lo = lo;
+            this.hi = hi;
+            this.intoBuffer = intoBuffer;
+            this.order = order;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (hi - lo <= threshold) {
+                Arrays.sort(items, lo, hi, order);
+                if (intoBuffer) {
+                    System.arraycopy(items, lo, buffer, lo, hi - lo);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new SortTask<>(items, buffer, lo, mid, !intoBuffer, order, threshold),
+                    new SortTask<>(items, buffer, mid, hi, !intoBuffer, order, threshold));
+            Object[] from = intoBuffer ? items : buffer;
+            Object[] to = intoBuffer ? buffer : items;
+            new MergeTask<>(from, to, lo, mid, mid, hi, lo, order, threshold).compute();
+        }
+    }
+
+    /**
+     * Merges two sorted runs of one array into another array, taking from the left run on ties.
+     * @param <T> The type of the items.
+     */
+    private static class MergeTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Object[] from;
+        private final Object[] to;
+        private final int leftLo;
+        private final int leftHi;
+        private final int rightLo;
+        private final int rightHi;
+        private final int out;
+        private final Comparator<? super T> order;
+        private final int threshold;
+
+        /**
+         * Constructs a MergeTask object.
+         * @param from The array holding the runs.
+         * @param to The array to merge into.
+         * @param leftLo The start of the left run.
+         * @param leftHi The end of the left run, exclusive.
+         * @param rightLo The start of the right run.
+         * @param rightHi The end of the right run, exclusive.
+         * @param out Where the merged items start in to.
+         * @param order The order of the runs.
+         * @param threshold The size below which the merge is not split.
+         */
+        MergeTask(Object[] from, Object[] to, int leftLo, int leftHi, int rightLo, int rightHi, int out, Comparator<? super T> order, int threshold)
+        {
+            this.from = from;
+            this.to = to;
+            this.leftLo = leftLo;
+            this.leftHi = leftHi;
+            this.rightLo = rightLo;
+            this.rightHi = rightHi;
+            this.out = out;
+            this.order = order;
+            this.threshold = threshold;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void compute()
+        {
+            int leftSize = leftHi - leftLo;
+            int rightSize = rightHi - rightLo;
+            if (leftSize + rightSize <= threshold) {
+                int l = leftLo;
+                int r = rightLo;
+                int o = out;
+                while (l < leftHi && r < rightHi) {
+                    to[o++] = order.compare((T) from[r], (T) from[l]) < 0 ? from[r++] : from[l++];
+                }
+                System.arraycopy(from, l, to, o, leftHi - l);
+                System.arraycopy(from, r, to, o + leftHi - l, rightHi - r);
+                return;
+            }
+
+            // Everything before the split points goes before everything after them. Items equal to a left pivot
+            // stay after it in the right run, and items equal to a right pivot stay before it in the left run.
+            int leftSplit;
+            int rightSplit;
+            if (leftSize >= rightSize) {
+                leftSplit = (leftLo + leftHi) >>> 1;
+                rightSplit = search(rightLo, rightHi, (T) from[leftSplit], false);
+            } else {
+                rightSplit = (rightLo + rightHi) >>> 1;
+                leftSplit = search(leftLo, leftHi, (T) from[rightSplit], true);
+            }
+            int middle = out + (leftSplit - leftLo) + (rightSplit - rightLo);
+            invokeAll(new MergeTask<>(from, to, leftLo, leftSplit, rightLo, rightSplit, out, order, threshold),
+                    new MergeTask<>(from, to, leftSplit, leftHi, rightSplit, rightHi, middle, order, threshold));
+        }
+
+        /**
+         * Finds where an item would go in a sorted run.
+         * @param lo The start of the run.
+         * @param hi The end of the run, exclusive.
+         * @param key The item.
+         * @param afterEqual true to go after items equal to key, false to go before them.
+         * @return The position.
+         */
+        @SuppressWarnings("unchecked")
+        private int search(int lo, int hi, T key, boolean afterEqual)
+        {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = order.compare((T) from[mid], key);
+                if (c < 0 || (afterEqual && c == 0)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * Sums up a range of students.
+     */
+    private static class TotalTask extends RecursiveTask<Totals> {
+        private static final long serialVersionUID = 1L;
+        private final Student[] students;
+        private final int lo;
+        private final int hi;
+        private final int threshold;
+
+        /**
+         * Constructs a TotalTask object.
+         * @param students The students.
+         * @param lo The start of the range.
+         * @param hi The end of the range, exclusive.
+         * @param threshold The size below which the range is not split.
+         */
+        TotalTask(Student[] students, int lo, int hi, int threshold)
+        {
+            this.students = students;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Totals compute()
+        {
+            if (hi - lo <= threshold) {
+                Totals totals = new Totals();
+                for (int i = lo; i < hi; i++) {
+                    totals.addStudent(students[i]);
+                }
+                return totals;
+            }
+            int mid = (lo + hi) >>> 1;
+            TotalTask right = new TotalTask(students, mid, hi, threshold);
+            right.fork();
+            Totals left = new TotalTask(students, lo, mid, threshold).compute();
+            return left.merge(right.join());
+        }
+    }
+
+    /**
+     * Sums up a range of students in groups, or their results by competition when there is no key.
+     * @param <K> The type of the groups.
+     */
+    private static class GroupTask<K> extends RecursiveTask<Map<K, Totals>> {
+        private static final long serialVersionUID = 1L;
+        private final Student[] students;
+        private final int lo;
+        private final int hi;
+        private final int threshold;
+        private final Function<Student, K> key;
+
+        /**
+         * Constructs a GroupTask object.
+         * @param students The students.
+         * @param lo The start of the range.
+         * @param hi The end of the range, exclusive.
+         * @param threshold The size below which the range is not split.
+         * @param key The group of a student, or null to group results by competition ID.
+         */
+        GroupTask(Student[] students, int lo, int hi, int threshold, Function<Student, K> key)
+        {
+            this.students = students;
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+            this.key = key;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Map<K, Totals> compute()
+        {
+            if (hi - lo <= threshold) {
+                Map<K, Totals> groups = new HashMap<>();
+                for (int i = lo; i < hi; i++) {
+                    if (key != null) {
+                        groups.computeIfAbsent(key.apply(students[i]), k -> new Totals()).addStudent(students[i]);
+                    } else {
+                        for (Competition comp : students[i].getCompetitions()) {
+                            groups.computeIfAbsent((K) Integer.valueOf(comp.getId()), k -> new Totals()).addResult(comp);
+                        }
+                    }
+                }
+                return groups;
+            }
+            int mid = (lo + hi) >>> 1;
+            GroupTask<K> right = new GroupTask<>(students, mid, hi, threshold, key);
+            right.fork();
+            Map<K, Totals> left = new GroupTask<>(students, lo, mid, threshold, key).compute();
+            right.join().forEach((group, totals) -> left.merge(group, totals, Totals::merge));
+            return left;
+        }
+    }
+}
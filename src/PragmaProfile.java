@@ -0,0 +1,69 @@
+import java.sql.*;
+
+/**
+ * The PragmaProfile enum holds named sets of SQLite settings for how the database will be used. The journal mode is
+ * a setting of the database file and is only changed through the write connection; the other settings apply to every
+ * connection.
+ */
+public enum PragmaProfile {
+    /** Full durability with a rollback journal, the SQLite defaults. Every commit is synced to disk. */
+    INTERACTIVE("DELETE", "FULL", -2000, 0),
+    /** For large imports: write-ahead log without syncing, a large page cache and memory-mapped reads. */
+    BULK("WAL", "OFF", -262144, 1L << 30),
+    /** For mostly reading while writes stay durable: write-ahead log so readers never block, and larger caches. */
+    READ_MOSTLY("WAL", "NORMAL", -65536, 1L << 28),
+    /** For one-off reads such as reports and exports: larger caches, and the journal mode of the file is left as is. */
+    REPORT(null, "FULL", -65536, 1L << 28);
+
+    private final String journalMode;
+    private final String synchronous;
+    private final int cacheSize;
+    private final long mmapSize;
+
+    /**
+     * Constructs a PragmaProfile.
+     * @param journalMode The journal mode of the database file, or null to leave it as it is.
+     * @param synchronous How often SQLite syncs to disk.
+     * @param cacheSize The page cache size, in pages if positive or in KiB if negative.
+     * @param mmapSize The number of bytes of the file read through memory mapping.
+     */
+    PragmaProfile(String journalMode, String synchronous, int cacheSize, long mmapSize)
+    {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+    }
+
+    /**
+     * Gets the journal mode of the profile.
+     * @return The journal mode, e.g. "WAL", or null if the profile leaves the mode of the file as it is.
+     */
+    public String getJournalMode()
+    {
+        return journalMode;
+    }
+
+    /**
+     * Applies the profile to a connection. Must be called outside of a transaction.
+     * @param connection The connection to configure.
+     * @param setJournalMode true to also set the journal mode, which should only be done on the write connection.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void apply(Connection connection, boolean setJournalMode) throws SQLException
+    {
+        try (Statement stmt = connection.createStatement()) {
+            if (setJournalMode && journalMode != null) {
+                try (ResultSet rs = stmt.executeQuery("PRAGMA journal_mode = " + journalMode)) {
+                    // Leaving WAL needs every other connection to be closed, so the old mode may stay
+                    if (rs.next() && !rs.getString(1).equalsIgnoreCase(journalMode)) {
+                        System.out.println("Journal mode stays " + rs.getString(1) + " instead of " + journalMode + " while other connections are open.");
+                    }
+                }
+            }
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.awt.BorderLayout;
+import java.util.concurrent.CompletableFuture;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+
+/**
+ * The ProgressDialog class shows the progress of a background task in a small window that does not block the rest
+ * of the program, with a button to cancel the task. It can be used from any thread; the window itself is only
+ * touched on the Swing event thread.
+ */
+public class ProgressDialog implements DataExporter.ProgressListener {
+    private final String title;
+    private JDialog dialog;
+    private JProgressBar bar;
+    private JLabel label;
+
+    /**
+     * Constructs a ProgressDialog object. The window is shown by attach.
+     * @param title The title of the window, e.g. "Exporting".
+     */
+    public ProgressDialog(String title)
+    {
+        this.title = title;
+    }
+
+    /**
+     * Shows the window until a task finishes.
+     * @param future The future of the task.
+     * @param cancellable true to show a button that cancels the task.
+     */
+    public void attach(CompletableFuture<?> future, boolean cancellable)
+    {
+        SwingUtilities.invokeLater(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            bar = new JProgressBar();
+            bar.setIndeterminate(true);
+            bar.setStringPainted(false);
+            label = new JLabel(title + "...");
+
+            JPanel panel = new JPanel(new BorderLayout(8, 8));
+            panel.setBorder(BorderFactory.createEmptyBorder(12, 12, 12, 12));
+            panel.add(label, BorderLayout.NORTH);
+            panel.add(bar, BorderLayout.CENTER);
+            if (cancellable) {
+                JButton cancel = new JButton("Cancel");
+                cancel.addActionListener(e -> {
+                    cancel.setEnabled(false);
+                    label.setText("Cancelling...");
+                    future.cancel(true);
+                });
+                panel.add(cancel, BorderLayout.SOUTH);
+            }
+
+            dialog = new JDialog((JDialog) null, title, false);
+            dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+            dialog.setContentPane(panel);
+            dialog.pack();
+            dialog.setSize(Math.max(dialog.getWidth(), 320), dialog.getHeight());
+            dialog.setLocationRelativeTo(null);
+            dialog.setVisible(true);
+        });
+        future.whenComplete((value, error) -> SwingUtilities.invokeLater(() -> {
+            if (dialog != null) {
+                dialog.dispose();
+            }
+        }));
+    }
+
+    /**
+     * Shows how far the task has got.
+     * @param done The amount of work done.
+     * @param total The total amount of work, or -1 if it is not known.
+     */
+    @Override
+    public void onProgress(long done, long total)
+    {
+        SwingUtilities.invokeLater(() -> {
+            if (bar == null) {
+                return;
+            }
+            if (total > 0) {
+                // The bar only holds ints, so it counts in thousandths
+                bar.setIndeterminate(false);
+                bar.setMaximum(1000);
+                bar.setValue((int) (1000 * Math.min(done, total) / total));
+                label.setText(String.format("%s: %,d of %,d", title, done, total));
+            } else {
+                label.setText(String.format("%s: %,d", title, done));
+            }
+        });
+    }
+}
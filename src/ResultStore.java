@@ -0,0 +1,277 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The ResultStore class holds loaded results as parallel arrays of ints instead of one Competition object per result.
+ * Results are grouped by student, with an offsets array giving the range of each student (compressed sparse rows),
+ * and a second offsets array over a permutation of the results groups them by competition. Every competition name is
+ * stored once.
+ *
+ * The store does not change once built. Students read their results through a list view of the store and copy them
+ * into a list of their own the first time they change.
+ */
+public class ResultStore {
+    private final int[] competitionIds;
+    private final String[] competitionNames;
+    private final HashMap<Integer, Integer> competitionIndexes;
+    private final int[] studentIds;
+    // Results of student s are at studentOffsets[s] until studentOffsets[s + 1]
+    private final int[] studentOffsets;
+    private final int[] resultStudent;
+    private final int[] resultCompetition;
+    private final int[] problemsSolved;
+    private final int[] placement;
+    // Results of competition c are competitionResults[competitionOffsets[c]] until competitionOffsets[c + 1]
+    private final int[] competitionOffsets;
+    private final int[] competitionResults;
+
+    /**
+     * Receives the results of a competition one at a time.
+     */
+    public interface ResultVisitor {
+        /**
+         * Receives one result.
+         * @param studentId The ID of the student.
+         * @param problemsSolved The number of problems solved.
+         * @param placement The placement in the competition.
+         */
+        void visit(int studentId, int problemsSolved, int placement);
+    }
+
+    /**
+     * Builds a ResultStore. Competitions are added first, then each student followed by their results.
+     */
+    public static class Builder {
+        private int[] competitionIds = new int[16];
+        private String[] competitionNames = new String[16];
+        private HashMap<Integer, Integer> competitionIndexes = new HashMap<>();
+        private int competitionCount;
+        private int[] studentIds = new int[16];
+        private int[] studentOffsets = new int[17];
+        private int studentCount;
+        private int[] resultStudent = new int[16];
+        private int[] resultCompetition = new int[16];
+        private int[] problemsSolved = new int[16];
+        private int[] placement = new int[16];
+        private int resultCount;
+
+        /**
+         * Adds a competition.
+         * @param id The ID of the competition.
+         * @param name The name of the competition.
+         * @return The index of the competition in the store.
+         */
+        public int addCompetition(int id, String name)
+        {
+            Integer existing = competitionIndexes.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            if (competitionCount == competitionIds.length) {
+                competitionIds = Arrays.copyOf(competitionIds, competitionCount * 2);
+                competitionNames = Arrays.copyOf(competitionNames, competitionCount * 2);
+            }
+            competitionIds[competitionCount] = id;
+            competitionNames[competitionCount] = name;
+            competitionIndexes.put(id, competitionCount);
+            return competitionCount++;
+        }
+
+        /**
+         * Adds a student. Results added afterwards belong to this student.
+         * @param id The ID of the student.
+         * @return The index of the student in the store.
+         */
+        public int addStudent(int id)
+        {
+            if (studentCount == studentIds.length) {
+                studentIds = Arrays.copyOf(studentIds, studentCount * 2);
+                studentOffsets = Arrays.copyOf(studentOffsets, studentCount * 2 + 1);
+            }
+            studentIds[studentCount] = id;
+            studentOffsets[studentCount] = resultCount;
+            return studentCount++;
+        }
+
+        /**
+         * Adds a result of the last added student.
+         * @param competitionId The ID of the competition. A competition that was not added is added without a name.
+         * @param problems The number of problems solved.
+         * @param place The placement in the competition.
+         */
+        public void addResult(int competitionId, int problems, int place)
+        {
+            if (studentCount == 0) {
+                throw new IllegalStateException("A result needs a student to belong to.");
+            }
+            if (resultCount == resultStudent.length) {
+                int capacity = resultCount * 2;
+                resultStudent = Arrays.copyOf(resultStudent, capacity);
+                resultCompetition = Arrays.copyOf(resultCompetition, capacity);
+                problemsSolved = Arrays.copyOf(problemsSolved, capacity);
+                placement = Arrays.copyOf(placement, capacity);
+            }
+            resultStudent[resultCount] = studentCount - 1;
+            resultCompetition[resultCount] = addCompetition(competitionId, null);
+            problemsSolved[resultCount] = problems;
+            placement[resultCount] = place;
+            resultCount++;
+        }
+
+        /**
+         * Builds the store.
+         * @return The store holding everything added.
+         */
+        public ResultStore build()
+        {
+            studentOffsets[studentCount] = resultCount;
+            return new ResultStore(this);
+        }
+    }
+
+    /**
+     * Constructs a ResultStore object from a builder, trimming the arrays and grouping the results by competition
+     * with a counting sort, which keeps them in student order within each competition.
+     * @param b The builder.
+     */
+    private ResultStore(Builder b)
+    {
+        competitionIds = Arrays.copyOf(b.competitionIds, b.competitionCount);
+        competitionNames = Arrays.copyOf(b.competitionNames, b.competitionCount);
+        competitionIndexes = b.competitionIndexes;
+        studentIds = Arrays.copyOf(b.studentIds, b.studentCount);
+        studentOffsets = Arrays.copyOf(b.studentOffsets, b.studentCount + 1);
+        resultStudent = Arrays.copyOf(b.resultStudent, b.resultCount);
+        resultCompetition = Arrays.copyOf(b.resultCompetition, b.resultCount);
+        problemsSolved = Arrays.copyOf(b.problemsSolved, b.resultCount);
+        placement = Arrays.copyOf(b.placement, b.resultCount);
+
+        competitionOffsets = new int[competitionIds.length + 1];
+        for (int c : resultCompetition) {
+            competitionOffsets[c + 1]++;
+        }
+        for (int c = 0; c < competitionIds.length; c++) {
+            competitionOffsets[c + 1] += competitionOffsets[c];
+        }
+        competitionResults = new int[resultCompetition.length];
+        int[] next = Arrays.copyOf(competitionOffsets, competitionIds.length);
+        for (int r = 0; r < resultCompetition.length; r++) {
+            competitionResults[next[resultCompetition[r]]++] = r;
+        }
+    }
+
+    /**
+     * Gets the number of students in the store.
+     * @return The number of students.
+     */
+    public int getStudentCount()
+    {
+        return studentIds.length;
+    }
+
+    /**
+     * Gets the number of results in the store.
+     * @return The number of results.
+     */
+    public int getResultCount()
+    {
+        return resultStudent.length;
+    }
+
+    /**
+     * Gets the results of a student as a list that cannot be modified. Each element is created when it is read.
+     * @param student The index of the student.
+     * @return The results of the student, in the order they were added.
+     */
+    public List<Competition> resultsOf(int student)
+    {
+        int from = studentOffsets[student];
+        int to = studentOffsets[student + 1];
+        return new AbstractList<Competition>() {
+            @Override
+            public Competition get(int i)
+            {
+                if (i < 0 || i >= to - from) {
+                    throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + (to - from));
+                }
+                int r = from + i;
+                int c = resultCompetition[r];
+                return new Competition(competitionIds[c], competitionNames[c], problemsSolved[r], placement[r]);
+            }
+
+            @Override
+            public int size()
+            {
+                return to - from;
+            }
+        };
+    }
+
+    /**
+     * Gets the total number of problems solved by a student.
+     * @param student The index of the student.
+     * @return The total number of problems solved.
+     */
+    public int totalProblems(int student)
+    {
+        int total = 0;
+        for (int r = studentOffsets[student]; r < studentOffsets[student + 1]; r++) {
+            total += problemsSolved[r];
+        }
+        return total;
+    }
+
+    /**
+     * Gets the best (lowest) placement of a student.
+     * @param student The index of the student.
+     * @return The best placement, or 0 if the student has no results.
+     */
+    public int bestPlacement(int student)
+    {
+        int from = studentOffsets[student];
+        int to = studentOffsets[student + 1];
+        if (from == to) {
+            return 0;
+        }
+        int best = placement[from];
+        for (int r = from + 1; r < to; r++) {
+            best = Math.min(best, placement[r]);
+        }
+        return best;
+    }
+
+    /**
+     * Gets the sum of the placements of a student.
+     * @param student The index of the student.
+     * @return The sum of the placements.
+     */
+    public long placementSum(int student)
+    {
+        long sum = 0;
+        for (int r = studentOffsets[student]; r < studentOffsets[student + 1]; r++) {
+            sum += placement[r];
+        }
+        return sum;
+    }
+
+    /**
+     * Hands every result of a competition to a visitor, in student order.
+     * @param competitionId The ID of the competition.
+     * @param visitor The visitor to receive the results.
+     * @return The number of results visited, 0 if the competition is not in the store.
+     */
+    public int forEachResultOf(int competitionId, ResultVisitor visitor)
+    {
+        Integer c = competitionIndexes.get(competitionId);
+        if (c == null) {
+            return 0;
+        }
+        for (int i = competitionOffsets[c]; i < competitionOffsets[c + 1]; i++) {
+            int r = competitionResults[i];
+            visitor.visit(studentIds[resultStudent[r]], problemsSolved[r], placement[r]);
+        }
+        return competitionOffsets[c + 1] - competitionOffsets[c];
+    }
+}
@@ -1,72 +1,166 @@
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The SpreadsheetParser class is responsible for parsing a CSV file and adding the data to the database.
  */
 public class SpreadsheetParser {
+    private static final Metrics.Histogram READ_TIME = Metrics.shared().histogram("parser.read.ns");
+    private static final Metrics.Counter ROWS_PARSED = Metrics.shared().counter("parser.rows");
+    private static final Metrics.Counter ROWS_REJECTED = Metrics.shared().counter("parser.rejected");
+    private static final Metrics.Counter BYTES_PARSED = Metrics.shared().counter("parser.bytes");
+    private static final Metrics.Counter PARSE_NANOS = Metrics.shared().counter("parser.parseNanos");
+
+    static {
+        Metrics.shared().gauge("parser.bytesPerSecond", () -> (long) (BYTES_PARSED.getCount() * 1e9 / Math.max(1, PARSE_NANOS.getCount())));
+    }
+
     private DatabaseHandler db;
+    private int chunkSize;
 
     /**
      * Constructs a SpreadsheetParser object with the specified DatabaseHandler.
      * @param dbHandler The DatabaseHandler to interact with the database.
      */
     public SpreadsheetParser(DatabaseHandler dbHandler)
+    {
+        this(dbHandler, DatabaseHandler.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a SpreadsheetParser object with the specified DatabaseHandler and commit chunk size.
+     * @param dbHandler The DatabaseHandler to interact with the database.
+     * @param chunkSize The number of rows to parse and commit at a time, or 0 for DatabaseHandler.DEFAULT_CHUNK_SIZE.
+     */
+    public SpreadsheetParser(DatabaseHandler dbHandler, int chunkSize)
     {
         this.db = dbHandler;
+        this.chunkSize = chunkSize > 0 ? chunkSize : DatabaseHandler.DEFAULT_CHUNK_SIZE;
     }
 
     /**
-     * Reads the specified CSV file and adds the data to the database.
+     * Receives the rows of a spreadsheet as they are parsed.
+     */
+    public interface RowSink {
+        /**
+         * Accepts a batch of parsed rows.
+         * @param rows The parsed rows. The list is not reused by the parser.
+         * @throws IOException if the rows could not be handed on.
+         */
+        void accept(List<TeamResult> rows) throws IOException;
+    }
+
+    /**
+     * Reads the specified CSV file and adds the data to the database while it is parsed, one batched transaction per
+     * chunk, so only one chunk of rows is held in memory at a time.
      * @param file The CSV file to read.
      * @param nameOfComp The name of the competition.
+     * @return The number of results added to the database.
      * @throws FileNotFoundException if the specified file is not found.
+     * @throws IOException if the file could not be read or the rows could not be written. The chunks committed before
+     * the failure stay in the database.
      */
-    public void read(File file, String nameOfComp) throws FileNotFoundException 
+    public int read(File file, String nameOfComp) throws IOException
     {
-        Scanner scn = new Scanner(file);
-        boolean isAdvanced = false;
-        boolean isNovice = false;
+        long start = System.nanoTime();
+        int[] counts = new int[2]; // Rows parsed and results added
+        int rejected = parse(file, chunkSize, rows -> {
+            try {
+                counts[1] += db.addTeamResults(nameOfComp, rows, 0);
+            } catch (SQLException e) {
+                throw new IOException("Failed to write rows of " + file.getName() + " after " + counts[1] + " results were added: " + e.getMessage(), e);
+            }
+            counts[0] += rows.size();
+        });
 
-        while(scn.hasNextLine()) {
-            String line = scn.nextLine().trim();
+        READ_TIME.recordSince(start);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Loaded %d rows (%d results, %d rejected) from %s in %.2f s (%.0f rows/sec)%n", counts[0], counts[1], rejected, file.getName(), seconds, counts[0] / Math.max(seconds, 1e-9));
+        return counts[1];
+    }
 
-            // Starts reading the advanced students after a "#" is found
-            if (line.contains("#")) {
-                isAdvanced = true;
-                isNovice = false;
-                continue;
-            }
+    /**
+     * Parses the specified CSV file without touching the database. Safe to call from several threads at once.
+     * @param file The CSV file to read.
+     * @param batchSize The number of rows to hand to the sink at a time, or 0 to hand over all rows at the end.
+     * @param sink The receiver of the parsed rows.
+     * @return The number of rows that were rejected as invalid.
+     * @throws FileNotFoundException if the specified file is not found.
+     * @throws IOException if the file could not be read or the sink failed.
+     */
+    public int parse(File file, int batchSize, RowSink sink) throws IOException
+    {
+        long start = System.nanoTime();
+        ArrayList<TeamResult> rows = new ArrayList<>();
+        int parsed = 0;
+        int rejected = 0;
+        boolean isAdvanced = false;
+        boolean isNovice = false;
 
-            // Starts reading the novice students after a "~" is found
-            if (line.contains("~")) {
-                isAdvanced = false;
-                isNovice = true;
-                continue;
-            }
+        try (CsvTokenizer csv = new CsvTokenizer(file)) {
+            while (csv.nextRecord()) {
+                // Starts reading the advanced students after a "#" is found
+                if (csv.hasMarker('#')) {
+                    isAdvanced = true;
+                    isNovice = false;
+                    continue;
+                }
 
-            if (isAdvanced || isNovice) {
-                String[] data = line.split(",");
-                if (data.length < 5) continue; // Skipping the invalid rows, not a student
-                String member1 = data[3].trim();
-                String email1 = data[4].trim();
-                if (member1.isEmpty() && email1.isEmpty()) {
+                // Starts reading the novice students after a "~" is found
+                if (csv.hasMarker('~')) {
                     isAdvanced = false;
-                    isNovice = false;
+                    isNovice = true;
                     continue;
                 }
-                
-                String member2 = data[5].trim();
-                String email2 = data[6].trim();
-                String member3 = data[7].trim();
-                String email3 = data[8].trim();
-                int problemsSolved = Integer.parseInt(data[9].trim());
-                int placement = Integer.parseInt(data[10].trim());
-
-                db.addStudentAndCompetition(isAdvanced ? "Advanced" : "Novice", member1, email1, member2, email2, member3, email3, problemsSolved, placement, nameOfComp);
+
+                if (isAdvanced || isNovice) {
+                    // Trailing empty fields do not count, so rows of bare commas are skipped
+                    int fields = csv.fieldCount();
+                    while (fields > 0 && csv.isEmpty(fields - 1)) fields--;
+
+                    if (fields < 5) continue; // Skipping the invalid rows, not a student
+                    if (csv.isBlank(3) && csv.isBlank(4)) {
+                        isAdvanced = false;
+                        isNovice = false;
+                        continue;
+                    }
+
+                    if (fields < 11) {
+                        rejected++;
+                        continue;
+                    }
+
+                    int problemsSolved;
+                    int placement;
+                    try {
+                        problemsSolved = csv.intField(9);
+                        placement = csv.intField(10);
+                    } catch (NumberFormatException e) {
+                        rejected++;
+                        continue;
+                    }
+
+                    parsed++;
+                    rows.add(new TeamResult(isAdvanced ? Level.ADVANCED : Level.NOVICE, csv.field(3), csv.field(4), csv.field(5), csv.field(6), csv.field(7), csv.field(8), problemsSolved, placement));
+                    if (batchSize > 0 && rows.size() >= batchSize) {
+                        sink.accept(rows);
+                        rows = new ArrayList<>(batchSize);
+                    }
+                }
             }
         }
-        scn.close();
+
+        if (!rows.isEmpty()) {
+            sink.accept(rows);
+        }
+        ROWS_PARSED.add(parsed);
+        ROWS_REJECTED.add(rejected);
+        BYTES_PARSED.add(file.length());
+        PARSE_NANOS.add(System.nanoTime() - start);
+        return rejected;
     }
 }
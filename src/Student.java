@@ -1,4 +1,5 @@
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -8,9 +9,16 @@ public class Student {
   private int id;
   private String firstName;
   private String lastName;
+  private String fullName;
   private String email;
-  private String level; // "Advanced" or "Novice"
+  private Level level;
   private List<Competition> competitions;
+  // false while competitions is a read-only view of a ResultStore
+  private boolean ownsCompetitions = true;
+  // Aggregates over competitions, kept up to date as competitions are added and removed
+  private int totalProb;
+  private int bestPlacement;
+  private long placementSum;
 
   /**
    * Constructs a Student object.
@@ -19,18 +27,46 @@ public class Student {
    * @param firstName The first name of the student.
    * @param lastName The last name of the student.
    * @param email The email of the student.
-   * @param level The level of the student (e.g., "Advanced" or "Novice").
+   * @param level The level of the student.
    */
-  public Student(int id, String firstName, String lastName, String email, String level) 
+  public Student(int id, String firstName, String lastName, String email, Level level) 
   {
     this.id = id;
     this.firstName = firstName;
     this.lastName = lastName;
+    this.fullName = firstName + " " + lastName;
     this.email = email;
     this.level = level;
     this.competitions = new ArrayList<>();
   }
 
+  /**
+   * Reads the student's competitions from a result store instead of keeping a list of them. The competitions are
+   * copied into a list of the student's own the first time they change.
+   *
+   * @param store The store holding the results.
+   * @param index The index of the student in the store.
+   */
+  public void useResults(ResultStore store, int index)
+  {
+    this.competitions = store.resultsOf(index);
+    this.ownsCompetitions = false;
+    totalProb = store.totalProblems(index);
+    bestPlacement = store.bestPlacement(index);
+    placementSum = store.placementSum(index);
+  }
+
+  /**
+   * Copies the competitions out of the result store, so they can be changed.
+   */
+  private void ownCompetitions()
+  {
+    if (!ownsCompetitions) {
+      competitions = new ArrayList<>(competitions);
+      ownsCompetitions = true;
+    }
+  }
+
   /**
    * Adds a competition to the student's list of competitions.
    *
@@ -38,7 +74,36 @@ public class Student {
    */
   public void addCompetition(Competition competition)
   {
+    ownCompetitions();
     this.competitions.add(competition);
+    totalProb += competition.getProblemsSolved();
+    placementSum += competition.getPlacement();
+    if (competitions.size() == 1 || competition.getPlacement() < bestPlacement) {
+      bestPlacement = competition.getPlacement();
+    }
+  }
+
+  /**
+   * Removes every result of a competition from the student's list of competitions.
+   *
+   * @param competitionId The ID of the competition to remove.
+   */
+  public void removeCompetition(int competitionId)
+  {
+    ownCompetitions();
+    if (this.competitions.removeIf(c -> c.getId() == competitionId)) {
+      totalProb = 0;
+      placementSum = 0;
+      bestPlacement = 0;
+      for (int i = 0; i < competitions.size(); i++) {
+        Competition c = competitions.get(i);
+        totalProb += c.getProblemsSolved();
+        placementSum += c.getPlacement();
+        if (i == 0 || c.getPlacement() < bestPlacement) {
+          bestPlacement = c.getPlacement();
+        }
+      }
+    }
   }
 
   /**
@@ -58,9 +123,29 @@ public class Student {
    */
   public String getName() 
   {
-    return firstName + " " + lastName;
+    return fullName;
   }
   
+  /**
+   * Gets the first name of the student.
+   *
+   * @return The first name of the student.
+   */
+  public String getFirstName()
+  {
+    return firstName;
+  }
+
+  /**
+   * Gets the last name of the student.
+   *
+   * @return The last name of the student.
+   */
+  public String getLastName()
+  {
+    return lastName;
+  }
+
   /**
    * Gets the email of the student.
    *
@@ -76,7 +161,7 @@ public class Student {
    *
    * @return The level of the student.
    */
-  public String getLevel()
+  public Level getLevel()
   {
     return level;
   }
@@ -84,11 +169,21 @@ public class Student {
   /**
    * Gets the list of competitions the student has participated in.
    *
-   * @return The list of competitions.
+   * @return The list of competitions, which cannot be modified.
    */
   public List<Competition> getCompetitions()
   {
-    return competitions;
+    return Collections.unmodifiableList(competitions);
+  }
+
+  /**
+   * Gets the number of competitions the student has participated in.
+   *
+   * @return The number of competitions.
+   */
+  public int getCompetitionCount()
+  {
+    return competitions.size();
   }
 
   /**
@@ -98,12 +193,27 @@ public class Student {
    */
   public int getTotalProb()
   {
-    int total = 0;
-    for (Competition c : competitions) {
-      total += c.getProblemsSolved();
-    }
+    return totalProb;
+  }
 
-    return total;
+  /**
+   * Gets the best (lowest) placement of the student across all competitions.
+   *
+   * @return The best placement, or 0 if the student has no competitions.
+   */
+  public int getBestPlacement()
+  {
+    return bestPlacement;
+  }
+
+  /**
+   * Gets the average placement of the student across all competitions.
+   *
+   * @return The average placement, or 0 if the student has no competitions.
+   */
+  public double getAveragePlacement()
+  {
+    return competitions.isEmpty() ? 0 : (double) placementSum / competitions.size();
   }
 
   /**
@@ -115,7 +225,7 @@ public class Student {
   public int compareToProb(Object o)
   {
     Student s = (Student) o;
-    return this.getTotalProb() - s.getTotalProb();
+    return this.totalProb - s.totalProb;
   }
   
   /**
@@ -126,8 +236,24 @@ public class Student {
    */
   public boolean equals(Object obj)
   {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Student)) {
+      return false;
+    }
     Student s = (Student) obj;
 
-    return this.getName().equals(s.getName());
+    return this.fullName.equals(s.fullName);
+  }
+
+  /**
+   * Gets the hash code of the student, which is based on the name like equals.
+   *
+   * @return The hash code of the student.
+   */
+  public int hashCode()
+  {
+    return fullName.hashCode();
   }
 }
@@ -0,0 +1,1003 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * The StudentQuery class describes which students to get, in what order and which of their fields, e.g. advanced
+ * students with at least 3 competitions, most problems solved first:
+ *
+ *   new StudentQuery()
+ *       .where(StudentQuery.eq(Field.LEVEL, Level.ADVANCED))
+ *       .where(StudentQuery.ge(Field.COMPETITIONS, 3))
+ *       .orderBy(Field.PROBLEMS, true)
+ *       .select(Field.NAME, Field.PROBLEMS, Field.COMPETITIONS)
+ *
+ * A query is run by DataHandler.query, which decides how: by walking a leaderboard index when the order is one of
+ * the leaderboard orders, by scanning the loaded roster, or, when nothing is loaded, as one query against the
+ * student_stats table. Every way gives the same rows. Ties in the order are broken by the lower id.
+ */
+public class StudentQuery {
+    /** The number of students read from a leaderboard index at a time. */
+    private static final int INDEX_BATCH = 256;
+
+    private static final Metrics.Counter PLANNED_INDEX = Metrics.shared().counter("query.plan.index");
+    private static final Metrics.Counter PLANNED_SCAN = Metrics.shared().counter("query.plan.scan");
+    private static final Metrics.Counter PLANNED_SQL = Metrics.shared().counter("query.plan.sql");
+
+    /**
+     * The fields of a student that can be filtered, ordered and selected.
+     */
+    public enum Field {
+        ID("st.student_id"),
+        NAME("s.firstname || ' ' || s.lastname"),
+        FIRST_NAME("s.firstname"),
+        LAST_NAME("s.lastname"),
+        EMAIL("s.email"),
+        LEVEL("s.level"),
+        PROBLEMS("st.total_problems"),
+        COMPETITIONS("st.competitions"),
+        BEST_PLACEMENT("st.best_placement");
+
+        private final String sql;
+
+        /**
+         * Constructs a Field.
+         * @param sql The expression of the field over student_stats st JOIN students s.
+         */
+        Field(String sql)
+        {
+            this.sql = sql;
+        }
+
+        /**
+         * Gets the expression of the field in SQL.
+         * @return The expression, over student_stats st JOIN students s.
+         */
+        public String getSql()
+        {
+            return sql;
+        }
+
+        /**
+         * Gets the value of the field of a loaded student.
+         * @param student The student.
+         * @return The value: a String, an Integer, or a Level for LEVEL.
+         */
+        public Object of(Student student)
+        {
+            switch (this) {
+                case ID: return student.getId();
+                case NAME: return student.getName();
+                case FIRST_NAME: return student.getFirstName();
+                case LAST_NAME: return student.getLastName();
+                case EMAIL: return student.getEmail();
+                case LEVEL: return student.getLevel();
+                case PROBLEMS: return student.getTotalProb();
+                case COMPETITIONS: return student.getCompetitionCount();
+                default: return student.getBestPlacement();
+            }
+        }
+
+        /**
+         * Converts a value to the form stored in the database.
+         * @param value The value, as of returns it.
+         * @return The value to bind to a ? parameter.
+         */
+        private Object toSql(Object value)
+        {
+            return value instanceof Level ? ((Level) value).getCode() : value;
+        }
+
+        /**
+         * Reads the value of the field from a result row.
+         * @param rs The result set, on the row.
+         * @param column The column of the field, from 1.
+         * @return The value, in the same form as of returns it.
+         * @throws SQLException if a database access error occurs.
+         */
+        private Object read(ResultSet rs, int column) throws SQLException
+        {
+            switch (this) {
+                case NAME:
+                case FIRST_NAME:
+                case LAST_NAME:
+                case EMAIL:
+                    return rs.getString(column);
+                case LEVEL:
+                    return Level.fromCode(rs.getInt(column));
+                default:
+                    return rs.getInt(column);
+            }
+        }
+    }
+
+    /**
+     * How a query is run.
+     */
+    public enum Plan {
+        /** Walk the leaderboard index in rank order, stopping once enough students matched. */
+        INDEX,
+        /** Scan the loaded roster, keeping only the best offset + limit matches when there is a limit. */
+        SCAN,
+        /** One query against the student_stats table, read a row at a time. */
+        SQL
+    }
+
+    /**
+     * A condition on students, that can be tested on a loaded student or written as SQL.
+     */
+    public abstract static class Predicate {
+        /**
+         * Tests a loaded student.
+         * @param student The student.
+         * @return true if the student matches, false otherwise.
+         */
+        public abstract boolean test(Student student);
+
+        /**
+         * Writes the condition as SQL over student_stats st JOIN students s.
+         * @param sql The SQL being built.
+         * @param params The list to add the values of the ? parameters to.
+         */
+        abstract void appendSql(StringBuilder sql, List<Object> params);
+
+        /**
+         * Combines this condition with another, both must hold.
+         * @param other The other condition.
+         * @return The combined condition.
+         */
+        public Predicate and(Predicate other)
+        {
+            return StudentQuery.and(this, other);
+        }
+
+        /**
+         * Combines this condition with another, either may hold.
+         * @param other The other condition.
+         * @return The combined condition.
+         */
+        public Predicate or(Predicate other)
+        {
+            return StudentQuery.or(this, other);
+        }
+    }
+
+    /**
+     * A comparison of a field with a value.
+     */
+    private static class Comparison extends Predicate {
+        private final Field field;
+        private final String operator;
+        private final Comparable<Object> value;
+
+        /**
+         * Constructs a Comparison object.
+         * @param field The field to compare.
+         * @param operator The SQL operator, one of = <> < <= > >=.
+         * @param value The value to compare with, of the type the field has.
+         */
+        @SuppressWarnings("unchecked")
+        private Comparison(Field field, String operator, Object value)
+        {
+            this.field = field;
+            this.operator = operator;
+            this.value = (Comparable<Object>) value;
+        }
+
+        @Override
+        public boolean test(Student student)
+        {
+            Object actual = field.of(student);
+            if (actual == null) {
+                // As in SQL, nothing compares with a missing value
+                return false;
+            }
+            // The sign of actual compared with value
+            int c = Integer.compare(0, value.compareTo(actual));
+            switch (operator) {
+                case "=": return c == 0;
+                case "<>": return c != 0;
+                case "<": return c < 0;
+                case "<=": return c <= 0;
+                case ">": return c > 0;
+                default: return c >= 0;
+            }
+        }
+
+        @Override
+        void appendSql(StringBuilder sql, List<Object> params)
+        {
+            sql.append(field.sql).append(' ').append(operator).append(" ?");
+            params.add(field.toSql(value));
+        }
+    }
+
+    /**
+     * A text field containing some text, ignoring the case of ASCII letters like SQLite's LIKE does.
+     */
+    private static class Contains extends Predicate {
+        private final Field field;
+        private final String text;
+
+        /**
+         * Constructs a Contains object.
+         * @param field The text field.
+         * @param text The text to look for.
+         */
+        private Contains(Field field, String text)
+        {
+            this.field = field;
+            this.text = text;
+        }
+
+        @Override
+        public boolean test(Student student)
+        {
+            Object actual = field.of(student);
+            return actual != null && foldAscii(actual.toString()).contains(foldAscii(text));
+        }
+
+        /**
+         * Lowers the case of the ASCII letters of a string and leaves every other character as it is, which is how
+         * SQLite's LIKE compares text.
+         * @param s The string.
+         * @return The string with A to Z lowered.
+         */
+        private static String foldAscii(String s)
+        {
+            char[] chars = null;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    if (chars == null) {
+                        chars = s.toCharArray();
+                    }
+                    chars[i] = (char) (c + ('a' - 'A'));
+                }
+            }
+            return chars == null ? s : new String(chars);
+        }
+
+        @Override
+        void appendSql(StringBuilder sql, List<Object> params)
+        {
+            sql.append(field.sql).append(" LIKE ? ESCAPE '\\'");
+            params.add("%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+    }
+
+    /**
+     * Several conditions joined by AND or OR.
+     */
+    private static class Junction extends Predicate {
+        private final boolean all;
+        private final List<Predicate> parts;
+
+        /**
+         * Constructs a Junction object.
+         * @param all true if every part must hold, false if any may.
+         * @param parts The conditions, at least one.
+         */
+        private Junction(boolean all, List<Predicate> parts)
+        {
+            this.all = all;
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean test(Student student)
+        {
+            for (Predicate part : parts) {
+                if (part.test(student) != all) {
+                    return !all;
+                }
+            }
+            return all;
+        }
+
+        @Override
+        void appendSql(StringBuilder sql, List<Object> params)
+        {
+            sql.append('(');
+            for (int i = 0; i < parts.size(); i++) {
+                if (i > 0) {
+                    sql.append(all ? " AND " : " OR ");
+                }
+                parts.get(i).appendSql(sql, params);
+            }
+            sql.append(')');
+        }
+    }
+
+    /**
+     * The opposite of a condition.
+     */
+    private static class Not extends Predicate {
+        private final Predicate part;
+
+        /**
+         * Constructs a Not object.
+         * @param part The condition to negate.
+         */
+        private Not(Predicate part)
+        {
+            this.part = part;
+        }
+
+        @Override
+        public boolean test(Student student)
+        {
+            return !part.test(student);
+        }
+
+        @Override
+        void appendSql(StringBuilder sql, List<Object> params)
+        {
+            sql.append("NOT (");
+            part.appendSql(sql, params);
+            sql.append(')');
+        }
+    }
+
+    /**
+     * Thrown by a cursor over SQL when its next row could not be read. The cursor has been closed by then.
+     */
+    public static class CursorException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs a CursorException object.
+         * @param cause The failure reading the row.
+         */
+        private CursorException(SQLException cause)
+        {
+            super("Failed to read students: " + cause.getMessage(), cause);
+        }
+
+        /**
+         * Gets the failure reading the row.
+         * @return The SQLException.
+         */
+        @Override
+        public synchronized SQLException getCause()
+        {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    /**
+     * The rows of a query, read as they are needed. Must be closed if it is not read to the end, since a cursor over
+     * SQL holds a database connection until then. If that connection fails, hasNext and next throw a CursorException.
+     */
+    public abstract static class Cursor implements Iterator<Object[]>, AutoCloseable {
+        private final Plan plan;
+        private Object[] next;
+        private boolean done;
+
+        /**
+         * Constructs a Cursor object.
+         * @param plan How the query is run.
+         */
+        private Cursor(Plan plan)
+        {
+            this.plan = plan;
+        }
+
+        /**
+         * Gets how the query is run.
+         * @return The plan.
+         */
+        public Plan getPlan()
+        {
+            return plan;
+        }
+
+        /**
+         * Reads the next row.
+         * @return The row, or null if there are no more rows.
+         * @throws CursorException if the row could not be read from the database.
+         */
+        abstract Object[] fetch();
+
+        @Override
+        public boolean hasNext()
+        {
+            if (next == null && !done) {
+                next = fetch();
+                if (next == null) {
+                    done = true;
+                    close();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Object[] next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Object[] row = next;
+            next = null;
+            return row;
+        }
+
+        /**
+         * Releases what the cursor holds. Does nothing if it was already closed.
+         */
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    private Predicate filter;
+    private List<Field> orderFields = new ArrayList<>();
+    private List<Boolean> orderDescending = new ArrayList<>();
+    private int offset;
+    private int limit = -1;
+    private Field[] projection = {Field.ID, Field.NAME, Field.PROBLEMS, Field.COMPETITIONS};
+
+    /**
+     * Constructs a StudentQuery object that gets every student in roster order.
+     */
+    public StudentQuery()
+    {
+    }
+
+    /**
+     * Builds a condition that a field is equal to a value.
+     * @param field The field.
+     * @param value The value, an Integer, a String, or a Level for LEVEL.
+     * @return The condition.
+     */
+    public static Predicate eq(Field field, Object value)
+    {
+        return new Comparison(field, "=", value);
+    }
+
+    /**
+     * Builds a condition that a field is not equal to a value.
+     * @param field The field.
+     * @param value The value.
+     * @return The condition.
+     */
+    public static Predicate ne(Field field, Object value)
+    {
+        return new Comparison(field, "<>", value);
+    }
+
+    /**
+     * Builds a condition that a field is less than a value.
+     * @param field The field.
+     * @param value The value.
+     * @return The condition.
+     */
+    public static Predicate lt(Field field, Object value)
+    {
+        return new Comparison(field, "<", value);
+    }
+
+    /**
+     * Builds a condition that a field is at most a value.
+     * @param field The field.
+     * @param value The value.
+     * @return The condition.
+     */
+    public static Predicate le(Field field, Object value)
+    {
+        return new Comparison(field, "<=", value);
+    }
+
+    /**
+     * Builds a condition that a field is greater than a value.
+     * @param field The field.
+     * @param value The value.
+     * @return The condition.
+     */
+    public static Predicate gt(Field field, Object value)
+    {
+        return new Comparison(field, ">", value);
+    }
+
+    /**
+     * Builds a condition that a field is at least a value.
+     * @param field The field.
+     * @param value The value.
+     * @return The condition.
+     */
+    public static Predicate ge(Field field, Object value)
+    {
+        return new Comparison(field, ">=", value);
+    }
+
+    /**
+     * Builds a condition that a text field contains some text, ignoring case.
+     * @param field The text field.
+     * @param text The text to look for.
+     * @return The condition.
+     */
+    public static Predicate contains(Field field, String text)
+    {
+        return new Contains(field, text);
+    }
+
+    /**
+     * Builds a condition that every one of several conditions holds.
+     * @param parts The conditions.
+     * @return The condition.
+     */
+    public static Predicate and(Predicate... parts)
+    {
+        return new Junction(true, List.of(parts));
+    }
+
+    /**
+     * Builds a condition that at least one of several conditions holds.
+     * @param parts The conditions.
+     * @return The condition.
+     */
+    public static Predicate or(Predicate... parts)
+    {
+        return new Junction(false, List.of(parts));
+    }
+
+    /**
+     * Builds the opposite of a condition.
+     * @param part The condition.
+     * @return The condition.
+     */
+    public static Predicate not(Predicate part)
+    {
+        return new Not(part);
+    }
+
+    /**
+     * Keeps only the students matching a condition, on top of any condition given before.
+     * @param condition The condition.
+     * @return This query.
+     */
+    public StudentQuery where(Predicate condition)
+    {
+        filter = filter == null ? condition : and(filter, condition);
+        return this;
+    }
+
+    /**
+     * Orders the students by a field, after any field given before.
+     * @param field The field.
+     * @param descending true for highest first.
+     * @return This query.
+     */
+    public StudentQuery orderBy(Field field, boolean descending)
+    {
+        orderFields.add(field);
+        orderDescending.add(descending);
+        return this;
+    }
+
+    /**
+     * Orders the students like a leaderboard.
+     * @param order The counts to rank by.
+     * @return This query.
+     */
+    public StudentQuery orderBy(LeaderboardIndex.Order order)
+    {
+        if (order == LeaderboardIndex.Order.PROBLEMS) {
+            return orderBy(Field.PROBLEMS, true).orderBy(Field.COMPETITIONS, true);
+        }
+        return orderBy(Field.COMPETITIONS, true).orderBy(Field.PROBLEMS, true);
+    }
+
+    /**
+     * Skips the first matching students.
+     * @param offset The number of students to skip.
+     * @return This query.
+     */
+    public StudentQuery offset(int offset)
+    {
+        this.offset = Math.max(0, offset);
+        return this;
+    }
+
+    /**
+     * Gets at most a number of students.
+     * @param limit The maximum number of students, or -1 for no limit.
+     * @return This query.
+     */
+    public StudentQuery limit(int limit)
+    {
+        this.limit = limit < 0 ? -1 : limit;
+        return this;
+    }
+
+    /**
+     * Sets the fields of every row. By default they are ID, NAME, PROBLEMS and COMPETITIONS.
+     * @param fields The fields, in the order of the row.
+     * @return This query.
+     */
+    public StudentQuery select(Field... fields)
+    {
+        projection = fields.clone();
+        return this;
+    }
+
+    /**
+     * Gets the fields of every row.
+     * @return The fields, in the order of the row.
+     */
+    public Field[] getProjection()
+    {
+        return projection.clone();
+    }
+
+    /**
+     * Writes the condition of the query as SQL over student_stats st JOIN students s.
+     * @param params The list to add the values of the ? parameters to.
+     * @return The condition, or null if every student matches.
+     */
+    public String whereSql(List<Object> params)
+    {
+        if (filter == null) {
+            return null;
+        }
+        StringBuilder sql = new StringBuilder();
+        filter.appendSql(sql, params);
+        return sql.toString();
+    }
+
+    /**
+     * Gets the expressions the query orders by, for SQL over student_stats st JOIN students s.
+     * @return The expressions, most significant first, ending with the student id.
+     */
+    public String[] orderSql()
+    {
+        String[] sql = new String[orderFields.size() + 1];
+        for (int i = 0; i < orderFields.size(); i++) {
+            sql[i] = orderFields.get(i).sql;
+        }
+        sql[sql.length - 1] = Field.ID.sql;
+        return sql;
+    }
+
+    /**
+     * Gets for each expression of orderSql whether it is ordered highest first.
+     * @return true for each expression ordered highest first.
+     */
+    public boolean[] orderDescending()
+    {
+        boolean[] descending = new boolean[orderFields.size() + 1];
+        for (int i = 0; i < orderFields.size(); i++) {
+            descending[i] = orderDescending.get(i);
+        }
+        return descending;
+    }
+
+    /**
+     * Finds the leaderboard whose rank order is the order of the query.
+     * @return The order of the leaderboard, or null if no leaderboard is in the order of the query.
+     */
+    public LeaderboardIndex.Order indexOrder()
+    {
+        // The indexes break ties by the lower id, so an explicit id ascending at the end changes nothing
+        int keys = orderFields.size();
+        if (keys == 3 && orderFields.get(2) == Field.ID && !orderDescending.get(2)) {
+            keys = 2;
+        }
+        if (keys != 2 || !orderDescending.get(0) || !orderDescending.get(1)) {
+            return null;
+        }
+        if (orderFields.get(0) == Field.PROBLEMS && orderFields.get(1) == Field.COMPETITIONS) {
+            return LeaderboardIndex.Order.PROBLEMS;
+        }
+        if (orderFields.get(0) == Field.COMPETITIONS && orderFields.get(1) == Field.PROBLEMS) {
+            return LeaderboardIndex.Order.COMPETITIONS;
+        }
+        return null;
+    }
+
+    /**
+     * Decides how to run the query.
+     * @param loaded true if the students are loaded in memory.
+     * @return The plan.
+     */
+    public Plan plan(boolean loaded)
+    {
+        if (!loaded) {
+            return Plan.SQL;
+        }
+        return indexOrder() != null ? Plan.INDEX : Plan.SCAN;
+    }
+
+    /**
+     * Builds the comparator of the order of the query, ending with the lower id.
+     * @return The comparator.
+     */
+    @SuppressWarnings("unchecked")
+    private Comparator<Student> comparator()
+    {
+        Comparator<Student> order = null;
+        for (int i = 0; i < orderFields.size(); i++) {
+            Field field = orderFields.get(i);
+            Comparator<Student> key = Comparator.comparing(student -> (Comparable<Object>) field.of(student),
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+            if (orderDescending.get(i)) {
+                key = key.reversed();
+            }
+            order = order == null ? key : order.thenComparing(key);
+        }
+        Comparator<Student> byId = Comparator.comparingInt(Student::getId);
+        return order == null ? byId : order.thenComparing(byId);
+    }
+
+    /**
+     * Builds the row of a student.
+     * @param student The student.
+     * @return The values of the selected fields.
+     */
+    private Object[] project(Student student)
+    {
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = projection[i].of(student);
+        }
+        return row;
+    }
+
+    /**
+     * Runs the query by walking a leaderboard index in rank order, a batch of students at a time.
+     * @param index The index in the order of the query.
+     * @return The rows.
+     */
+    Cursor walk(LeaderboardIndex index)
+    {
+        PLANNED_INDEX.increment();
+        return new Cursor(Plan.INDEX) {
+            private List<Student> batch = List.of();
+            private int position;
+            private int read;
+            private int skipped;
+            private int returned;
+
+            @Override
+            Object[] fetch()
+            {
+                while (limit < 0 || returned < limit) {
+                    if (position == batch.size()) {
+                        // Without a filter the offset is skipped inside the tree
+                        if (filter == null && read == 0) {
+                            read = skipped = offset;
+                        }
+                        batch = index.page(read, INDEX_BATCH);
+                        read += batch.size();
+                        position = 0;
+                        if (batch.isEmpty()) {
+                            return null;
+                        }
+                    }
+                    Student student = batch.get(position++);
+                    if (filter != null && !filter.test(student)) {
+                        continue;
+                    }
+                    if (skipped < offset) {
+                        skipped++;
+                        continue;
+                    }
+                    returned++;
+                    return project(student);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Runs the query by scanning the loaded roster. Without an order the roster is read lazily; with an order only the
+     * matching students are sorted, and with a limit only the best offset + limit of them are kept.
+     * @param roster The loaded students, in roster order.
+     * @return The rows.
+     */
+    Cursor scan(Collection<Student> roster)
+    {
+        PLANNED_SCAN.increment();
+        Iterator<Student> students;
+        // Only the roster still needs filtering, the sorted matches have been filtered already
+        boolean unfiltered = orderFields.isEmpty() && filter != null;
+        if (orderFields.isEmpty()) {
+            students = roster.iterator();
+        } else {
+            Comparator<Student> order = comparator();
+            List<Student> matches;
+            if (limit >= 0 && (long) offset + limit < roster.size()) {
+                // The worst kept student is at the head, ready to be pushed out by a better one
+                int keep = offset + limit;
+                PriorityQueue<Student> best = new PriorityQueue<>(Math.max(1, keep), order.reversed());
+                for (Student student : roster) {
+                    if (keep > 0 && (filter == null || filter.test(student))) {
+                        if (best.size() < keep) {
+                            best.add(student);
+                        } else if (order.compare(student, best.peek()) < 0) {
+                            best.poll();
+                            best.add(student);
+                        }
+                    }
+                }
+                matches = new ArrayList<>(best);
+            } else {
+                matches = new ArrayList<>();
+                for (Student student : roster) {
+                    if (filter == null || filter.test(student)) {
+                        matches.add(student);
+                    }
+                }
+            }
+            // Many matches are sorted on every core, whether all of them were kept or only the best offset + limit
+            Student[] sorted = matches.toArray(new Student[0]);
+            ParallelRoster.shared().sort(sorted, order);
+            students = Arrays.asList(sorted).iterator();
+        }
+
+        return new Cursor(Plan.SCAN) {
+            private int skipped;
+            private int returned;
+
+            @Override
+            Object[] fetch()
+            {
+                while (students.hasNext() && (limit < 0 || returned < limit)) {
+                    Student student = students.next();
+                    if (unfiltered && !filter.test(student)) {
+                        continue;
+                    }
+                    if (skipped < offset) {
+                        skipped++;
+                        continue;
+                    }
+                    returned++;
+                    return project(student);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Counts the loaded students matching the condition of the query, whatever its offset and limit.
+     * @param roster The loaded students.
+     * @return The number of matching students.
+     */
+    int count(Collection<Student> roster)
+    {
+        if (filter == null) {
+            return roster.size();
+        }
+        int count = 0;
+        for (Student student : roster) {
+            if (filter.test(student)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the students in the database matching the condition of the query, whatever its offset and limit.
+     * @param dbHandler The DatabaseHandler to read from.
+     * @return The number of matching students.
+     * @throws SQLException if a database access error occurs.
+     */
+    int count(DatabaseHandler dbHandler) throws SQLException
+    {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM student_stats st JOIN students s ON s.id = st.student_id");
+        String where = whereSql(params);
+        if (where != null) {
+            sql.append(" WHERE ").append(where);
+        }
+        try (ConnectionPool.PooledConnection reader = dbHandler.borrowRead()) {
+            PreparedStatement stmt = reader.prepare(sql.toString());
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Runs the query against the database, reading a row at a time. The cursor holds a read connection until it is
+     * read to the end or closed.
+     * @param dbHandler The DatabaseHandler to read from.
+     * @return The rows.
+     * @throws SQLException if a database access error occurs.
+     */
+    Cursor execute(DatabaseHandler dbHandler) throws SQLException
+    {
+        PLANNED_SQL.increment();
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < projection.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(projection[i].sql);
+        }
+        sql.append(" FROM student_stats st JOIN students s ON s.id = st.student_id");
+        String where = whereSql(params);
+        if (where != null) {
+            sql.append(" WHERE ").append(where);
+        }
+        sql.append(" ORDER BY ");
+        String[] keys = orderSql();
+        boolean[] descending = orderDescending();
+        for (int i = 0; i < keys.length; i++) {
+            sql.append(i > 0 ? ", " : "").append(keys[i]).append(descending[i] ? " DESC" : "");
+        }
+        // Bound rather than written into the query, so the connection's statement cache does not fill with pages
+        sql.append(" LIMIT ? OFFSET ?");
+        params.add(limit);
+        params.add(offset);
+
+        ConnectionPool.PooledConnection reader = dbHandler.borrowRead();
+        ResultSet rs;
+        try {
+            PreparedStatement stmt = reader.prepare(sql.toString());
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            rs = stmt.executeQuery();
+        } catch (SQLException e) {
+            reader.close();
+            throw e;
+        }
+
+        return new Cursor(Plan.SQL) {
+            private boolean closed;
+
+            @Override
+            Object[] fetch()
+            {
+                if (closed) {
+                    return null;
+                }
+                try {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    Object[] row = new Object[projection.length];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = projection[i].read(rs, i + 1);
+                    }
+                    return row;
+                } catch (SQLException e) {
+                    // Gives the connection back before the failure reaches whoever is iterating
+                    close();
+                    throw new CursorException(e);
+                }
+            }
+
+            @Override
+            public void close()
+            {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    rs.close();
+                } catch (SQLException e) {
+                    System.out.println("Failed to close query: " + e.getMessage());
+                } finally {
+                    reader.close();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The SymbolTable class keeps one copy of each string that repeats across many rows, such as first names, last names
+ * and competition names, so equal strings loaded from different rows share memory. It is safe to use from several
+ * threads. Once it holds its maximum number of strings, new strings are returned as they are instead of being added.
+ */
+public class SymbolTable {
+    /** The default maximum number of strings kept. */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final SymbolTable SHARED = new SymbolTable(DEFAULT_CAPACITY);
+
+    private final ConcurrentHashMap<String, String> symbols = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    /**
+     * Constructs an empty SymbolTable object.
+     * @param capacity The maximum number of strings to keep.
+     */
+    public SymbolTable(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the symbol table shared by loading and importing.
+     * @return The shared symbol table.
+     */
+    public static SymbolTable shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Gets the kept copy of a string, keeping this one if there is none yet.
+     * @param str The string, or null.
+     * @return An equal string, the same object for every equal string while there is room.
+     */
+    public String intern(String str)
+    {
+        if (str == null) {
+            return null;
+        }
+        String symbol = symbols.get(str);
+        if (symbol != null) {
+            return symbol;
+        }
+        if (symbols.size() >= capacity) {
+            return str;
+        }
+        symbol = symbols.putIfAbsent(str, str);
+        return symbol == null ? str : symbol;
+    }
+
+    /**
+     * Gets the number of strings kept.
+     * @return The number of strings.
+     */
+    public int size()
+    {
+        return symbols.size();
+    }
+
+    /**
+     * Forgets every string.
+     */
+    public void clear()
+    {
+        symbols.clear();
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The TaskRunner class runs database work in the background so the user interface stays responsive. Tasks run one at
+ * a time in the order they were submitted, because SQLite only allows one writer and DataHandler is not thread-safe,
+ * so actions chosen while a long task runs simply queue up behind it. The queue is bounded; tasks submitted while it
+ * is full fail with a RejectedExecutionException. The worker is a virtual thread when the JVM supports them.
+ *
+ * Every task gets a Progress object to report through and to check for cancellation. Cancelling the returned future
+ * marks the Progress as cancelled and interrupts the task, which stops at its next progress report or blocking wait.
+ */
+public class TaskRunner implements AutoCloseable {
+    /** The default number of tasks that may wait to run. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+    private static final Metrics.Counter TASKS_COMPLETED = Metrics.shared().counter("tasks.completed");
+    private static final Metrics.Counter TASKS_FAILED = Metrics.shared().counter("tasks.failed");
+    private static final Metrics.Counter TASKS_CANCELLED = Metrics.shared().counter("tasks.cancelled");
+
+    private final ThreadPoolExecutor worker;
+    private final boolean virtualThreads;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * A unit of background work.
+     * @param <T> The type of the result.
+     */
+    public interface Job<T> {
+        /**
+         * Runs the work.
+         * @param progress The object to report progress through and to check for cancellation.
+         * @return The result of the work.
+         * @throws Exception if the work failed.
+         */
+        T run(Progress progress) throws Exception;
+    }
+
+    /**
+     * The progress of one task. Reports are passed on to a listener, and throw a CancellationException once the task
+     * has been cancelled, so work that reports regularly stops on its own.
+     */
+    public static class Progress implements DataExporter.ProgressListener {
+        private final DataExporter.ProgressListener listener;
+        private volatile boolean cancelled;
+        private Thread thread;
+
+        /**
+         * Constructs a Progress object.
+         * @param listener The listener to pass reports on to, or null.
+         */
+        private Progress(DataExporter.ProgressListener listener)
+        {
+            this.listener = listener;
+        }
+
+        /**
+         * Reports how far the task has got.
+         * @param done The amount of work done.
+         * @param total The total amount of work, or -1 if it is not known.
+         * @throws CancellationException if the task has been cancelled.
+         */
+        @Override
+        public void onProgress(long done, long total)
+        {
+            checkCancelled();
+            if (listener != null) {
+                listener.onProgress(done, total);
+            }
+        }
+
+        /**
+         * Checks if the task has been cancelled.
+         * @return true if the task has been cancelled, false otherwise.
+         */
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+
+        /**
+         * Stops the task if it has been cancelled.
+         * @throws CancellationException if the task has been cancelled.
+         */
+        public void checkCancelled()
+        {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+        }
+
+        /**
+         * Marks the start of the task on the current thread.
+         */
+        private synchronized void start()
+        {
+            thread = Thread.currentThread();
+        }
+
+        /**
+         * Marks the end of the task, clearing any interrupt meant for it so it cannot reach the next task.
+         */
+        private synchronized void finish()
+        {
+            thread = null;
+            Thread.interrupted();
+        }
+
+        /**
+         * Cancels the task, interrupting it if it is running.
+         */
+        private synchronized void cancel()
+        {
+            cancelled = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Constructs a TaskRunner object with the default queue capacity.
+     */
+    public TaskRunner()
+    {
+        this(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructs a TaskRunner object.
+     * @param queueCapacity The number of tasks that may wait to run.
+     */
+    public TaskRunner(int queueCapacity)
+    {
+        ThreadFactory virtual = virtualThreadFactory();
+        virtualThreads = virtual != null;
+        ThreadFactory factory = virtual != null ? virtual : task -> {
+            Thread thread = new Thread(task, "background-task");
+            thread.setDaemon(true);
+            return thread;
+        };
+        worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(Math.max(1, queueCapacity)), factory);
+    }
+
+    /**
+     * Gets a factory of virtual threads, which are only available from Java 21. Found by reflection so the program
+     * still builds and runs on older versions.
+     * @return The factory, or null if virtual threads are not available.
+     */
+    private static ThreadFactory virtualThreadFactory()
+    {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class).invoke(builder, "background-task");
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if tasks run on a virtual thread.
+     * @return true if tasks run on a virtual thread, false if on a platform thread.
+     */
+    public boolean usesVirtualThreads()
+    {
+        return virtualThreads;
+    }
+
+    /**
+     * Queues a task to run after every task submitted before it.
+     * @param job The work to run.
+     * @param listener The listener to report progress to, or null.
+     * @param <T> The type of the result.
+     * @return A future that completes with the result of the task. Cancelling it cancels the task.
+     */
+    public <T> CompletableFuture<T> submit(Job<T> job, DataExporter.ProgressListener listener)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Progress progress = new Progress(listener);
+        future.whenComplete((value, error) -> {
+            if (future.isCancelled()) {
+                progress.cancel();
+                TASKS_CANCELLED.increment();
+            } else if (error != null) {
+                TASKS_FAILED.increment();
+            } else {
+                TASKS_COMPLETED.increment();
+            }
+        });
+
+        pending.incrementAndGet();
+        try {
+            worker.execute(() -> {
+                T result = null;
+                Throwable failure = null;
+                boolean ran = false;
+                try {
+                    // Tasks cancelled while they waited are skipped
+                    if (!future.isDone()) {
+                        progress.start();
+                        try {
+                            result = job.run(progress);
+                            ran = true;
+                        } finally {
+                            progress.finish();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure = e;
+                } finally {
+                    // Before the future completes, so whoever it wakes no longer counts this task as pending
+                    pending.decrementAndGet();
+                }
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else if (ran) {
+                    future.complete(result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Gets the number of tasks that are running or waiting to run.
+     * @return The number of tasks.
+     */
+    public int getPending()
+    {
+        return pending.get();
+    }
+
+    /**
+     * Gets a future that completes once every task submitted so far has finished.
+     * @return The future.
+     */
+    public CompletableFuture<Void> whenIdle()
+    {
+        return submit(progress -> null, null);
+    }
+
+    /**
+     * Reads a CSV file into the database in the background.
+     * @param parser The parser writing to the database.
+     * @param file The CSV file to read.
+     * @param comp The name of the competition.
+     * @return A future of the number of results added.
+     */
+    public CompletableFuture<Integer> read(SpreadsheetParser parser, File file, String comp)
+    {
+        return submit(progress -> parser.read(file, comp), null);
+    }
+
+    /**
+     * Loads many CSV files into the database in the background, reporting the number of files done.
+     * @param pipeline The pipeline writing to the database.
+     * @param files The CSV files to load.
+     * @param listener The listener to report progress to, or null.
+     * @return A future of the number of results added.
+     */
+    public CompletableFuture<Integer> ingest(IngestPipeline pipeline, List<File> files, DataExporter.ProgressListener listener)
+    {
+        return submit(progress -> pipeline.ingest(files, progress), listener);
+    }
+
+    /**
+     * Loads the data of the database into a DataHandler in the background.
+     * @param dataHandler The DataHandler to load into.
+     * @param dbHandler The DatabaseHandler to load from.
+     * @return A future that completes once the data is loaded.
+     */
+    public CompletableFuture<Void> loadData(DataHandler dataHandler, DatabaseHandler dbHandler)
+    {
+        return submit(progress -> {
+            try (ConnectionPool.PooledConnection reader = dbHandler.borrowRead()) {
+                dataHandler.loadData(reader.getConnection());
+            }
+            return null;
+        }, null);
+    }
+
+    /**
+     * Exports every result to a CSV file in the background, reporting the number of rows written.
+     * @param exporter The exporter reading from the database.
+     * @param file The file to write.
+     * @param gzip true to compress the file with gzip.
+     * @param listener The listener to report progress to, or null.
+     * @return A future of the number of rows written.
+     */
+    public CompletableFuture<Long> export(DataExporter exporter, File file, boolean gzip, DataExporter.ProgressListener listener)
+    {
+        return submit(progress -> exporter.exportCsv(file, gzip, progress), listener);
+    }
+
+    /**
+     * Wipes all data from the database in the background.
+     * @param dbHandler The DatabaseHandler to wipe.
+     * @return A future that completes once the database is wiped.
+     */
+    public CompletableFuture<Void> wipe(DatabaseHandler dbHandler)
+    {
+        return submit(progress -> {
+            dbHandler.wipeDatabase();
+            return null;
+        }, null);
+    }
+
+    /**
+     * Stops taking tasks and waits for the queued ones to finish.
+     */
+    @Override
+    public void close()
+    {
+        worker.shutdown();
+        try {
+            worker.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
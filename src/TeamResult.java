@@ -0,0 +1,99 @@
+/**
+ * The TeamResult class represents one team row of a competition spreadsheet: up to three members, their emails and the
+ * result the team achieved together.
+ */
+public class TeamResult {
+    private Level teamType;
+    private String[] members;
+    private String[] emails;
+    private int problemsSolved;
+    private int placement;
+
+    /**
+     * Constructs a TeamResult object.
+     * @param teamType The level of the team.
+     * @param member1 The name of the first member.
+     * @param email1 The email of the first member.
+     * @param member2 The name of the second member, or an empty string.
+     * @param email2 The email of the second member, or an empty string.
+     * @param member3 The name of the third member, or an empty string.
+     * @param email3 The email of the third member, or an empty string.
+     * @param problemsSolved The number of problems solved by the team.
+     * @param placement The placement of the team in the competition.
+     */
+    public TeamResult(Level teamType, String member1, String email1, String member2, String email2, String member3, String email3, int problemsSolved, int placement)
+    {
+        this.teamType = teamType;
+        this.members = new String[]{member1, member2, member3};
+        this.emails = new String[]{email1, email2, email3};
+        this.problemsSolved = problemsSolved;
+        this.placement = placement;
+    }
+
+    /**
+     * Gets the type of the team.
+     * @return The level of the team.
+     */
+    public Level getTeamType()
+    {
+        return teamType;
+    }
+
+    /**
+     * Gets the number of member slots in the row. Only the first slot is required to be filled in.
+     * @return The number of member slots.
+     */
+    public int getMemberCount()
+    {
+        return members.length;
+    }
+
+    /**
+     * Checks if a member slot holds a student. The first member is always present; the other members are only present
+     * when both their name and email were given.
+     * @param i The index of the member slot.
+     * @return true if the slot holds a student, false otherwise.
+     */
+    public boolean hasMember(int i)
+    {
+        return i == 0 || (!members[i].isEmpty() && !emails[i].isEmpty());
+    }
+
+    /**
+     * Gets the name of a member.
+     * @param i The index of the member slot.
+     * @return The name of the member.
+     */
+    public String getMember(int i)
+    {
+        return members[i];
+    }
+
+    /**
+     * Gets the email of a member.
+     * @param i The index of the member slot.
+     * @return The email of the member.
+     */
+    public String getEmail(int i)
+    {
+        return emails[i];
+    }
+
+    /**
+     * Gets the number of problems solved by the team.
+     * @return The number of problems solved.
+     */
+    public int getProblemsSolved()
+    {
+        return problemsSolved;
+    }
+
+    /**
+     * Gets the placement of the team.
+     * @return The placement of the team.
+     */
+    public int getPlacement()
+    {
+        return placement;
+    }
+}